@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.trentorise.smartcampus.profileservice.AsyncBasicProfileService;
+import eu.trentorise.smartcampus.profileservice.BasicProfileService;
+import eu.trentorise.smartcampus.profileservice.ExtProfileService;
+import eu.trentorise.smartcampus.profileservice.ProfileServiceException;
+import eu.trentorise.smartcampus.profileservice.http.PooledAsyncHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * End-to-end cost of the client calls against the in-process stub server, at
+ * several payload sizes. The concurrency level is given by the nested
+ * subclasses.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class ClientBenchmark {
+
+	private static final String TOKEN = "benchmark-token";
+
+	/** number of profiles of a list response */
+	@Param({ "1", "100", "5000" })
+	public int profiles;
+
+	private StubProfileServer server;
+	private PooledHttpTransport transport;
+	private PooledAsyncHttpTransport asyncTransport;
+	private BasicProfileService basicService;
+	private AsyncBasicProfileService asyncService;
+	private ExtProfileService extService;
+
+	@Setup
+	public void setup() throws IOException {
+		server = new StubProfileServer(Payloads.basicProfiles(profiles), Payloads.accountProfile(3),
+				Payloads.extendedProfiles(profiles, 20), 64);
+		transport = PooledHttpTransport.builder().maxTotal(128).maxPerRoute(128).build();
+		asyncTransport = PooledAsyncHttpTransport.builder().maxTotal(128).maxPerRoute(128).build();
+		basicService = new BasicProfileService(server.getURL(), transport);
+		asyncService = new AsyncBasicProfileService(server.getURL(), asyncTransport);
+		extService = new ExtProfileService(server.getURL(), transport);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		transport.close();
+		asyncTransport.close();
+		server.stop();
+	}
+
+	@Benchmark
+	public List<BasicProfile> getBasicProfiles() throws ProfileServiceException {
+		return basicService.getBasicProfiles(null, TOKEN);
+	}
+
+	@Benchmark
+	public List<BasicProfile> getBasicProfilesAsync() throws Exception {
+		return asyncService.getBasicProfiles(null, TOKEN).get();
+	}
+
+	@Benchmark
+	public AccountProfile getAccountProfile() throws ProfileServiceException {
+		return basicService.getAccountProfile(TOKEN);
+	}
+
+	@Benchmark
+	public List<ExtendedProfile> getSharedExtendedProfiles() throws ProfileServiceException {
+		return extService.getSharedExtendedProfiles(TOKEN);
+	}
+
+	@Threads(1)
+	public static class Sequential extends ClientBenchmark {
+	}
+
+	@Threads(8)
+	public static class Concurrent8 extends ClientBenchmark {
+	}
+
+	@Threads(64)
+	public static class Concurrent64 extends ClientBenchmark {
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfiles;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfiles;
+
+/**
+ * Synthetic responses of the profile service, of a given size
+ *
+ */
+public class Payloads {
+
+	private Payloads() {
+	}
+
+	public static BasicProfile basicProfile(int i) {
+		BasicProfile profile = new BasicProfile();
+		profile.setUserId("" + i);
+		profile.setSocialId("" + (100000 + i));
+		profile.setName("Name" + i);
+		profile.setSurname("Surname" + i);
+		return profile;
+	}
+
+	/**
+	 * @param profiles
+	 *            number of profiles
+	 * @return the JSON of a basic profile list
+	 */
+	public static String basicProfiles(int profiles) {
+		List<BasicProfile> list = new ArrayList<BasicProfile>(profiles);
+		for (int i = 0; i < profiles; i++) {
+			list.add(basicProfile(i));
+		}
+		BasicProfiles wrapper = new BasicProfiles();
+		wrapper.setProfiles(list);
+		return JsonUtils.toJSON(wrapper);
+	}
+
+	/**
+	 * @param attributes
+	 *            number of attributes of the content
+	 * @return an extended profile content mixing strings, numbers, lists and
+	 *         nested objects
+	 */
+	public static Map<String, Object> content(int attributes) {
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < attributes; i++) {
+			switch (i % 4) {
+			case 0:
+				content.put("text" + i, "value of the attribute " + i);
+				break;
+			case 1:
+				content.put("number" + i, i * 31);
+				break;
+			case 2:
+				content.put("list" + i, Arrays.asList("a" + i, "b" + i, "c" + i));
+				break;
+			default:
+				Map<String, Object> nested = new HashMap<String, Object>();
+				nested.put("id", i);
+				nested.put("enabled", i % 8 == 3);
+				content.put("object" + i, nested);
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * @param profiles
+	 *            number of profiles
+	 * @param attributes
+	 *            number of attributes of each profile
+	 * @return the JSON of an extended profile list
+	 */
+	public static String extendedProfiles(int profiles, int attributes) {
+		List<ExtendedProfile> list = new ArrayList<ExtendedProfile>(profiles);
+		Map<String, Object> content = content(attributes);
+		for (int i = 0; i < profiles; i++) {
+			ExtendedProfile profile = new ExtendedProfile();
+			profile.setUserId("" + i);
+			profile.setSocialId("" + (100000 + i));
+			profile.setProfileId("preferences");
+			profile.setContent(content);
+			list.add(profile);
+		}
+		ExtendedProfiles wrapper = new ExtendedProfiles();
+		wrapper.setProfiles(list);
+		return JsonUtils.toJSON(wrapper);
+	}
+
+	/**
+	 * @param accounts
+	 *            number of accounts
+	 * @return the JSON of an account profile
+	 */
+	public static String accountProfile(int accounts) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < accounts; i++) {
+			Map<String, String> attributes = new HashMap<String, String>();
+			attributes.put("eu.trentorise.smartcampus.givenname", "Name" + i);
+			attributes.put("eu.trentorise.smartcampus.surname", "Surname" + i);
+			attributes.put("email", "user" + i + "@example.org");
+			map.put("account" + i, attributes);
+		}
+		return JsonUtils.toJSON(Collections.singletonMap("accounts", map));
+	}
+}
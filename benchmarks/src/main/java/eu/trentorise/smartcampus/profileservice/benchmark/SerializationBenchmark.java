@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.profileservice.json.ProfileJsonWriter;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfiles;
+import eu.trentorise.smartcampus.profileservice.model.CompactAccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfiles;
+
+/**
+ * Cost of the conversions between the JSON payloads and the profile model
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	/** number of profiles (or accounts) of a response */
+	@Param({ "10", "1000", "10000" })
+	public int size;
+
+	/** number of attributes of an extended profile content */
+	@Param({ "20", "500" })
+	public int attributes;
+
+	private String accountJson;
+	private byte[] accountBytes;
+	private String basicJson;
+	private byte[] basicBytes;
+	private String extendedJson;
+	private byte[] extendedBytes;
+	private Map<String, Object> content;
+
+	@Setup
+	public void setup() throws IOException {
+		accountJson = Payloads.accountProfile(Math.min(size, 100));
+		accountBytes = accountJson.getBytes("UTF-8");
+		basicJson = Payloads.basicProfiles(size);
+		basicBytes = basicJson.getBytes("UTF-8");
+		extendedJson = Payloads.extendedProfiles(size, attributes);
+		extendedBytes = extendedJson.getBytes("UTF-8");
+		content = Payloads.content(attributes);
+	}
+
+	@Benchmark
+	public AccountProfile accountProfileValueOf() {
+		return AccountProfile.valueOf(accountJson);
+	}
+
+	@Benchmark
+	public CompactAccountProfile compactAccountProfile() throws IOException {
+		return ProfileStreamParser.readObject(new ByteArrayInputStream(accountBytes),
+				ProfileStreamParser.COMPACT_ACCOUNT_PROFILE);
+	}
+
+	@Benchmark
+	public List<BasicProfile> basicProfilesJsonUtils() {
+		return JsonUtils.toObject(basicJson, BasicProfiles.class).getProfiles();
+	}
+
+	@Benchmark
+	public List<BasicProfile> basicProfilesStream() throws IOException {
+		return ProfileStreamParser.readList(new ByteArrayInputStream(basicBytes), ProfileStreamParser.BASIC_PROFILE);
+	}
+
+	@Benchmark
+	public List<ExtendedProfile> extendedProfilesJsonUtils() {
+		return JsonUtils.toObject(extendedJson, ExtendedProfiles.class).getProfiles();
+	}
+
+	@Benchmark
+	public List<ExtendedProfile> extendedProfilesStream() throws IOException {
+		return ProfileStreamParser.readList(new ByteArrayInputStream(extendedBytes),
+				ProfileStreamParser.EXTENDED_PROFILE);
+	}
+
+	@Benchmark
+	public String extendedContentToJson() {
+		return JsonUtils.toJSON(content);
+	}
+
+	@Benchmark
+	public long extendedContentStream() throws IOException {
+		CountingSink sink = new CountingSink();
+		ProfileJsonWriter.write(content, sink);
+		return sink.count;
+	}
+
+	/** stands for the connection of a request */
+	private static class CountingSink extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server answering the profile service calls with fixed
+ * payloads, so that the benchmarks measure the client overhead only
+ *
+ */
+public class StubProfileServer {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * @param basicProfiles
+	 *            response of the basic profile calls
+	 * @param accountProfile
+	 *            response of the account profile calls
+	 * @param extendedProfiles
+	 *            response of the extended profile calls
+	 * @param threads
+	 *            number of server threads
+	 * @throws IOException
+	 */
+	public StubProfileServer(String basicProfiles, String accountProfile, String extendedProfiles, int threads)
+			throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/basicprofile/", new FixedResponse(basicProfiles));
+		server.createContext("/accountprofile/", new FixedResponse(accountProfile));
+		server.createContext("/extprofile/", new FixedResponse(extendedProfiles));
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return the address to pass to the clients
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private static class FixedResponse implements HttpHandler {
+
+		private final byte[] body;
+
+		FixedResponse(String body) throws IOException {
+			this.body = body.getBytes("UTF-8");
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			InputStream in = exchange.getRequestBody();
+			byte[] buffer = new byte[4096];
+			while (in.read(buffer) >= 0) {
+				// drain the request body to keep the connection alive
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.profileservice.http.AsyncProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.PooledAsyncHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfiles;
+
+/**
+ * Non-blocking counterpart of {@link BasicProfileService}. The returned
+ * futures fail with a {@link SecurityException} if the token is rejected, and
+ * with a {@link ProfileServiceException} otherwise.
+ *
+ */
+public class AsyncBasicProfileService {
+
+	private String profileManagerURL;
+
+	private AsyncProfileTransport transport;
+
+	/** Basic profile path */
+	private static final String BASIC_PROFILE = "basicprofile/";
+	/** account profile path */
+	private static final String ACCOUNT_PROFILE = "accountprofile/";
+
+	private static final String ALL = "all/";
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 */
+	public AsyncBasicProfileService(String serverURL) {
+		this(serverURL, PooledAsyncHttpTransport.getDefault());
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 */
+	public AsyncBasicProfileService(String serverURL, AsyncProfileTransport transport) {
+		this.profileManagerURL = serverURL;
+		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
+		this.transport = transport;
+	}
+
+	/**
+	 * Return the basic profile associated to the access token owner
+	 *
+	 * @param token
+	 *            a user access token
+	 * @return a basic profile
+	 */
+	public CompletableFuture<BasicProfile> getBasicProfile(String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + "me", token)),
+				json -> JsonUtils.toObject(json, BasicProfile.class));
+	}
+
+	/**
+	 * Return the account profile associated to the access token owner
+	 *
+	 * @param token
+	 *            a user access token
+	 * @return an account profile
+	 */
+	public CompletableFuture<AccountProfile> getAccountProfile(String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, ACCOUNT_PROFILE + "me", token)),
+				json -> AccountProfile.valueOf(json));
+	}
+
+	/**
+	 * Return the basic profile of a user identified by his socialId
+	 *
+	 * @param socialId
+	 *            social id of the user
+	 * @param token
+	 *            a user or client access token
+	 * @return a basic profile
+	 */
+	public CompletableFuture<BasicProfile> getBasicProfileBySocialId(String socialId, String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + "social/" + socialId, token)),
+				json -> JsonUtils.toObject(json, BasicProfile.class));
+	}
+
+	/**
+	 * Return a basic profile of a user identified by his userId
+	 *
+	 * @param userId
+	 *            id of the user
+	 * @param token
+	 *            an user or client access token
+	 * @return a basic profile
+	 */
+	public CompletableFuture<BasicProfile> getBasicProfile(String userId, String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + ALL + userId + "/", token)),
+				json -> JsonUtils.toObject(json, BasicProfile.class));
+	}
+
+	/**
+	 * Return a (filtered) list of profiles
+	 *
+	 * @param filter
+	 *            if not null, filter the results by full name (name and
+	 *            surname)
+	 * @param token
+	 *            an user or client access token
+	 * @return a list of basic profile
+	 */
+	public CompletableFuture<List<BasicProfile>> getBasicProfiles(String filter, String token) {
+		String query = filter == null ? "" : "?filter=" + AsyncCalls.encode(filter);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + ALL + query, token)),
+				json -> {
+					try {
+						return JsonUtils.toObject(json, BasicProfiles.class).getProfiles();
+					} catch (Exception e) {
+						return Collections.<BasicProfile> emptyList();
+					}
+				});
+	}
+
+	/**
+	 * Returns the list of basic profiles of a list of users
+	 *
+	 * @param userIds
+	 * @param token
+	 *            a user or client access token
+	 * @return
+	 */
+	public CompletableFuture<List<BasicProfile>> getBasicProfilesByUserId(List<String> userIds, String token) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + "profiles", token, parameters)),
+				json -> JsonUtils.toObject(json, BasicProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Returns the list of account profiles of a list of users
+	 *
+	 * @param userIds
+	 * @param token
+	 *            a user or client access token
+	 * @return
+	 */
+	public CompletableFuture<List<AccountProfile>> getAccountProfilesByUserId(List<String> userIds, String token) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, ACCOUNT_PROFILE + "profiles", token, parameters)),
+				json -> ProfileStreamParser.readList(json, ProfileStreamParser.ACCOUNT_PROFILE));
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers shared by the asynchronous service clients
+ *
+ */
+class AsyncCalls {
+
+	/**
+	 * Conversion of a response body
+	 */
+	interface Parser<T> {
+		T parse(String json) throws Exception;
+	}
+
+	private AsyncCalls() {
+	}
+
+	/**
+	 * @param response
+	 *            pending response body
+	 * @param parser
+	 *            conversion of the body
+	 * @return a future completed with the converted body, or exceptionally
+	 *         with a {@link SecurityException} or a
+	 *         {@link ProfileServiceException}. The body is converted on the
+	 *         background executor, not on the thread completing the
+	 *         response, which may be an I/O thread of the transport.
+	 */
+	static <T> CompletableFuture<T> map(CompletableFuture<String> response, Parser<T> parser) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		response.whenCompleteAsync((json, error) -> {
+			if (error != null) {
+				result.completeExceptionally(translate(error));
+				return;
+			}
+			try {
+				result.complete(parser.parse(json));
+			} catch (Exception e) {
+				result.completeExceptionally(new ProfileServiceException(e));
+			}
+		}, ProfileExecutors.getBackgroundExecutor());
+		result.whenComplete((value, error) -> {
+			if (result.isCancelled()) response.cancel(true);
+		});
+		return result;
+	}
+
+	/**
+	 * @param message
+	 * @return a future failed with a {@link ProfileServiceException}
+	 */
+	static <T> CompletableFuture<T> failed(String message) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		result.completeExceptionally(new ProfileServiceException(message));
+		return result;
+	}
+
+	static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "utf8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Throwable translate(Throwable error) {
+		if (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		if (error instanceof SecurityException || error instanceof ProfileServiceException) {
+			return error;
+		}
+		return new ProfileServiceException(error);
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.profileservice.http.AsyncProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.PooledAsyncHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfiles;
+
+/**
+ * Non-blocking counterpart of {@link ExtProfileService}. The returned futures
+ * fail with a {@link SecurityException} if the token is rejected, and with a
+ * {@link ProfileServiceException} otherwise.
+ *
+ */
+public class AsyncExtProfileService {
+
+	private String profileManagerURL;
+
+	private AsyncProfileTransport transport;
+
+	/** Extended profile path */
+	private static final String EXTENDED_PROFILE = "extprofile/";
+
+	private static final String INCOMPLETE = "Incomplete request parameters";
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 */
+	public AsyncExtProfileService(String serverURL) {
+		this(serverURL, PooledAsyncHttpTransport.getDefault());
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 */
+	public AsyncExtProfileService(String serverURL, AsyncProfileTransport transport) {
+		this.profileManagerURL = serverURL;
+		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
+		this.transport = transport;
+	}
+
+	/**
+	 * Create an extended profile
+	 *
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @param token
+	 *            an authorization token
+	 */
+	public CompletableFuture<Void> createExtendedProfile(String userId, String profileId,
+			Map<String, Object> content, String token) {
+		if (userId == null || profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.postJson(profileManagerURL,
+						EXTENDED_PROFILE + "app/" + userId + "/" + AsyncCalls.encode(profileId),
+						content, token)),
+				json -> null);
+	}
+
+	/**
+	 * Creates an extended profile for authenticated user
+	 *
+	 * @param profileId
+	 * @param content
+	 * @param token
+	 */
+	public CompletableFuture<Void> createMyExtendedProfile(String profileId, Map<String, Object> content,
+			String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.postJson(profileManagerURL,
+						EXTENDED_PROFILE + "me/" + AsyncCalls.encode(profileId),
+						content, token)),
+				json -> null);
+	}
+
+	/**
+	 * Returns an extended profile of a user.
+	 *
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return an extended profile
+	 */
+	public CompletableFuture<ExtendedProfile> getExtendedProfile(String userId, String profileId, String token) {
+		if (userId == null || profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL,
+						EXTENDED_PROFILE + "app/" + userId + "/" + AsyncCalls.encode(profileId), token)),
+				json -> JsonUtils.toObject(json, ExtendedProfile.class));
+	}
+
+	/**
+	 * Returns an extended profile of the authenticated user.
+	 *
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return an extended profile
+	 */
+	public CompletableFuture<ExtendedProfile> getMyExtendedProfile(String profileId, String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL,
+						EXTENDED_PROFILE + "me/" + AsyncCalls.encode(profileId), token)),
+				json -> JsonUtils.toObject(json, ExtendedProfile.class));
+	}
+
+	/**
+	 * Return a list of extended profiles of the authenticated user
+	 *
+	 * @param token
+	 *            an authorization token
+	 * @return a list of extended profile
+	 */
+	public CompletableFuture<List<ExtendedProfile>> getMyExtendedProfiles(String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, EXTENDED_PROFILE + "me", token)),
+				json -> JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Returns the extended profiles with the given id shared with the
+	 * authenticated user.
+	 *
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return a list of extended profile
+	 */
+	public CompletableFuture<List<ExtendedProfile>> getSharedExtendedProfiles(String profileId, String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL,
+						EXTENDED_PROFILE + "shared/" + AsyncCalls.encode(profileId), token)),
+				json -> JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Returns the extended profiles shared with the authenticated user.
+	 *
+	 * @param token
+	 *            an authorization token
+	 * @return a list of extended profile
+	 */
+	public CompletableFuture<List<ExtendedProfile>> getSharedExtendedProfiles(String token) {
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, EXTENDED_PROFILE + "shared", token)),
+				json -> JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Returns list of extended profiles of a list of users
+	 *
+	 * @param userIds
+	 * @param profileId
+	 *            optional profile identity
+	 * @param token
+	 * @return
+	 */
+	public CompletableFuture<List<ExtendedProfile>> getExtendedProfilesForUsers(List<String> userIds,
+			String profileId, String token) {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		String path = EXTENDED_PROFILE + "all";
+		if (profileId != null) {
+			path += "/" + profileId;
+		}
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.get(profileManagerURL, path, token, parameters)),
+				json -> JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Returns the list of extended profiles filtered by a set of profile
+	 * attributes
+	 *
+	 * @param profileId
+	 * @param profileAttributes
+	 * @param token
+	 * @return
+	 */
+	public CompletableFuture<List<ExtendedProfile>> getExtendedProfilesByAttributes(String profileId,
+			Map<String, Object> profileAttributes, String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.postJson(profileManagerURL,
+						EXTENDED_PROFILE + "all/" + AsyncCalls.encode(profileId),
+						profileAttributes, token)),
+				json -> JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles());
+	}
+
+	/**
+	 * Update an extended profile
+	 *
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @param token
+	 *            an authorization token
+	 */
+	public CompletableFuture<Void> updateExtendedProfile(String userId, String profileId,
+			Map<String, Object> content, String token) {
+		if (userId == null || profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.putJson(profileManagerURL,
+						EXTENDED_PROFILE + "app/" + userId + "/" + profileId,
+						content, token)),
+				json -> null);
+	}
+
+	/**
+	 * Updates an extended profile of authenticated user
+	 *
+	 * @param profileId
+	 * @param content
+	 * @param token
+	 */
+	public CompletableFuture<Void> updateMyExtendedProfile(String profileId, Map<String, Object> content,
+			String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.putJson(profileManagerURL,
+						EXTENDED_PROFILE + "me/" + AsyncCalls.encode(profileId),
+						content, token)),
+				json -> null);
+	}
+
+	/**
+	 * Delete an extended profile
+	 *
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 */
+	public CompletableFuture<Void> deleteExtendedProfile(String userId, String profileId, String token) {
+		if (userId == null || profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.delete(profileManagerURL,
+						EXTENDED_PROFILE + "app/" + userId + "/" + AsyncCalls.encode(profileId), token)),
+				json -> null);
+	}
+
+	/**
+	 * Deletes an extended profile of authenticated user
+	 *
+	 * @param profileId
+	 * @param token
+	 */
+	public CompletableFuture<Void> deleteMyExtendedProfile(String profileId, String token) {
+		if (profileId == null) return AsyncCalls.failed(INCOMPLETE);
+		return AsyncCalls.map(
+				transport.execute(ProfileRequest.delete(profileManagerURL,
+						EXTENDED_PROFILE + "me/" + AsyncCalls.encode(profileId), token)),
+				json -> null);
+	}
+}
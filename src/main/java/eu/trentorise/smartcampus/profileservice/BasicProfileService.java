@@ -1,219 +1,585 @@
-/*******************************************************************************
- * Copyright 2012-2013 Trento RISE
- * 
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- * 
- *        http://www.apache.org/licenses/LICENSE-2.0
- * 
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- ******************************************************************************/
-package eu.trentorise.smartcampus.profileservice;
-
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import eu.trentorise.smartcampus.network.JsonUtils;
-import eu.trentorise.smartcampus.network.RemoteConnector;
-import eu.trentorise.smartcampus.network.RemoteException;
-import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
-import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
-import eu.trentorise.smartcampus.profileservice.model.BasicProfiles;
-
-/**
- * Class used to connect with the profile service.
- * 
- */
-public class BasicProfileService {
-
-	private String profileManagerURL;
-
-	/** Basic profile path */
-	private static final String BASIC_PROFILE = "basicprofile/";
-	/** account profile path */
-	private static final String ACCOUNT_PROFILE = "accountprofile/";
-
-	private static final String ALL = "all/";
-
-	/**
-	 * 
-	 * @param serverURL
-	 *            address of the server to connect to
-	 */
-	public BasicProfileService(String serverURL) {
-		this.profileManagerURL = serverURL;
-		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
-	}
-
-	/**
-	 * Return the basic profile associated to the access token owner
-	 * 
-	 * @param token
-	 *            a user access token
-	 * @return a basic profile
-	 * @throws ProfileServiceException
-	 */
-	public BasicProfile getBasicProfile(String token) throws SecurityException,
-			ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL, BASIC_PROFILE + "me", token);
-			return JsonUtils.toObject(json, BasicProfile.class);
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Return the account profile associated to the access token owner
-	 * 
-	 * @param token
-	 *            a user access token
-	 * @return a basic profile
-	 * @throws ProfileServiceException
-	 */
-	public AccountProfile getAccountProfile(String token) throws SecurityException,
-			ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL, ACCOUNT_PROFILE + "me", token);
-			return AccountProfile.valueOf(json);
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Return the basic profile associated to the access token owner
-	 * 
-	 * @param token
-	 *            a user or client access token
-	 * @return a basic profile
-	 * @throws ProfileServiceException
-	 */
-	public BasicProfile getBasicProfileBySocialId(String socialId, String token) throws SecurityException,
-			ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL, BASIC_PROFILE + "social/"+socialId, token);
-			return JsonUtils.toObject(json, BasicProfile.class);
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Return a basic profile of a user identified by his userId
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param token
-	 *            an user or client access token
-	 * @return a basic profile
-	 * @throws ProfileServiceException
-	 */
-	public BasicProfile getBasicProfile(String userId, String token)
-			throws SecurityException, ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					BASIC_PROFILE+ ALL + userId + "/", token);
-			return JsonUtils.toObject(json, BasicProfile.class);
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Return a (filtered) list of profiles
-	 * 
-	 * @param filter
-	 *            if not null, filter the results by full name (name and
-	 *            surname)
-	 * @param token
-	 *            an user or client access token
-	 * @return a list of basic profile
-	 * @throws ProfileServiceException
-	 */
-	public List<BasicProfile> getBasicProfiles(String filter, String token)
-			throws SecurityException, ProfileServiceException {
-		String query = null;
-		if (filter != null) {
-			try {
-				query = "?filter="
-						+ URLEncoder.encode(filter == null ? "" : filter, "utf8");
-			} catch (UnsupportedEncodingException e1) {
-				throw new ProfileServiceException(e1);
-			}
-		} else {
-			query = "";
-		}
-
-		String json;
-		try {
-			json = RemoteConnector.getJSON(profileManagerURL, BASIC_PROFILE+ALL + query, token);
-		} catch (RemoteException e1) {
-			throw new ProfileServiceException(e1);
-		}
-
-		try {
-			return JsonUtils.toObject(json, BasicProfiles.class).getProfiles();
-		} catch (Exception e) {
-			return Collections.emptyList();
-		}
-	}
-
-	/**
-	 * Returns the list of basic profiles of a list of users
-	 * 
-	 * @param userIds
-	 * @param token a user or client access token
-	 * @return
-	 * @throws ProfileServiceException
-	 */
-	public List<BasicProfile> getBasicProfilesByUserId(List<String> userIds, String token) throws ProfileServiceException {
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put("userIds", userIds);
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					BASIC_PROFILE+"profiles", token, parameters);
-			return JsonUtils.toObject(json, BasicProfiles.class).getProfiles();
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-	
-	/**
-	 * Returns the list of account profiles of a list of users
-	 * 
-	 * @param userIds
-	 * @param token a user or client access token
-	 * @return
-	 * @throws ProfileServiceException
-	 */
-	public List<AccountProfile> getAccountProfilesByUserId(List<String> userIds, String token) throws ProfileServiceException {
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put("userIds", userIds);
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					ACCOUNT_PROFILE+ "profiles", token, parameters);
-			Map<String,Object> map = JsonUtils.toObject(json, Map.class);
-			List<Object> list = (List<Object>) map.get("profiles");
-			List<AccountProfile> profiles = new ArrayList<AccountProfile>();
-			if (list != null) {
-				for (Object o : list) {
-					profiles.add(AccountProfile.valueOf((Map)o));
-				}
-			}
-			return profiles;
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-}
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.cache.Validated;
+import eu.trentorise.smartcampus.profileservice.http.CircuitBreakerConfig;
+import eu.trentorise.smartcampus.profileservice.http.CircuitBreakerTransport;
+import eu.trentorise.smartcampus.profileservice.http.CircuitOpenException;
+import eu.trentorise.smartcampus.profileservice.http.RateLimitedException;
+import eu.trentorise.smartcampus.profileservice.http.RateLimiterConfig;
+import eu.trentorise.smartcampus.profileservice.http.RateLimitingTransport;
+import eu.trentorise.smartcampus.profileservice.http.Deadline;
+import eu.trentorise.smartcampus.profileservice.http.InstrumentedTransport;
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.ResponseReader;
+import eu.trentorise.smartcampus.profileservice.http.RetryPolicy;
+import eu.trentorise.smartcampus.profileservice.http.RetryingTransport;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+import eu.trentorise.smartcampus.profileservice.metrics.InMemoryProfileMetrics;
+import eu.trentorise.smartcampus.profileservice.metrics.ProfileMetrics;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfiles;
+import eu.trentorise.smartcampus.profileservice.model.CompactAccountProfile;
+
+/**
+ * Class used to connect with the profile service.
+ * 
+ * The connect and read timeouts of the single requests are set on the
+ * transport (see {@link PooledHttpTransport.Builder}). The calls made within
+ * a {@link Deadline} scope, including their retries and concurrent requests,
+ * fail when the deadline expires with a {@link ProfileServiceException}
+ * caused by a {@link eu.trentorise.smartcampus.profileservice.http.DeadlineExceededException}.
+ * 
+ */
+public class BasicProfileService {
+
+	private String profileManagerURL;
+
+	private ProfileTransport transport;
+	/** transport of the calls, before instrumentation */
+	private ProfileTransport baseTransport;
+
+	private ProfileMetrics metrics = ProfileMetrics.NOOP;
+	private RetryPolicy retryPolicy;
+	private CircuitBreakerConfig circuitBreaker;
+	private RateLimiterConfig rateLimit;
+	private RateLimiterConfig tokenRateLimit;
+
+	private int batchSize;
+	private ExecutorService batchExecutor;
+
+	/** Basic profile path */
+	private static final String BASIC_PROFILE = "basicprofile/";
+	/** account profile path */
+	private static final String ACCOUNT_PROFILE = "accountprofile/";
+
+	private static final String ALL = "all/";
+
+	/** Profiles of a page of {@link #streamBasicProfiles(String, String)} */
+	private static final int DEFAULT_PAGE_SIZE = 500;
+	/** Pages read ahead by the profile iterators */
+	private static final int PREFETCH_PAGES = 1;
+
+	/** Reader of a single basic profile, parsed while received */
+	private static final ResponseReader<BasicProfile> PROFILE_READER = new ResponseReader<BasicProfile>() {
+		@Override
+		public BasicProfile read(InputStream content) throws IOException {
+			return ProfileStreamParser.readObject(content, ProfileStreamParser.BASIC_PROFILE);
+		}
+	};
+
+	/**
+	 * 
+	 * @param serverURL
+	 *            address of the server to connect to
+	 */
+	public BasicProfileService(String serverURL) {
+		this(serverURL, PooledHttpTransport.getDefault());
+	}
+
+	/**
+	 * 
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 */
+	public BasicProfileService(String serverURL, ProfileTransport transport) {
+		this.profileManagerURL = serverURL;
+		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
+		this.transport = transport;
+		this.baseTransport = transport;
+	}
+
+	/**
+	 * Report count, latency, status and payload size of the calls of this
+	 * client, by endpoint.
+	 * 
+	 * @param metrics
+	 *            receiver of the measurements (see
+	 *            {@link InMemoryProfileMetrics}), null or
+	 *            {@link ProfileMetrics#NOOP} to disable the instrumentation
+	 */
+	public void setMetrics(ProfileMetrics metrics) {
+		this.metrics = metrics == null ? ProfileMetrics.NOOP : metrics;
+		configureTransport();
+	}
+
+	/**
+	 * Retry the idempotent calls (GET, PUT and DELETE) failed for a transient
+	 * error.
+	 * 
+	 * @param policy
+	 *            backoff and retry budget (see {@link RetryPolicy#builder()}),
+	 *            null to disable the retries
+	 */
+	public void setRetryPolicy(RetryPolicy policy) {
+		this.retryPolicy = policy;
+		configureTransport();
+	}
+
+	/**
+	 * Fail immediately the calls of an endpoint family (basicprofile,
+	 * accountprofile, extprofile) while the server is failing or slow on
+	 * them, instead of waiting for the timeouts. The calls refused fail with
+	 * a {@link ProfileServiceException} caused by a
+	 * {@link CircuitOpenException}.
+	 * 
+	 * @param config
+	 *            thresholds of the circuit breakers (see
+	 *            {@link CircuitBreakerConfig#builder()}), null to disable
+	 */
+	public void setCircuitBreaker(CircuitBreakerConfig config) {
+		this.circuitBreaker = config;
+		configureTransport();
+	}
+
+	/**
+	 * Keep the calls within a request rate and an adaptive concurrency limit,
+	 * for the whole client and for each access token, to avoid being
+	 * throttled by the server. Each attempt of a retried call counts as a
+	 * request. The calls exceeding the limits for longer than they may wait
+	 * fail with a {@link ProfileServiceException} caused by a
+	 * {@link RateLimitedException}.
+	 * 
+	 * @param global
+	 *            limits of all the calls of this client (see
+	 *            {@link RateLimiterConfig#builder()}), null for none
+	 * @param perToken
+	 *            limits of the calls of each access token, null for none
+	 */
+	public void setRateLimit(RateLimiterConfig global, RateLimiterConfig perToken) {
+		this.rateLimit = global;
+		this.tokenRateLimit = perToken;
+		configureTransport();
+	}
+
+	/**
+	 * Build the chain of the transport decorators: the retries are within the
+	 * circuit breaker, so that an open circuit is not retried, and both are
+	 * within the instrumentation, so that the latency of a call includes its
+	 * retries. The rate limits apply to each attempt.
+	 */
+	private void configureTransport() {
+		ProfileTransport chain = baseTransport;
+		if (rateLimit != null || tokenRateLimit != null) {
+			chain = new RateLimitingTransport(chain, rateLimit, tokenRateLimit);
+		}
+		if (retryPolicy != null) {
+			chain = new RetryingTransport(chain, retryPolicy, metrics);
+		}
+		if (circuitBreaker != null) {
+			chain = new CircuitBreakerTransport(chain, circuitBreaker);
+		}
+		if (metrics != ProfileMetrics.NOOP) {
+			chain = new InstrumentedTransport(chain, metrics);
+		}
+		this.transport = chain;
+	}
+
+	/**
+	 * Split the lookups by a list of userIds in requests of at most
+	 * <code>batchSize</code> ids, executed concurrently on the executor.
+	 * 
+	 * @param batchSize
+	 *            maximum number of ids of a single request, 0 to disable
+	 *            batching
+	 * @param executor
+	 *            executor of the requests (see
+	 *            {@link ProfileExecutors#newBoundedExecutor(int)} and, on JDK
+	 *            21, {@link ProfileExecutors#newVirtualThreadExecutor(int)}),
+	 *            if null the requests are executed sequentially by the
+	 *            calling thread
+	 */
+	public void setBatching(int batchSize, ExecutorService executor) {
+		this.batchSize = batchSize;
+		this.batchExecutor = executor;
+	}
+
+	/**
+	 * Return the basic profile associated to the access token owner
+	 * 
+	 * @param token
+	 *            a user access token
+	 * @return a basic profile
+	 * @throws ProfileServiceException
+	 */
+	public BasicProfile getBasicProfile(String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			String json = transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + "me", token));
+			return JsonUtils.toObject(json, BasicProfile.class);
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return the account profile associated to the access token owner
+	 * 
+	 * @param token
+	 *            a user access token
+	 * @return a basic profile
+	 * @throws ProfileServiceException
+	 */
+	public AccountProfile getAccountProfile(String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			return transport.execute(ProfileRequest.get(profileManagerURL, ACCOUNT_PROFILE + "me", token),
+					new ResponseReader<AccountProfile>() {
+						@Override
+						public AccountProfile read(InputStream content) throws IOException {
+							return ProfileStreamParser.readObject(content, ProfileStreamParser.ACCOUNT_PROFILE);
+						}
+					});
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return the account profile associated to the access token owner, in
+	 * the immutable compact form
+	 * 
+	 * @param token
+	 *            a user access token
+	 * @return an account profile
+	 * @throws ProfileServiceException
+	 */
+	public CompactAccountProfile getCompactAccountProfile(String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			return transport.execute(ProfileRequest.get(profileManagerURL, ACCOUNT_PROFILE + "me", token),
+					new ResponseReader<CompactAccountProfile>() {
+						@Override
+						public CompactAccountProfile read(InputStream content) throws IOException {
+							return ProfileStreamParser.readObject(content, ProfileStreamParser.COMPACT_ACCOUNT_PROFILE);
+						}
+					});
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return the basic profile associated to the access token owner
+	 * 
+	 * @param token
+	 *            a user or client access token
+	 * @return a basic profile
+	 * @throws ProfileServiceException
+	 */
+	public BasicProfile getBasicProfileBySocialId(String socialId, String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			String json = transport.execute(ProfileRequest.get(profileManagerURL, BASIC_PROFILE + "social/"+socialId, token));
+			return JsonUtils.toObject(json, BasicProfile.class);
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return a basic profile of a user identified by his userId
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param token
+	 *            an user or client access token
+	 * @return a basic profile
+	 * @throws ProfileServiceException
+	 */
+	public BasicProfile getBasicProfile(String userId, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			String json = transport.execute(ProfileRequest.get(profileManagerURL,
+					BASIC_PROFILE+ ALL + userId + "/", token));
+			return JsonUtils.toObject(json, BasicProfile.class);
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Conditional read of the basic profile of a user: the validators of the
+	 * previous result are sent with the request, and the server answers
+	 * without body if the profile has not changed.
+	 * 
+	 * @param userId
+	 *            the id of the user
+	 * @param token
+	 *            an user or client access token
+	 * @param cached
+	 *            the previous result, null if none
+	 * @return the previous result if the profile has not changed, the new
+	 *         profile with its validators otherwise
+	 * @throws ProfileServiceException
+	 */
+	Validated<BasicProfile> getBasicProfile(String userId, String token, Validated<BasicProfile> cached)
+			throws SecurityException, ProfileServiceException {
+		try {
+			return transport.execute(ValidatingReader.conditional(ProfileRequest.get(profileManagerURL,
+					BASIC_PROFILE + ALL + userId + "/", token), cached), new ValidatingReader<BasicProfile>(cached,
+					PROFILE_READER));
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return a (filtered) list of profiles
+	 * 
+	 * @param filter
+	 *            if not null, filter the results by full name (name and
+	 *            surname)
+	 * @param token
+	 *            an user or client access token
+	 * @return a list of basic profile
+	 * @throws ProfileServiceException
+	 */
+	public List<BasicProfile> getBasicProfiles(String filter, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			return transport.execute(filterRequest(filter, token), new ResponseReader<List<BasicProfile>>() {
+				@Override
+				public List<BasicProfile> read(InputStream content) throws IOException {
+					return ProfileStreamParser.readList(content, ProfileStreamParser.BASIC_PROFILE);
+				}
+			});
+		} catch (RemoteException e1) {
+			if (e1.getCause() instanceof JsonProcessingException) {
+				return Collections.emptyList();
+			}
+			throw new ProfileServiceException(e1);
+		}
+	}
+
+	/**
+	 * Pass the (filtered) profiles to the callback while the response is
+	 * received, without collecting them in a list
+	 * 
+	 * @param filter
+	 *            if not null, filter the results by full name (name and
+	 *            surname)
+	 * @param token
+	 *            an user or client access token
+	 * @param callback
+	 *            receiver of the profiles
+	 * @return the number of profiles read
+	 * @throws ProfileServiceException
+	 */
+	public int getBasicProfiles(String filter, String token, final ProfileCallback<BasicProfile> callback)
+			throws SecurityException, ProfileServiceException {
+		try {
+			return transport.execute(filterRequest(filter, token), new ResponseReader<Integer>() {
+				@Override
+				public Integer read(InputStream content) throws IOException {
+					return ProfileStreamParser.readEach(content, ProfileStreamParser.BASIC_PROFILE, callback);
+				}
+			});
+		} catch (RemoteException e1) {
+			throw new ProfileServiceException(e1);
+		}
+	}
+
+	/**
+	 * Iterate lazily over the (filtered) profiles. The response is parsed in
+	 * the background in pages of <code>pageSize</code> profiles, reading ahead
+	 * at most {@value #PREFETCH_PAGES} pages while the current one is consumed,
+	 * so that the memory used does not depend on the number of profiles. The
+	 * iterator must be closed if it is not consumed to the end.
+	 * 
+	 * @param filter
+	 *            if not null, filter the results by full name (name and
+	 *            surname)
+	 * @param token
+	 *            an user or client access token
+	 * @param pageSize
+	 *            number of profiles of a page
+	 * @return an iterator over the profiles
+	 * @throws ProfileServiceException
+	 */
+	public ProfileIterator<BasicProfile> iterateBasicProfiles(String filter, String token, int pageSize)
+			throws ProfileServiceException {
+		if (pageSize <= 0)
+			throw new ProfileServiceException("Page size must be positive");
+		return new ProfileIterator<BasicProfile>(transport, filterRequest(filter, token),
+				ProfileStreamParser.BASIC_PROFILE, pageSize, PREFETCH_PAGES,
+				ProfileExecutors.getBackgroundExecutor());
+	}
+
+	/**
+	 * Stream lazily over the (filtered) profiles, see
+	 * {@link #iterateBasicProfiles(String, String, int)}. The stream must be
+	 * closed if it is not consumed to the end.
+	 * 
+	 * @param filter
+	 *            if not null, filter the results by full name (name and
+	 *            surname)
+	 * @param token
+	 *            an user or client access token
+	 * @return a sequential stream of the profiles
+	 * @throws ProfileServiceException
+	 */
+	public Stream<BasicProfile> streamBasicProfiles(String filter, String token) throws ProfileServiceException {
+		return iterateBasicProfiles(filter, token, DEFAULT_PAGE_SIZE).stream();
+	}
+
+	private ProfileRequest filterRequest(String filter, String token) throws ProfileServiceException {
+		String query = null;
+		if (filter != null) {
+			try {
+				query = "?filter="
+						+ URLEncoder.encode(filter == null ? "" : filter, "utf8");
+			} catch (UnsupportedEncodingException e1) {
+				throw new ProfileServiceException(e1);
+			}
+		} else {
+			query = "";
+		}
+		return ProfileRequest.get(profileManagerURL, BASIC_PROFILE+ALL + query, token);
+	}
+
+	/**
+	 * Returns the list of basic profiles of a list of users
+	 * 
+	 * @param userIds
+	 * @param token a user or client access token
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<BasicProfile> getBasicProfilesByUserId(List<String> userIds, final String token) throws ProfileServiceException {
+		if (batchSize > 0 && userIds.size() > batchSize) {
+			return new ChunkedLookup<BasicProfile>() {
+				@Override
+				protected List<BasicProfile> load(List<String> chunk) throws ProfileServiceException {
+					return loadBasicProfiles(chunk, token);
+				}
+
+				@Override
+				protected String userId(BasicProfile item) {
+					return item.getUserId();
+				}
+			}.loadAll(userIds, batchSize, batchExecutor);
+		}
+		return loadBasicProfiles(userIds, token);
+	}
+
+	private List<BasicProfile> loadBasicProfiles(List<String> userIds, String token) throws ProfileServiceException {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		try {
+			String json = transport.execute(ProfileRequest.get(profileManagerURL,
+					BASIC_PROFILE+"profiles", token, parameters));
+			return JsonUtils.toObject(json, BasicProfiles.class).getProfiles();
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+	
+	/**
+	 * Returns the list of account profiles of a list of users
+	 * 
+	 * @param userIds
+	 * @param token a user or client access token
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<AccountProfile> getAccountProfilesByUserId(List<String> userIds, final String token) throws ProfileServiceException {
+		if (batchSize > 0 && userIds.size() > batchSize) {
+			return new ChunkedLookup<AccountProfile>() {
+				@Override
+				protected List<AccountProfile> load(List<String> chunk) throws ProfileServiceException {
+					return loadAccountProfiles(chunk, token);
+				}
+			}.loadAll(userIds, batchSize, batchExecutor);
+		}
+		return loadAccountProfiles(userIds, token);
+	}
+
+	/**
+	 * Returns the list of account profiles of a list of users, in the
+	 * immutable compact form. The profiles are built while the response is
+	 * received.
+	 * 
+	 * @param userIds
+	 * @param token a user or client access token
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<CompactAccountProfile> getCompactAccountProfilesByUserId(List<String> userIds, final String token) throws ProfileServiceException {
+		if (batchSize > 0 && userIds.size() > batchSize) {
+			return new ChunkedLookup<CompactAccountProfile>() {
+				@Override
+				protected List<CompactAccountProfile> load(List<String> chunk) throws ProfileServiceException {
+					return loadCompactAccountProfiles(chunk, token);
+				}
+			}.loadAll(userIds, batchSize, batchExecutor);
+		}
+		return loadCompactAccountProfiles(userIds, token);
+	}
+
+	private List<CompactAccountProfile> loadCompactAccountProfiles(List<String> userIds, String token) throws ProfileServiceException {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		try {
+			return transport.execute(ProfileRequest.get(profileManagerURL,
+					ACCOUNT_PROFILE+ "profiles", token, parameters), new ResponseReader<List<CompactAccountProfile>>() {
+						@Override
+						public List<CompactAccountProfile> read(InputStream content) throws IOException {
+							return ProfileStreamParser.readList(content, ProfileStreamParser.COMPACT_ACCOUNT_PROFILE);
+						}
+					});
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	private List<AccountProfile> loadAccountProfiles(List<String> userIds, String token) throws ProfileServiceException {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		try {
+			return transport.execute(ProfileRequest.get(profileManagerURL,
+					ACCOUNT_PROFILE+ "profiles", token, parameters), new ResponseReader<List<AccountProfile>>() {
+						@Override
+						public List<AccountProfile> read(InputStream content) throws IOException {
+							return ProfileStreamParser.readList(content, ProfileStreamParser.ACCOUNT_PROFILE);
+						}
+					});
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+}
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.List;
+
+import eu.trentorise.smartcampus.profileservice.cache.CacheStats;
+import eu.trentorise.smartcampus.profileservice.cache.ProfileCache;
+import eu.trentorise.smartcampus.profileservice.cache.Revalidator;
+import eu.trentorise.smartcampus.profileservice.cache.TokenScopedCache;
+import eu.trentorise.smartcampus.profileservice.cache.Validated;
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+/**
+ * {@link BasicProfileService} keeping the basic profiles read by userId or
+ * socialId in a bounded cache. A cached profile is reachable by both its
+ * userId and its socialId, whatever lookup loaded it.
+ * <p>
+ * Optionally the profiles of the token owner (basicprofile/me and
+ * accountprofile/me) are cached as well, keyed by a digest of the access
+ * token.
+ * <p>
+ * With {@link #setStaleWhileRevalidate(long, int)} a profile read by userId
+ * that expired recently is returned at once, while it is reloaded in the
+ * background.
+ * <p>
+ * With {@link #setConditionalRequests(long)} the validators of the profiles
+ * read by userId are kept after their expiration: the following read is a
+ * conditional request, and the profile is parsed again only if changed.
+ *
+ */
+public class CachingBasicProfileService extends BasicProfileService {
+
+	private static final String USER_KEY = "u:";
+	private static final String SOCIAL_KEY = "s:";
+
+	private static final String ME_BASIC = "basicprofile";
+	private static final String ME_ACCOUNT = "accountprofile";
+
+	private ProfileCache<String, BasicProfile> profileCache;
+	/** profiles with their validators, kept beyond their expiration */
+	private ProfileCache<String, Validated<BasicProfile>> validatedCache;
+	private final int maxSize;
+	private TokenScopedCache<Object> tokenCache;
+
+	private long fallbackWindow;
+	private long revalidateWindow;
+	private Revalidator revalidator;
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param maxSize
+	 *            maximum number of cached profiles
+	 * @param ttl
+	 *            time to live of a cached profile, in milliseconds
+	 */
+	public CachingBasicProfileService(String serverURL, int maxSize, long ttl) {
+		this(serverURL, PooledHttpTransport.getDefault(), maxSize, ttl);
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 * @param maxSize
+	 *            maximum number of cached profiles
+	 * @param ttl
+	 *            time to live of a cached profile, in milliseconds
+	 */
+	public CachingBasicProfileService(String serverURL, ProfileTransport transport, int maxSize, long ttl) {
+		super(serverURL, transport);
+		this.maxSize = maxSize;
+		// each profile takes one entry per index
+		this.profileCache = new ProfileCache<String, BasicProfile>(maxSize * 2, ttl);
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 * @param maxSize
+	 *            maximum number of cached profiles
+	 * @param ttl
+	 *            time to live of a cached profile, in milliseconds
+	 * @param tokenCacheSize
+	 *            maximum number of cached token owner profiles
+	 * @param tokenTtl
+	 *            time to live of a cached token owner profile, in
+	 *            milliseconds
+	 */
+	public CachingBasicProfileService(String serverURL, ProfileTransport transport, int maxSize, long ttl,
+			int tokenCacheSize, long tokenTtl) {
+		this(serverURL, transport, maxSize, ttl);
+		this.tokenCache = new TokenScopedCache<Object>(tokenCacheSize, tokenTtl);
+	}
+
+	@Override
+	public BasicProfile getBasicProfile(String token) throws SecurityException, ProfileServiceException {
+		if (tokenCache == null) return super.getBasicProfile(token);
+
+		BasicProfile profile = (BasicProfile) tokenCache.get(token, ME_BASIC);
+		if (profile == null) {
+			try {
+				profile = super.getBasicProfile(token);
+			} catch (ProfileServiceException e) {
+				return fallback(e, (BasicProfile) tokenCache.getStale(token, ME_BASIC));
+			}
+			tokenCache.put(token, ME_BASIC, profile);
+		}
+		return profile;
+	}
+
+	@Override
+	public AccountProfile getAccountProfile(String token) throws SecurityException, ProfileServiceException {
+		if (tokenCache == null) return super.getAccountProfile(token);
+
+		AccountProfile profile = (AccountProfile) tokenCache.get(token, ME_ACCOUNT);
+		if (profile == null) {
+			try {
+				profile = super.getAccountProfile(token);
+			} catch (ProfileServiceException e) {
+				return fallback(e, (AccountProfile) tokenCache.getStale(token, ME_ACCOUNT));
+			}
+			tokenCache.put(token, ME_ACCOUNT, profile);
+		}
+		return profile;
+	}
+
+	@Override
+	public BasicProfile getBasicProfileBySocialId(String socialId, String token) throws SecurityException,
+			ProfileServiceException {
+		BasicProfile profile = profileCache.get(SOCIAL_KEY + socialId);
+		if (profile == null) {
+			try {
+				profile = super.getBasicProfileBySocialId(socialId, token);
+			} catch (ProfileServiceException e) {
+				return fallback(e, profileCache.getStale(SOCIAL_KEY + socialId, fallbackWindow));
+			}
+			cache(profile);
+		}
+		return profile;
+	}
+
+	@Override
+	public BasicProfile getBasicProfile(final String userId, final String token) throws SecurityException,
+			ProfileServiceException {
+		final String key = USER_KEY + userId;
+		BasicProfile profile = profileCache.get(key);
+		if (profile == null && revalidator != null) {
+			profile = profileCache.getStale(key, revalidateWindow);
+			if (profile != null) {
+				// a write invalidating the profile meanwhile discards the refresh
+				final long version = profileCache.version(key);
+				revalidator.refresh(key, () -> {
+					try {
+						BasicProfile fresh = load(userId, token);
+						if (profileCache.replace(key, version, fresh) && fresh.getSocialId() != null) {
+							profileCache.put(SOCIAL_KEY + fresh.getSocialId(), fresh);
+						}
+					} catch (SecurityException | ProfileServiceException e) {
+						// the stale profile is kept
+					}
+				});
+				return profile;
+			}
+		}
+		if (profile == null) {
+			try {
+				profile = load(userId, token);
+			} catch (ProfileServiceException e) {
+				return fallback(e, profileCache.getStale(key, fallbackWindow));
+			}
+			cache(profile);
+		}
+		return profile;
+	}
+
+	@Override
+	public List<BasicProfile> getBasicProfilesByUserId(List<String> userIds, String token)
+			throws ProfileServiceException {
+		List<BasicProfile> profiles = super.getBasicProfilesByUserId(userIds, token);
+		if (profiles != null) {
+			for (BasicProfile profile : profiles) {
+				cache(profile);
+			}
+		}
+		return profiles;
+	}
+
+	/**
+	 * When the circuit of an endpoint is open (see
+	 * {@link #setCircuitBreaker(eu.trentorise.smartcampus.profileservice.http.CircuitBreakerConfig)}),
+	 * return the cached profiles even if expired, up to <code>maxStale</code>
+	 * milliseconds after their expiration.
+	 * 
+	 * @param maxStale
+	 *            time in milliseconds the expired profiles are kept for the
+	 *            fallback, 0 to disable it
+	 */
+	public void setStaleFallback(long maxStale) {
+		fallbackWindow = Math.max(0, maxStale);
+		profileCache.setStaleTtl(Math.max(fallbackWindow, revalidateWindow));
+		if (tokenCache != null) tokenCache.setStaleTtl(fallbackWindow);
+	}
+
+	/**
+	 * Return the profiles read by userId up to <code>staleWindow</code>
+	 * milliseconds after their expiration, refreshing them in the background.
+	 * If the refresh fails the stale profile is kept until the end of the
+	 * window; then it is read again by the caller.
+	 * 
+	 * @param staleWindow
+	 *            time in milliseconds an expired profile is still returned,
+	 *            0 to disable the background refresh
+	 * @param maxConcurrency
+	 *            maximum number of concurrent refreshes, further expired
+	 *            profiles are refreshed by the following reads
+	 */
+	public void setStaleWhileRevalidate(long staleWindow, int maxConcurrency) {
+		revalidateWindow = Math.max(0, staleWindow);
+		revalidator = revalidateWindow > 0 ? new Revalidator(maxConcurrency,
+				ProfileExecutors.getBackgroundExecutor()) : null;
+		profileCache.setStaleTtl(Math.max(fallbackWindow, revalidateWindow));
+	}
+
+	/**
+	 * Keep the validators (ETag, Last-Modified) of the profiles read by
+	 * userId, so that the read following their expiration is a conditional
+	 * request: if the profile has not changed the server answers without
+	 * body and the cached profile is returned without parsing.
+	 * 
+	 * @param validatorTtl
+	 *            time in milliseconds the validators are kept after the
+	 *            read, 0 to disable the conditional requests
+	 */
+	public void setConditionalRequests(long validatorTtl) {
+		validatedCache = validatorTtl > 0 ? new ProfileCache<String, Validated<BasicProfile>>(maxSize,
+				validatorTtl) : null;
+	}
+
+	/**
+	 * Remove the profile of the user from the cache
+	 *
+	 * @param profile
+	 */
+	public void invalidate(BasicProfile profile) {
+		if (profile.getUserId() != null) profileCache.invalidate(USER_KEY + profile.getUserId());
+		if (profile.getSocialId() != null) profileCache.invalidate(SOCIAL_KEY + profile.getSocialId());
+	}
+
+	/**
+	 * Remove all the cached profiles
+	 */
+	public void invalidateAll() {
+		profileCache.invalidateAll();
+		if (validatedCache != null) validatedCache.invalidateAll();
+		if (tokenCache != null) tokenCache.invalidateAll();
+	}
+
+	/**
+	 * @return hit/miss counters of the profile cache
+	 */
+	public CacheStats getCacheStats() {
+		return profileCache.getStats();
+	}
+
+	/**
+	 * @return hit/miss counters of the token owner profile cache, null if
+	 *         not enabled
+	 */
+	public CacheStats getTokenCacheStats() {
+		return tokenCache == null ? null : tokenCache.getStats();
+	}
+
+	/**
+	 * @return the stale profile if the call failed for an open circuit
+	 */
+	static <T> T fallback(ProfileServiceException e, T stale) throws ProfileServiceException {
+		if (stale == null || !e.isCircuitOpen()) throw e;
+		return stale;
+	}
+
+	private BasicProfile load(String userId, String token) throws SecurityException, ProfileServiceException {
+		ProfileCache<String, Validated<BasicProfile>> validated = validatedCache;
+		if (validated == null) return super.getBasicProfile(userId, token);
+
+		Validated<BasicProfile> cached = validated.get(USER_KEY + userId);
+		Validated<BasicProfile> result = getBasicProfile(userId, token, cached);
+		// a 304 response renews the validators
+		if (result.hasValidators()) validated.put(USER_KEY + userId, result);
+		return result.getValue();
+	}
+
+	private void cache(BasicProfile profile) {
+		if (profile == null) return;
+		if (profile.getUserId() != null) profileCache.put(USER_KEY + profile.getUserId(), profile);
+		if (profile.getSocialId() != null) profileCache.put(SOCIAL_KEY + profile.getSocialId(), profile);
+	}
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import eu.trentorise.smartcampus.profileservice.cache.CacheStats;
+import eu.trentorise.smartcampus.profileservice.cache.ProfileCache;
+import eu.trentorise.smartcampus.profileservice.cache.Revalidator;
+import eu.trentorise.smartcampus.profileservice.cache.TokenScopedCache;
+import eu.trentorise.smartcampus.profileservice.cache.Validated;
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * {@link ExtProfileService} caching the extended profiles of the token owner
+ * (extprofile/me). Entries are keyed by a digest of the access token and are
+ * dropped when the profiles of the same token are written through this
+ * client.
+ * <p>
+ * Optionally the extended profiles read by userId and profileId are cached
+ * as well, and with {@link #setStaleWhileRevalidate(long, int)} a profile
+ * that expired recently is returned at once, while it is reloaded in the
+ * background.
+ * <p>
+ * With {@link #setConditionalRequests(long)} the validators of the profiles
+ * are kept after their expiration: the following read is a conditional
+ * request, and the profiles are parsed again only if changed.
+ *
+ */
+public class CachingExtProfileService extends ExtProfileService {
+
+	private static final String ME_ALL = "extprofile";
+	private static final String ME_PROFILE = "extprofile/";
+
+	private TokenScopedCache<Object> tokenCache;
+	private ProfileCache<String, ExtendedProfile> profileCache;
+	private final int tokenCacheSize;
+	private int maxSize;
+
+	/** profiles with their validators, kept beyond their expiration */
+	private ProfileCache<String, Validated<ExtendedProfile>> validatedCache;
+	private TokenScopedCache<Validated<List<ExtendedProfile>>> validatedTokenCache;
+
+	private long fallbackWindow;
+	private long revalidateWindow;
+	private Revalidator revalidator;
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param tokenCacheSize
+	 *            maximum number of cached entries
+	 * @param tokenTtl
+	 *            time to live of a cached entry, in milliseconds
+	 */
+	public CachingExtProfileService(String serverURL, int tokenCacheSize, long tokenTtl) {
+		this(serverURL, PooledHttpTransport.getDefault(), tokenCacheSize, tokenTtl);
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 * @param tokenCacheSize
+	 *            maximum number of cached entries
+	 * @param tokenTtl
+	 *            time to live of a cached entry, in milliseconds
+	 */
+	public CachingExtProfileService(String serverURL, ProfileTransport transport, int tokenCacheSize, long tokenTtl) {
+		super(serverURL, transport);
+		this.tokenCacheSize = tokenCacheSize;
+		this.tokenCache = new TokenScopedCache<Object>(tokenCacheSize, tokenTtl);
+	}
+
+	/**
+	 *
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 * @param maxSize
+	 *            maximum number of cached profiles read by userId
+	 * @param ttl
+	 *            time to live of a cached profile, in milliseconds
+	 * @param tokenCacheSize
+	 *            maximum number of cached token owner entries
+	 * @param tokenTtl
+	 *            time to live of a cached token owner entry, in milliseconds
+	 */
+	public CachingExtProfileService(String serverURL, ProfileTransport transport, int maxSize, long ttl,
+			int tokenCacheSize, long tokenTtl) {
+		this(serverURL, transport, tokenCacheSize, tokenTtl);
+		this.maxSize = maxSize;
+		this.profileCache = new ProfileCache<String, ExtendedProfile>(maxSize, ttl);
+	}
+
+	@Override
+	public ExtendedProfile getExtendedProfile(final String userId, final String profileId, final String token)
+			throws SecurityException, ProfileServiceException {
+		if (profileCache == null || userId == null || profileId == null) {
+			return super.getExtendedProfile(userId, profileId, token);
+		}
+
+		final String key = key(userId, profileId);
+		ExtendedProfile profile = profileCache.get(key);
+		if (profile == null && revalidator != null) {
+			profile = profileCache.getStale(key, revalidateWindow);
+			if (profile != null) {
+				// a write invalidating the profile meanwhile discards the refresh
+				final long version = profileCache.version(key);
+				revalidator.refresh(key, () -> {
+					try {
+						profileCache.replace(key, version, load(userId, profileId, token));
+					} catch (SecurityException | ProfileServiceException e) {
+						// the stale profile is kept
+					}
+				});
+				return profile;
+			}
+		}
+		if (profile == null) {
+			try {
+				profile = load(userId, profileId, token);
+			} catch (ProfileServiceException e) {
+				return CachingBasicProfileService.fallback(e, profileCache.getStale(key, fallbackWindow));
+			}
+			profileCache.put(key, profile);
+		}
+		return profile;
+	}
+
+	@Override
+	public ExtendedProfile getMyExtendedProfile(String profileId, String token) throws SecurityException,
+			ProfileServiceException {
+		ExtendedProfile profile = (ExtendedProfile) tokenCache.get(token, ME_PROFILE + profileId);
+		if (profile == null) {
+			try {
+				profile = super.getMyExtendedProfile(profileId, token);
+			} catch (ProfileServiceException e) {
+				return CachingBasicProfileService.fallback(e,
+						(ExtendedProfile) tokenCache.getStale(token, ME_PROFILE + profileId));
+			}
+			tokenCache.put(token, ME_PROFILE + profileId, profile);
+		}
+		return profile;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<ExtendedProfile> getMyExtendedProfiles(String token) throws SecurityException,
+			ProfileServiceException {
+		List<ExtendedProfile> profiles = (List<ExtendedProfile>) tokenCache.get(token, ME_ALL);
+		if (profiles == null) {
+			try {
+				profiles = load(token);
+			} catch (ProfileServiceException e) {
+				profiles = CachingBasicProfileService.fallback(e,
+						(List<ExtendedProfile>) tokenCache.getStale(token, ME_ALL));
+				return new ArrayList<ExtendedProfile>(profiles);
+			}
+			tokenCache.put(token, ME_ALL, profiles);
+		}
+		// callers may modify the returned list
+		return profiles == null ? null : new ArrayList<ExtendedProfile>(profiles);
+	}
+
+	@Override
+	public void createExtendedProfile(String userId, String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			super.createExtendedProfile(userId, profileId, content, token);
+		} finally {
+			invalidateProfile(userId, profileId);
+		}
+	}
+
+	@Override
+	public void updateExtendedProfile(String userId, String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			super.updateExtendedProfile(userId, profileId, content, token);
+		} finally {
+			invalidateProfile(userId, profileId);
+		}
+	}
+
+	@Override
+	public void deleteExtendedProfile(String userId, String profileId, String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			super.deleteExtendedProfile(userId, profileId, token);
+		} finally {
+			invalidateProfile(userId, profileId);
+		}
+	}
+
+	@Override
+	public List<WriteResult> writeExtendedProfiles(Collection<ExtendedProfileWrite> writes, String token,
+			int maxConcurrency) {
+		try {
+			return super.writeExtendedProfiles(writes, token, maxConcurrency);
+		} finally {
+			for (ExtendedProfileWrite write : writes) {
+				invalidateProfile(write.getUserId(), write.getProfileId());
+			}
+		}
+	}
+
+	@Override
+	public void createMyExtendedProfile(String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			super.createMyExtendedProfile(profileId, content, token);
+		} finally {
+			invalidate(profileId, token);
+		}
+	}
+
+	@Override
+	public void updateMyExtendedProfile(String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			super.updateMyExtendedProfile(profileId, content, token);
+		} finally {
+			invalidate(profileId, token);
+		}
+	}
+
+	@Override
+	public void deleteMyExtendedProfile(String profileId, String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			super.deleteMyExtendedProfile(profileId, token);
+		} finally {
+			invalidate(profileId, token);
+		}
+	}
+
+	/**
+	 * When the circuit of the extended profiles is open (see
+	 * {@link #setCircuitBreaker(eu.trentorise.smartcampus.profileservice.http.CircuitBreakerConfig)}),
+	 * return the cached profiles even if expired, up to <code>maxStale</code>
+	 * milliseconds after their expiration.
+	 * 
+	 * @param maxStale
+	 *            time in milliseconds the expired entries are kept for the
+	 *            fallback, 0 to disable it
+	 */
+	public void setStaleFallback(long maxStale) {
+		fallbackWindow = Math.max(0, maxStale);
+		tokenCache.setStaleTtl(fallbackWindow);
+		if (profileCache != null) profileCache.setStaleTtl(Math.max(fallbackWindow, revalidateWindow));
+	}
+
+	/**
+	 * Return the profiles read by userId and profileId up to
+	 * <code>staleWindow</code> milliseconds after their expiration,
+	 * refreshing them in the background. If the refresh fails the stale
+	 * profile is kept until the end of the window; then it is read again by
+	 * the caller. Requires the cache of the profiles read by userId.
+	 * 
+	 * @param staleWindow
+	 *            time in milliseconds an expired profile is still returned,
+	 *            0 to disable the background refresh
+	 * @param maxConcurrency
+	 *            maximum number of concurrent refreshes, further expired
+	 *            profiles are refreshed by the following reads
+	 */
+	public void setStaleWhileRevalidate(long staleWindow, int maxConcurrency) {
+		if (profileCache == null) throw new IllegalStateException("Profile cache not enabled");
+		revalidateWindow = Math.max(0, staleWindow);
+		revalidator = revalidateWindow > 0 ? new Revalidator(maxConcurrency,
+				ProfileExecutors.getBackgroundExecutor()) : null;
+		profileCache.setStaleTtl(Math.max(fallbackWindow, revalidateWindow));
+	}
+
+	/**
+	 * Keep the validators (ETag, Last-Modified) of the profiles of the token
+	 * owner and of the profiles read by userId, so that the read following
+	 * their expiration is a conditional request: if the profiles have not
+	 * changed the server answers without body and the cached profiles are
+	 * returned without parsing.
+	 * 
+	 * @param validatorTtl
+	 *            time in milliseconds the validators are kept after the
+	 *            read, 0 to disable the conditional requests
+	 */
+	public void setConditionalRequests(long validatorTtl) {
+		if (validatorTtl > 0) {
+			validatedTokenCache = new TokenScopedCache<Validated<List<ExtendedProfile>>>(tokenCacheSize,
+					validatorTtl);
+			validatedCache = profileCache == null ? null : new ProfileCache<String, Validated<ExtendedProfile>>(
+					maxSize, validatorTtl);
+		} else {
+			validatedTokenCache = null;
+			validatedCache = null;
+		}
+	}
+
+	/**
+	 * Remove all the cached entries
+	 */
+	public void invalidateAll() {
+		tokenCache.invalidateAll();
+		if (profileCache != null) profileCache.invalidateAll();
+		if (validatedTokenCache != null) validatedTokenCache.invalidateAll();
+		if (validatedCache != null) validatedCache.invalidateAll();
+	}
+
+	/**
+	 * @return hit/miss counters of the cache of the profiles read by userId,
+	 *         null if not enabled
+	 */
+	public CacheStats getCacheStats() {
+		return profileCache == null ? null : profileCache.getStats();
+	}
+
+	/**
+	 * @return hit/miss counters of the token owner profile cache
+	 */
+	public CacheStats getTokenCacheStats() {
+		return tokenCache.getStats();
+	}
+
+	private void invalidate(String profileId, String token) {
+		// the owner is known if the profile has been read through this client
+		ExtendedProfile cached = (ExtendedProfile) tokenCache.getStale(token, ME_PROFILE + profileId);
+		if (cached != null) invalidateProfile(cached.getUserId(), profileId);
+		tokenCache.invalidate(token, ME_ALL);
+		tokenCache.invalidate(token, ME_PROFILE + profileId);
+	}
+
+	private ExtendedProfile load(String userId, String profileId, String token) throws SecurityException,
+			ProfileServiceException {
+		ProfileCache<String, Validated<ExtendedProfile>> validated = validatedCache;
+		if (validated == null) return super.getExtendedProfile(userId, profileId, token);
+
+		String key = key(userId, profileId);
+		Validated<ExtendedProfile> result = getExtendedProfile(userId, profileId, token, validated.get(key));
+		// a 304 response renews the validators
+		if (result.hasValidators()) validated.put(key, result);
+		return result.getValue();
+	}
+
+	private List<ExtendedProfile> load(String token) throws SecurityException, ProfileServiceException {
+		TokenScopedCache<Validated<List<ExtendedProfile>>> validated = validatedTokenCache;
+		if (validated == null) return super.getMyExtendedProfiles(token);
+
+		Validated<List<ExtendedProfile>> result = getMyExtendedProfiles(token, validated.get(token, ME_ALL));
+		if (result.hasValidators()) validated.put(token, ME_ALL, result);
+		return result.getValue();
+	}
+
+	private void invalidateProfile(String userId, String profileId) {
+		if (profileCache != null && userId != null && profileId != null) {
+			profileCache.invalidate(key(userId, profileId));
+		}
+	}
+
+	private static String key(String userId, String profileId) {
+		return userId + '/' + profileId;
+	}
+}
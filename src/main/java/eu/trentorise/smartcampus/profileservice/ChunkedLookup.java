@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import eu.trentorise.smartcampus.profileservice.http.Deadline;
+
+/**
+ * Bulk lookup by userId split in chunks of ids, executed concurrently.
+ *
+ * @param <T>
+ *            type of the loaded items
+ */
+abstract class ChunkedLookup<T> {
+
+	/**
+	 * Load the items of a chunk of ids
+	 *
+	 * @param userIds
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	protected abstract List<T> load(List<String> userIds) throws SecurityException, ProfileServiceException;
+
+	/**
+	 * @param item
+	 * @return the userId the item belongs to, null if the items cannot be
+	 *         matched to the requested ids
+	 */
+	protected String userId(T item) {
+		return null;
+	}
+
+	/**
+	 * @param item
+	 * @return the identity of the item, used to discard duplicates
+	 */
+	protected Object identity(T item) {
+		return userId(item);
+	}
+
+	/**
+	 * Load the items of all the ids. Duplicate ids are requested once and the
+	 * result follows the order of the ids.
+	 *
+	 * @param userIds
+	 * @param chunkSize
+	 *            maximum number of ids of a single request
+	 * @param executor
+	 *            executor of the requests, if null the chunks are loaded
+	 *            sequentially by the calling thread. The concurrent
+	 *            requests share the {@link Deadline} of the calling thread
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<T> loadAll(List<String> userIds, int chunkSize, ExecutorService executor)
+			throws SecurityException, ProfileServiceException {
+		List<String> ids = new ArrayList<String>(new LinkedHashSet<String>(userIds));
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		for (int i = 0; i < ids.size(); i += chunkSize) {
+			chunks.add(ids.subList(i, Math.min(i + chunkSize, ids.size())));
+		}
+
+		List<List<T>> results = new ArrayList<List<T>>(chunks.size());
+		if (executor == null || chunks.size() == 1) {
+			for (List<String> chunk : chunks) {
+				results.add(load(chunk));
+			}
+		} else {
+			List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>(chunks.size());
+			try {
+				for (final List<String> chunk : chunks) {
+					futures.add(executor.submit(Deadline.bind(new Callable<List<T>>() {
+						public List<T> call() throws Exception {
+							return load(chunk);
+						}
+					})));
+				}
+				for (Future<List<T>> future : futures) {
+					results.add(future.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ProfileServiceException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SecurityException) throw (SecurityException) e.getCause();
+				if (e.getCause() instanceof ProfileServiceException) throw (ProfileServiceException) e.getCause();
+				throw new ProfileServiceException(e.getCause());
+			} finally {
+				for (Future<List<T>> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+		return merge(ids, results);
+	}
+
+	private List<T> merge(List<String> ids, List<List<T>> results) {
+		List<T> merged = new ArrayList<T>();
+		Map<String, List<T>> byUser = new HashMap<String, List<T>>();
+		Set<Object> seen = new HashSet<Object>();
+		for (List<T> result : results) {
+			if (result == null) continue;
+			for (T item : result) {
+				Object identity = identity(item);
+				if (identity != null && !seen.add(identity)) continue;
+				String userId = userId(item);
+				if (userId == null) {
+					merged.add(item);
+					continue;
+				}
+				List<T> items = byUser.get(userId);
+				if (items == null) {
+					items = new ArrayList<T>(1);
+					byUser.put(userId, items);
+				}
+				items.add(item);
+			}
+		}
+		if (byUser.isEmpty()) return merged;
+
+		List<T> ordered = new ArrayList<T>(merged.size() + byUser.size());
+		for (String id : ids) {
+			List<T> items = byUser.remove(id);
+			if (items != null) ordered.addAll(items);
+		}
+		// items of ids the server reports differently, if any
+		for (List<T> items : byUser.values()) {
+			ordered.addAll(items);
+		}
+		ordered.addAll(merged);
+		return ordered;
+	}
+}
@@ -1,402 +1,887 @@
-/*******************************************************************************
- * Copyright 2012-2013 Trento RISE
- * 
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- * 
- *        http://www.apache.org/licenses/LICENSE-2.0
- * 
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- ******************************************************************************/
-package eu.trentorise.smartcampus.profileservice;
-
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import eu.trentorise.smartcampus.network.JsonUtils;
-import eu.trentorise.smartcampus.network.RemoteConnector;
-import eu.trentorise.smartcampus.network.RemoteException;
-import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
-import eu.trentorise.smartcampus.profileservice.model.ExtendedProfiles;
-
-/**
- * Class used to connect with the profile service.
- * 
- */
-public class ExtProfileService {
-
-	private String profileManagerURL;
-
-	/** Extended profile path */
-	private static final String EXTENDED_PROFILE = "extprofile/";
-
-	/**
-	 * 
-	 * @param serverURL
-	 *            address of the server to connect to
-	 */
-	public ExtProfileService(String serverURL) {
-		this.profileManagerURL = serverURL;
-		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
-	}
-
-
-	/**
-	 * Create an extended profile
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param content
-	 *            profile content
-	 * @param token
-	 *            an authorization token
-	 * @throws ProfileServiceException
-	 */
-	public void createExtendedProfile(String userId, String profileId, Map<String, Object> content, String token)
-			throws SecurityException, ProfileServiceException {
-			try {
-				if (userId == null || profileId == null)
-					throw new ProfileServiceException("Incomplete request parameters");
-				
-				profileId = URLEncoder.encode(profileId, "utf8");
-				RemoteConnector.postJSON(profileManagerURL,
-						EXTENDED_PROFILE+"app/" + userId + "/" + profileId,
-						JsonUtils.toJSON(content), token);
-			} catch (UnsupportedEncodingException e) {
-				throw new ProfileServiceException(e);
-			} catch (RemoteException e) {
-				throw new ProfileServiceException(e);
-			}
-	}
-
-	/**
-	 * Creates an extended profile for authenticated user
-	 * 
-	 * @param profileId
-	 * @param content
-	 * @param token
-	 * @throws SecurityException
-	 * @throws ProfileServiceException
-	 */
-	public void createMyExtendedProfile(String profileId,
-			Map<String, Object> content, String token)
-			throws SecurityException, ProfileServiceException {
-		try {
-			if (profileId == null)
-				throw new ProfileServiceException("Incomplete request parameters");
-
-			profileId = URLEncoder.encode(profileId, "utf8");
-			RemoteConnector.postJSON(profileManagerURL, EXTENDED_PROFILE + "me/" + profileId,
-					JsonUtils.toJSON(content), token);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Returns an extended profile of a user.
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param token
-	 *            an authorization token
-	 * @return an extended profile
-	 * @throws ProfileServiceException
-	 */
-	public ExtendedProfile getExtendedProfile(String userId, String profileId, String token) throws SecurityException, ProfileServiceException {
-		if (userId == null || profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					EXTENDED_PROFILE + "app/" + userId
-							+ "/" + profileId, token);
-			return JsonUtils.toObject(json, ExtendedProfile.class);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Returns an extended profile of the authenticated user.
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param token
-	 *            an authorization token
-	 * @return an extended profile
-	 * @throws ProfileServiceException
-	 */
-	public ExtendedProfile getMyExtendedProfile(String profileId, String token) throws SecurityException, ProfileServiceException {
-		if (profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					EXTENDED_PROFILE + "me/" + profileId, token);
-			return JsonUtils.toObject(json, ExtendedProfile.class);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-
-	/**
-	 * Return a list of extended profiles of the authenticated user
-	 * 
-	 * @param token
-	 *            an authorization token
-	 * @return a list of extended profile
-	 * @throws ProfileServiceException
-	 */
-	public List<ExtendedProfile> getMyExtendedProfiles(String token) throws SecurityException,
-			ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					EXTENDED_PROFILE + "me",
-					token);
-			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
-		} catch (Exception e1) {
-			throw new ProfileServiceException(e1);
-		}
-	}
-
-	/**
-	 * Returns an extended profile of the authenticated user.
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param token
-	 *            an authorization token
-	 * @return an extended profile
-	 * @throws ProfileServiceException
-	 */
-	public List<ExtendedProfile> getSharedExtendedProfiles(String profileId, String token) throws SecurityException, ProfileServiceException {
-		if (profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					EXTENDED_PROFILE + "shared/" + profileId, token);
-			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Return a list of extended profiles of the authenticated user
-	 * 
-	 * @param token
-	 *            an authorization token
-	 * @return a list of extended profile
-	 * @throws ProfileServiceException
-	 */
-	public List<ExtendedProfile> getSharedExtendedProfiles(String token) throws SecurityException,
-			ProfileServiceException {
-		try {
-			String json = RemoteConnector.getJSON(profileManagerURL,
-					EXTENDED_PROFILE + "shared",
-					token);
-			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e1) {
-			throw new ProfileServiceException(e1);
-		}
-	}
-
-	/**
-	 * Returns list of extended profiles of a list of users
-	 * 
-	 * @param userId
-	 * @param profileId optional profile identity
-	 * @param token
-	 * @return
-	 * @throws ProfileServiceException
-	 */
-	public List<ExtendedProfile> getExtendedProfilesForUsers(List<String> userIds,
-			String profileId, String token) throws ProfileServiceException, SecurityException {
-		Map<String, Object> parameters = new HashMap<String, Object>();
-		parameters.put("userIds", userIds);
-		try {
-			String path = EXTENDED_PROFILE+"all";
-			if (profileId != null) {
-				path += "/"+profileId;
-			}
-			String json = RemoteConnector.getJSON(profileManagerURL, path, token, parameters);
-			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
-		}catch (SecurityException e) {
-			throw e;
-		} catch (RemoteException e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Returns the list of extended profiles filtered by a set of profile
-	 * attributes 
-	 * 
-	 * @param profileId
-	 * @param profileAttributes
-	 * @param token
-	 * @return
-	 * @throws ProfileServiceException
-	 */
-	public List<ExtendedProfile> getExtendedProfilesByAttributes(String profileId, Map<String, Object> profileAttributes,
-			String token) throws SecurityException,  ProfileServiceException {
-
-		if (profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			String json = RemoteConnector
-					.postJSON(profileManagerURL, EXTENDED_PROFILE +"all/" + profileId,
-							JsonUtils.toJSON(profileAttributes), token);
-			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Update an extended profile
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param content
-	 *            profile content
-	 * @param token
-	 *            an authorization token
-	 * @throws ProfileServiceException
-	 */
-	public void updateExtendedProfile(String userId, 
-			String profileId, Map<String, Object> content, String token)
-			throws SecurityException, ProfileServiceException {
-		if (userId == null || profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-
-		try {
-			RemoteConnector.putJSON(profileManagerURL,
-					EXTENDED_PROFILE + "app/" + userId
-							+ "/" + profileId,
-					JsonUtils.toJSON(content), token);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Updates an extended profile of authenticated user
-	 * 
-	 * @param profileId
-	 * @param content
-	 * @param token
-	 * @throws SecurityException
-	 * @throws ProfileServiceException
-	 */
-	public void updateMyExtendedProfile(String profileId,
-			Map<String, Object> content, String token)
-			throws SecurityException, ProfileServiceException {
-
-		if (profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-		
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			RemoteConnector.putJSON(profileManagerURL, 
-					EXTENDED_PROFILE + "me/" +  profileId,
-					JsonUtils.toJSON(content), token);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Delete an extended profile
-	 * 
-	 * @param userId
-	 *            id of the user
-	 * @param profileId
-	 *            id of the profile
-	 * @param token
-	 *            an authorization token
-	 * @throws ProfileServiceException
-	 */
-	public void deleteExtendedProfile(String userId, String profileId, String token) throws SecurityException,
-			ProfileServiceException {
-		if (userId == null || profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			RemoteConnector.deleteJSON(profileManagerURL,
-					EXTENDED_PROFILE + "app/" + userId
-							+ "/" + profileId, token);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-	/**
-	 * Deletes an extended profile of authenticated user
-	 * 
-	 * @param profileId
-	 * @param token
-	 * @throws SecurityException
-	 * @throws ProfileServiceException
-	 */
-	public void deleteMyExtendedProfile(String profileId,
-			String token) throws SecurityException, ProfileServiceException {
-		if (profileId == null)
-			throw new ProfileServiceException("Incomplete request parameters");
-
-		try {
-			profileId = URLEncoder.encode(profileId, "utf8");
-			RemoteConnector
-					.deleteJSON(profileManagerURL,
-							EXTENDED_PROFILE + "me/"
-							+ profileId, token);
-		}catch (SecurityException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new ProfileServiceException(e);
-		}
-	}
-
-}
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.cache.Validated;
+import eu.trentorise.smartcampus.profileservice.http.CircuitBreakerConfig;
+import eu.trentorise.smartcampus.profileservice.http.CircuitBreakerTransport;
+import eu.trentorise.smartcampus.profileservice.http.CircuitOpenException;
+import eu.trentorise.smartcampus.profileservice.http.RateLimitedException;
+import eu.trentorise.smartcampus.profileservice.http.RateLimiterConfig;
+import eu.trentorise.smartcampus.profileservice.http.RateLimitingTransport;
+import eu.trentorise.smartcampus.profileservice.http.Deadline;
+import eu.trentorise.smartcampus.profileservice.http.DeadlineExceededException;
+import eu.trentorise.smartcampus.profileservice.http.InstrumentedTransport;
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.ResponseReader;
+import eu.trentorise.smartcampus.profileservice.http.RetryPolicy;
+import eu.trentorise.smartcampus.profileservice.http.RetryingTransport;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+import eu.trentorise.smartcampus.profileservice.metrics.InMemoryProfileMetrics;
+import eu.trentorise.smartcampus.profileservice.metrics.ProfileMetrics;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfiles;
+
+/**
+ * Class used to connect with the profile service.
+ * 
+ * The connect and read timeouts of the single requests are set on the
+ * transport (see {@link PooledHttpTransport.Builder}). The calls made within
+ * a {@link Deadline} scope, including their retries and concurrent requests,
+ * fail when the deadline expires with a {@link ProfileServiceException}
+ * caused by a {@link DeadlineExceededException}.
+ * 
+ */
+public class ExtProfileService {
+
+	private String profileManagerURL;
+
+	private ProfileTransport transport;
+	/** transport of the calls, before instrumentation */
+	private ProfileTransport baseTransport;
+
+	private ProfileMetrics metrics = ProfileMetrics.NOOP;
+	private RetryPolicy retryPolicy;
+	private CircuitBreakerConfig circuitBreaker;
+	/** policy of the batch writes while no retry policy is set */
+	private final RetryPolicy defaultWritePolicy = RetryPolicy.builder().build();
+	private RateLimiterConfig rateLimit;
+	private RateLimiterConfig tokenRateLimit;
+	/** transport of the batch writes, retried by the batch itself */
+	private ProfileTransport writeTransport;
+
+	private int batchSize;
+	private ExecutorService batchExecutor;
+
+	/** Reader of the extended profile lists, parsed while received */
+	private static final ResponseReader<List<ExtendedProfile>> LIST_READER = new ResponseReader<List<ExtendedProfile>>() {
+		@Override
+		public List<ExtendedProfile> read(InputStream content) throws IOException {
+			return ProfileStreamParser.readList(content, ProfileStreamParser.EXTENDED_PROFILE);
+		}
+	};
+
+	/** Reader of a single extended profile, parsed while received */
+	private static final ResponseReader<ExtendedProfile> PROFILE_READER = new ResponseReader<ExtendedProfile>() {
+		@Override
+		public ExtendedProfile read(InputStream content) throws IOException {
+			return ProfileStreamParser.readObject(content, ProfileStreamParser.EXTENDED_PROFILE);
+		}
+	};
+
+	/** Extended profile path */
+	private static final String EXTENDED_PROFILE = "extprofile/";
+
+
+	/**
+	 * 
+	 * @param serverURL
+	 *            address of the server to connect to
+	 */
+	public ExtProfileService(String serverURL) {
+		this(serverURL, PooledHttpTransport.getDefault());
+	}
+
+	/**
+	 * 
+	 * @param serverURL
+	 *            address of the server to connect to
+	 * @param transport
+	 *            transport used to perform the remote calls
+	 */
+	public ExtProfileService(String serverURL, ProfileTransport transport) {
+		this.profileManagerURL = serverURL;
+		if (!profileManagerURL.endsWith("/")) profileManagerURL += '/';
+		this.transport = transport;
+		this.baseTransport = transport;
+		this.writeTransport = transport;
+	}
+
+
+	/**
+	 * Report count, latency, status and payload size of the calls of this
+	 * client, by endpoint.
+	 * 
+	 * @param metrics
+	 *            receiver of the measurements (see
+	 *            {@link InMemoryProfileMetrics}), null or
+	 *            {@link ProfileMetrics#NOOP} to disable the instrumentation
+	 */
+	public void setMetrics(ProfileMetrics metrics) {
+		this.metrics = metrics == null ? ProfileMetrics.NOOP : metrics;
+		configureTransport();
+	}
+
+	/**
+	 * Retry the idempotent calls (GET, PUT and DELETE) failed for a transient
+	 * error. The batch writes of
+	 * {@link #writeExtendedProfiles(Collection, String, int)} are retried by
+	 * the batch with the same policy and budget.
+	 * 
+	 * @param policy
+	 *            backoff and retry budget (see {@link RetryPolicy#builder()}),
+	 *            null to disable the retries of the single calls; the batch
+	 *            writes then use the default policy
+	 */
+	public void setRetryPolicy(RetryPolicy policy) {
+		this.retryPolicy = policy;
+		configureTransport();
+	}
+
+	/**
+	 * Fail immediately the calls of an endpoint family (basicprofile,
+	 * accountprofile, extprofile) while the server is failing or slow on
+	 * them, instead of waiting for the timeouts. The calls refused fail with
+	 * a {@link ProfileServiceException} caused by a
+	 * {@link CircuitOpenException}.
+	 * 
+	 * @param config
+	 *            thresholds of the circuit breakers (see
+	 *            {@link CircuitBreakerConfig#builder()}), null to disable
+	 */
+	public void setCircuitBreaker(CircuitBreakerConfig config) {
+		this.circuitBreaker = config;
+		configureTransport();
+	}
+
+	/**
+	 * Keep the calls within a request rate and an adaptive concurrency limit,
+	 * for the whole client and for each access token, to avoid being
+	 * throttled by the server. Each attempt of a retried call counts as a
+	 * request. The calls exceeding the limits for longer than they may wait
+	 * fail with a {@link ProfileServiceException} caused by a
+	 * {@link RateLimitedException}.
+	 * 
+	 * @param global
+	 *            limits of all the calls of this client (see
+	 *            {@link RateLimiterConfig#builder()}), null for none
+	 * @param perToken
+	 *            limits of the calls of each access token, null for none
+	 */
+	public void setRateLimit(RateLimiterConfig global, RateLimiterConfig perToken) {
+		this.rateLimit = global;
+		this.tokenRateLimit = perToken;
+		configureTransport();
+	}
+
+	/**
+	 * Build the chain of the transport decorators: the retries are within the
+	 * circuit breaker, so that an open circuit is not retried, and both are
+	 * within the instrumentation, so that the latency of a call includes its
+	 * retries. The rate limits apply to each attempt.
+	 */
+	private void configureTransport() {
+		ProfileTransport chain = baseTransport;
+		ProfileTransport writes = baseTransport;
+		if (rateLimit != null || tokenRateLimit != null) {
+			RateLimitingTransport limits = new RateLimitingTransport(chain, rateLimit, tokenRateLimit);
+			chain = limits;
+			writes = new RateLimitingTransport(writes, limits);
+		}
+		if (retryPolicy != null) {
+			chain = new RetryingTransport(chain, retryPolicy, metrics);
+		}
+		if (circuitBreaker != null) {
+			CircuitBreakerTransport breakers = new CircuitBreakerTransport(chain, circuitBreaker);
+			chain = breakers;
+			writes = new CircuitBreakerTransport(writes, breakers);
+		}
+		if (metrics != ProfileMetrics.NOOP) {
+			chain = new InstrumentedTransport(chain, metrics);
+			writes = new InstrumentedTransport(writes, metrics);
+		}
+		this.transport = chain;
+		this.writeTransport = writes;
+	}
+
+	/**
+	 * Split the lookups by a list of userIds in requests of at most
+	 * <code>batchSize</code> ids, executed concurrently on the executor.
+	 * 
+	 * @param batchSize
+	 *            maximum number of ids of a single request, 0 to disable
+	 *            batching
+	 * @param executor
+	 *            executor of the requests (see
+	 *            {@link ProfileExecutors#newBoundedExecutor(int)} and, on JDK
+	 *            21, {@link ProfileExecutors#newVirtualThreadExecutor(int)}),
+	 *            if null the requests are executed sequentially by the
+	 *            calling thread
+	 */
+	public void setBatching(int batchSize, ExecutorService executor) {
+		this.batchSize = batchSize;
+		this.batchExecutor = executor;
+	}
+
+	/**
+	 * Create an extended profile
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @param token
+	 *            an authorization token
+	 * @throws ProfileServiceException
+	 */
+	public void createExtendedProfile(String userId, String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+			try {
+				if (userId == null || profileId == null)
+					throw new ProfileServiceException("Incomplete request parameters");
+				
+				profileId = URLEncoder.encode(profileId, "utf8");
+				transport.execute(ProfileRequest.postJson(profileManagerURL,
+						EXTENDED_PROFILE+"app/" + userId + "/" + profileId,
+						content, token));
+			} catch (UnsupportedEncodingException e) {
+				throw new ProfileServiceException(e);
+			} catch (RemoteException e) {
+				throw new ProfileServiceException(e);
+			}
+	}
+
+	/**
+	 * Creates an extended profile for authenticated user
+	 * 
+	 * @param profileId
+	 * @param content
+	 * @param token
+	 * @throws SecurityException
+	 * @throws ProfileServiceException
+	 */
+	public void createMyExtendedProfile(String profileId,
+			Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		try {
+			if (profileId == null)
+				throw new ProfileServiceException("Incomplete request parameters");
+
+			profileId = URLEncoder.encode(profileId, "utf8");
+			transport.execute(ProfileRequest.postJson(profileManagerURL, EXTENDED_PROFILE + "me/" + profileId,
+					content, token));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Returns an extended profile of a user.
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return an extended profile
+	 * @throws ProfileServiceException
+	 */
+	public ExtendedProfile getExtendedProfile(String userId, String profileId, String token) throws SecurityException, ProfileServiceException {
+		if (userId == null || profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			String json = transport.execute(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "app/" + userId
+							+ "/" + profileId, token));
+			return JsonUtils.toObject(json, ExtendedProfile.class);
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Returns an extended profile of the authenticated user.
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return an extended profile
+	 * @throws ProfileServiceException
+	 */
+	public ExtendedProfile getMyExtendedProfile(String profileId, String token) throws SecurityException, ProfileServiceException {
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			String json = transport.execute(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "me/" + profileId, token));
+			return JsonUtils.toObject(json, ExtendedProfile.class);
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+
+	/**
+	 * Conditional read of an extended profile: the validators of the previous
+	 * result are sent with the request, and the server answers without body
+	 * if the profile has not changed.
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @param cached
+	 *            the previous result, null if none
+	 * @return the previous result if the profile has not changed, the new
+	 *         profile with its validators otherwise
+	 * @throws ProfileServiceException
+	 */
+	Validated<ExtendedProfile> getExtendedProfile(String userId, String profileId, String token,
+			Validated<ExtendedProfile> cached) throws SecurityException, ProfileServiceException {
+		if (userId == null || profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			return transport.execute(ValidatingReader.conditional(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "app/" + userId + "/" + profileId, token), cached),
+					new ValidatingReader<ExtendedProfile>(cached, PROFILE_READER));
+		} catch (UnsupportedEncodingException e) {
+			throw new ProfileServiceException(e);
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Conditional read of the extended profiles of the authenticated user
+	 * 
+	 * @param token
+	 *            an authorization token
+	 * @param cached
+	 *            the previous result, null if none
+	 * @return the previous result if the profiles have not changed, the new
+	 *         profiles with their validators otherwise
+	 * @throws ProfileServiceException
+	 */
+	Validated<List<ExtendedProfile>> getMyExtendedProfiles(String token, Validated<List<ExtendedProfile>> cached)
+			throws SecurityException, ProfileServiceException {
+		try {
+			return transport.execute(ValidatingReader.conditional(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "me", token), cached), new ValidatingReader<List<ExtendedProfile>>(cached,
+					LIST_READER));
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return a list of extended profiles of the authenticated user
+	 * 
+	 * @param token
+	 *            an authorization token
+	 * @return a list of extended profile
+	 * @throws ProfileServiceException
+	 */
+	public List<ExtendedProfile> getMyExtendedProfiles(String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			String json = transport.execute(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "me",
+					token));
+			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
+		} catch (Exception e1) {
+			throw new ProfileServiceException(e1);
+		}
+	}
+
+	/**
+	 * Returns an extended profile of the authenticated user.
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @return an extended profile
+	 * @throws ProfileServiceException
+	 */
+	public List<ExtendedProfile> getSharedExtendedProfiles(String profileId, String token) throws SecurityException, ProfileServiceException {
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			return transport.execute(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "shared/" + profileId, token), LIST_READER);
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Return a list of extended profiles of the authenticated user
+	 * 
+	 * @param token
+	 *            an authorization token
+	 * @return a list of extended profile
+	 * @throws ProfileServiceException
+	 */
+	public List<ExtendedProfile> getSharedExtendedProfiles(String token) throws SecurityException,
+			ProfileServiceException {
+		try {
+			return transport.execute(ProfileRequest.get(profileManagerURL,
+					EXTENDED_PROFILE + "shared",
+					token), LIST_READER);
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e1) {
+			throw new ProfileServiceException(e1);
+		}
+	}
+
+	/**
+	 * Pass the extended profiles shared with the authenticated user to the
+	 * callback while the response is received, without collecting them in a
+	 * list
+	 * 
+	 * @param profileId
+	 *            optional id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @param callback
+	 *            receiver of the profiles
+	 * @return the number of profiles read
+	 * @throws ProfileServiceException
+	 */
+	public int getSharedExtendedProfiles(String profileId, String token, ProfileCallback<ExtendedProfile> callback)
+			throws SecurityException, ProfileServiceException {
+		try {
+			String path = EXTENDED_PROFILE + "shared";
+			if (profileId != null) {
+				path += "/" + URLEncoder.encode(profileId, "utf8");
+			}
+			return transport.execute(ProfileRequest.get(profileManagerURL, path, token), eachReader(callback));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Returns list of extended profiles of a list of users
+	 * 
+	 * @param userId
+	 * @param profileId optional profile identity
+	 * @param token
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<ExtendedProfile> getExtendedProfilesForUsers(List<String> userIds,
+			final String profileId, final String token) throws ProfileServiceException, SecurityException {
+		if (batchSize > 0 && userIds.size() > batchSize) {
+			return new ChunkedLookup<ExtendedProfile>() {
+				@Override
+				protected List<ExtendedProfile> load(List<String> chunk) throws ProfileServiceException {
+					return loadExtendedProfiles(chunk, profileId, token);
+				}
+
+				@Override
+				protected String userId(ExtendedProfile item) {
+					return item.getUserId();
+				}
+
+				@Override
+				protected Object identity(ExtendedProfile item) {
+					return item.getUserId() + '/' + item.getProfileId();
+				}
+			}.loadAll(userIds, batchSize, batchExecutor);
+		}
+		return loadExtendedProfiles(userIds, profileId, token);
+	}
+
+	private List<ExtendedProfile> loadExtendedProfiles(List<String> userIds,
+			String profileId, String token) throws ProfileServiceException, SecurityException {
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("userIds", userIds);
+		try {
+			String path = EXTENDED_PROFILE+"all";
+			if (profileId != null) {
+				path += "/"+profileId;
+			}
+			String json = transport.execute(ProfileRequest.get(profileManagerURL, path, token, parameters));
+			return JsonUtils.toObject(json, ExtendedProfiles.class).getProfiles();
+		}catch (SecurityException e) {
+			throw e;
+		} catch (RemoteException e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Returns the list of extended profiles filtered by a set of profile
+	 * attributes 
+	 * 
+	 * @param profileId
+	 * @param profileAttributes
+	 * @param token
+	 * @return
+	 * @throws ProfileServiceException
+	 */
+	public List<ExtendedProfile> getExtendedProfilesByAttributes(String profileId, Map<String, Object> profileAttributes,
+			String token) throws SecurityException,  ProfileServiceException {
+
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			return transport.execute(ProfileRequest.postJson(profileManagerURL, EXTENDED_PROFILE +"all/" + profileId,
+							profileAttributes, token), LIST_READER);
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Pass the extended profiles matching a set of profile attributes to the
+	 * callback while the response is received, without collecting them in a
+	 * list
+	 * 
+	 * @param profileId
+	 * @param profileAttributes
+	 * @param token
+	 * @param callback
+	 *            receiver of the profiles
+	 * @return the number of profiles read
+	 * @throws ProfileServiceException
+	 */
+	public int getExtendedProfilesByAttributes(String profileId, Map<String, Object> profileAttributes,
+			String token, ProfileCallback<ExtendedProfile> callback) throws SecurityException,  ProfileServiceException {
+
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			return transport.execute(ProfileRequest.postJson(profileManagerURL, EXTENDED_PROFILE +"all/" + profileId,
+							profileAttributes, token), eachReader(callback));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	private static ResponseReader<Integer> eachReader(final ProfileCallback<ExtendedProfile> callback) {
+		return new ResponseReader<Integer>() {
+			@Override
+			public Integer read(InputStream content) throws IOException {
+				return ProfileStreamParser.readEach(content, ProfileStreamParser.EXTENDED_PROFILE, callback);
+			}
+		};
+	}
+
+	/**
+	 * Update an extended profile
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @param token
+	 *            an authorization token
+	 * @throws ProfileServiceException
+	 */
+	public void updateExtendedProfile(String userId, 
+			String profileId, Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+		if (userId == null || profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+
+		try {
+			transport.execute(ProfileRequest.putJson(profileManagerURL,
+					EXTENDED_PROFILE + "app/" + userId
+							+ "/" + profileId,
+					content, token));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Updates an extended profile of authenticated user
+	 * 
+	 * @param profileId
+	 * @param content
+	 * @param token
+	 * @throws SecurityException
+	 * @throws ProfileServiceException
+	 */
+	public void updateMyExtendedProfile(String profileId,
+			Map<String, Object> content, String token)
+			throws SecurityException, ProfileServiceException {
+
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			transport.execute(ProfileRequest.putJson(profileManagerURL, 
+					EXTENDED_PROFILE + "me/" +  profileId,
+					content, token));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Delete an extended profile
+	 * 
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param token
+	 *            an authorization token
+	 * @throws ProfileServiceException
+	 */
+	public void deleteExtendedProfile(String userId, String profileId, String token) throws SecurityException,
+			ProfileServiceException {
+		if (userId == null || profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			transport.execute(ProfileRequest.delete(profileManagerURL,
+					EXTENDED_PROFILE + "app/" + userId
+							+ "/" + profileId, token));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Deletes an extended profile of authenticated user
+	 * 
+	 * @param profileId
+	 * @param token
+	 * @throws SecurityException
+	 * @throws ProfileServiceException
+	 */
+	public void deleteMyExtendedProfile(String profileId,
+			String token) throws SecurityException, ProfileServiceException {
+		if (profileId == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+
+		try {
+			profileId = URLEncoder.encode(profileId, "utf8");
+			transport.execute(ProfileRequest.delete(profileManagerURL,
+							EXTENDED_PROFILE + "me/"
+							+ profileId, token));
+		}catch (SecurityException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProfileServiceException(e);
+		}
+	}
+
+	/**
+	 * Execute a batch of writes of extended profiles, with at most
+	 * <code>maxConcurrency</code> requests in flight over the pooled
+	 * connections. The writes are executed on the batching executor (see
+	 * {@link #setBatching(int, ExecutorService)}) or, if not set, on the
+	 * shared background executor. Updates and deletions failed for a
+	 * transient error (no response, 429 or 5xx status) are retried according
+	 * to the retry policy (see {@link #setRetryPolicy(RetryPolicy)}, the
+	 * default one if not set), within its retry budget; creations are not,
+	 * since they are not idempotent.
+	 * 
+	 * A failed write does not stop the batch: its result reports the cause.
+	 * If the token is rejected, the writes not yet started fail with the
+	 * same {@link SecurityException} without being sent. The writes share the
+	 * {@link Deadline} of the calling thread, if any.
+	 * 
+	 * @param writes
+	 *            the writes to execute
+	 * @param token
+	 *            an authorization token
+	 * @param maxConcurrency
+	 *            maximum number of concurrent requests, 1 to execute the
+	 *            writes sequentially in the calling thread
+	 * @return the result of each write, in the order of the writes
+	 */
+	public List<WriteResult> writeExtendedProfiles(Collection<ExtendedProfileWrite> writes, final String token,
+			int maxConcurrency) {
+		final WriteResult[] results = new WriteResult[writes.size()];
+		final AtomicReference<SecurityException> rejected = new AtomicReference<SecurityException>();
+		if (maxConcurrency <= 1) {
+			int i = 0;
+			for (ExtendedProfileWrite write : writes) {
+				results[i++] = write(write, token, rejected);
+			}
+			return Arrays.asList(results);
+		}
+
+		ExecutorService executor = batchExecutor != null ? batchExecutor : ProfileExecutors.getBackgroundExecutor();
+		final Semaphore window = new Semaphore(maxConcurrency);
+		int i = 0;
+		try {
+			for (final ExtendedProfileWrite write : writes) {
+				final int index = i++;
+				window.acquire();
+				try {
+					executor.execute(Deadline.bind(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								results[index] = write(write, token, rejected);
+							} finally {
+								window.release();
+							}
+						}
+					}));
+				} catch (RejectedExecutionException e) {
+					window.release();
+					results[index] = new WriteResult(write, WriteResult.Status.FAILURE, 0,
+							new ProfileServiceException(e));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// wait for the writes in flight
+		window.acquireUninterruptibly(maxConcurrency);
+
+		if (i < results.length || Thread.currentThread().isInterrupted()) {
+			int index = 0;
+			for (ExtendedProfileWrite write : writes) {
+				if (results[index] == null) {
+					results[index] = new WriteResult(write, WriteResult.Status.FAILURE, 0,
+							new ProfileServiceException("Interrupted before the write"));
+				}
+				index++;
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	private WriteResult write(ExtendedProfileWrite write, String token, AtomicReference<SecurityException> rejected) {
+		if (rejected.get() != null) {
+			return new WriteResult(write, WriteResult.Status.FAILURE, 0, rejected.get());
+		}
+		ProfileRequest request;
+		try {
+			request = writeRequest(write, token);
+		} catch (ProfileServiceException e) {
+			return new WriteResult(write, WriteResult.Status.FAILURE, 0, e);
+		}
+
+		RetryPolicy policy = retryPolicy != null ? retryPolicy : defaultWritePolicy;
+		policy.getBudget().onRequest();
+		int attempts = 0;
+		while (true) {
+			attempts++;
+			try {
+				writeTransport.execute(request);
+				return new WriteResult(write, attempts == 1 ? WriteResult.Status.SUCCESS
+						: WriteResult.Status.RETRIED, attempts, null);
+			} catch (SecurityException e) {
+				rejected.compareAndSet(null, e);
+				return new WriteResult(write, WriteResult.Status.FAILURE, attempts, e);
+			} catch (RemoteException e) {
+				if (!retry(policy, write, e, attempts)) {
+					return new WriteResult(write, WriteResult.Status.FAILURE, attempts,
+							new ProfileServiceException(e));
+				}
+				metrics.recordRetry(InstrumentedTransport.endpoint(request));
+			}
+		}
+	}
+
+	/**
+	 * Wait before the retry of a write, if allowed
+	 * 
+	 * @return true if the write must be retried
+	 */
+	private static boolean retry(RetryPolicy policy, ExtendedProfileWrite write, RemoteException e, int attempts) {
+		if (!write.isIdempotent() || attempts > policy.getMaxRetries() || !policy.isTransient(e)) return false;
+		long delay = policy.getDelay(attempts);
+		if (!Deadline.allows(delay) || !policy.getBudget().tryRetry()) return false;
+		try {
+			Thread.sleep(delay);
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private ProfileRequest writeRequest(ExtendedProfileWrite write, String token) throws ProfileServiceException {
+		if (write.getUserId() == null || write.getProfileId() == null)
+			throw new ProfileServiceException("Incomplete request parameters");
+		String path;
+		try {
+			path = EXTENDED_PROFILE + "app/" + write.getUserId() + "/" + URLEncoder.encode(write.getProfileId(), "utf8");
+		} catch (UnsupportedEncodingException e) {
+			throw new ProfileServiceException(e);
+		}
+		switch (write.getType()) {
+		case CREATE:
+			return ProfileRequest.postJson(profileManagerURL, path, write.getContent(), token);
+		case UPDATE:
+			return ProfileRequest.putJson(profileManagerURL, path, write.getContent(), token);
+		default:
+			return ProfileRequest.delete(profileManagerURL, path, token);
+		}
+	}
+}
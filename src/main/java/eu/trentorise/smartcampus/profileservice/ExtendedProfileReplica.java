@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * Local replica of the extended profiles with a given profileId, answering
+ * attribute queries (equality of top-level <code>content</code> values, as
+ * {@link ExtProfileService#getExtendedProfilesByAttributes(String, Map, String)})
+ * without remote calls. Inverted indexes on the selected content keys
+ * narrow the candidates of a query; the other attributes of the query are
+ * checked on the candidates.
+ * <p>
+ * The replica is filled by {@link #load(String)} and then kept up to date
+ * incrementally: by {@link #refresh(Collection, String)} for the users known
+ * to have changed, by {@link #apply(Collection)} with the results of the
+ * batch writes, or directly by {@link #update(ExtendedProfile)} and
+ * {@link #remove(String)}. The changes applied while a load is in progress
+ * are replayed on the loaded profiles, so they are not lost by the swap.
+ * <p>
+ * Instances are thread safe; queries do not block each other. The returned
+ * profiles are shared with the replica and must not be modified.
+ *
+ */
+public class ExtendedProfileReplica {
+
+	private final ExtProfileService service;
+	private final String profileId;
+	private final Set<String> indexedKeys;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private State state;
+	/** the changes of the loads in progress, guarded by the lock */
+	private final List<ChangeLog> loads = new ArrayList<ChangeLog>();
+	private volatile long loadTime;
+
+	/**
+	 * @param service
+	 *            client used to read the profiles
+	 * @param profileId
+	 *            id of the replicated profiles
+	 * @param indexedKeys
+	 *            content keys to be indexed, the ones most used in the
+	 *            queries
+	 */
+	public ExtendedProfileReplica(ExtProfileService service, String profileId, Collection<String> indexedKeys) {
+		this.service = service;
+		this.profileId = profileId;
+		this.indexedKeys = Collections.unmodifiableSet(new LinkedHashSet<String>(indexedKeys));
+		this.state = new State(this.indexedKeys);
+	}
+
+	/**
+	 * Replace the content of the replica with all the profiles of the
+	 * profileId, read as a stream. Queries keep being answered by the
+	 * previous content until the load completes.
+	 * 
+	 * @param token
+	 *            an authorization token
+	 * @return the number of profiles loaded
+	 * @throws ProfileServiceException
+	 */
+	public int load(String token) throws SecurityException, ProfileServiceException {
+		long start = System.currentTimeMillis();
+		final State loaded = new State(indexedKeys);
+		ChangeLog changes = new ChangeLog();
+		lock.writeLock().lock();
+		try {
+			loads.add(changes);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		boolean completed = false;
+		try {
+			service.getExtendedProfilesByAttributes(profileId, Collections.<String, Object> emptyMap(), token,
+					new ProfileCallback<ExtendedProfile>() {
+						@Override
+						public void onProfile(ExtendedProfile profile) {
+							loaded.put(profile);
+						}
+					});
+			completed = true;
+		} finally {
+			lock.writeLock().lock();
+			try {
+				loads.remove(changes);
+				if (completed) {
+					changes.replay(loaded);
+					state = loaded;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		loadTime = start;
+		return loaded.profiles.size();
+	}
+
+	/**
+	 * Read again the profiles of the given users: the profiles no longer
+	 * returned by the server are removed
+	 * 
+	 * @param userIds
+	 *            users whose profiles may have changed
+	 * @param token
+	 *            an authorization token
+	 * @return the number of profiles read
+	 * @throws ProfileServiceException
+	 */
+	public int refresh(Collection<String> userIds, String token) throws SecurityException, ProfileServiceException {
+		if (userIds.isEmpty()) return 0;
+		List<ExtendedProfile> profiles = service.getExtendedProfilesForUsers(new ArrayList<String>(userIds),
+				profileId, token);
+		Set<String> removed = new HashSet<String>(userIds);
+		lock.writeLock().lock();
+		try {
+			if (profiles != null) {
+				for (ExtendedProfile profile : profiles) {
+					if (!profileId.equals(profile.getProfileId())) continue;
+					put(profile);
+					removed.remove(profile.getUserId());
+				}
+			}
+			for (String userId : removed) {
+				delete(userId);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return profiles == null ? 0 : profiles.size();
+	}
+
+	/**
+	 * Apply the successful writes of a batch to the replica
+	 * 
+	 * @param results
+	 *            results of
+	 *            {@link ExtProfileService#writeExtendedProfiles(Collection, String, int)}
+	 */
+	public void apply(Collection<WriteResult> results) {
+		lock.writeLock().lock();
+		try {
+			for (WriteResult result : results) {
+				ExtendedProfileWrite write = result.getWrite();
+				if (!result.isSuccess() || !profileId.equals(write.getProfileId())) continue;
+				if (write.getType() == ExtendedProfileWrite.Type.DELETE) {
+					delete(write.getUserId());
+					continue;
+				}
+				ExtendedProfile profile = new ExtendedProfile();
+				profile.setUserId(write.getUserId());
+				profile.setProfileId(write.getProfileId());
+				profile.setContent(write.getContent());
+				ExtendedProfile previous = state.profiles.get(write.getUserId());
+				if (previous != null) profile.setSocialId(previous.getSocialId());
+				put(profile);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add or replace the profile of a user
+	 * 
+	 * @param profile
+	 *            a profile with the profileId of the replica
+	 */
+	public void update(ExtendedProfile profile) {
+		if (!profileId.equals(profile.getProfileId())) {
+			throw new IllegalArgumentException("Profile " + profile.getProfileId() + " not replicated");
+		}
+		lock.writeLock().lock();
+		try {
+			put(profile);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the profile of a user
+	 * 
+	 * @param userId
+	 */
+	public void remove(String userId) {
+		lock.writeLock().lock();
+		try {
+			delete(userId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param profileAttributes
+	 *            values of the content keys, all of them must match
+	 * @return the profiles whose content matches all the attributes
+	 */
+	public List<ExtendedProfile> getExtendedProfilesByAttributes(Map<String, Object> profileAttributes) {
+		lock.readLock().lock();
+		try {
+			return state.find(profileAttributes);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param userId
+	 * @return the profile of the user, null if not replicated
+	 */
+	public ExtendedProfile getExtendedProfile(String userId) {
+		lock.readLock().lock();
+		try {
+			return state.profiles.get(userId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public String getProfileId() {
+		return profileId;
+	}
+
+	/**
+	 * @return the number of replicated profiles
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return state.profiles.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the start time of the last {@link #load(String)}, 0 if never
+	 *         loaded
+	 */
+	public long getLoadTime() {
+		return loadTime;
+	}
+
+	/** to be called holding the write lock */
+	private void put(ExtendedProfile profile) {
+		if (profile.getUserId() == null) return;
+		state.put(profile);
+		for (ChangeLog changes : loads) {
+			changes.changes.put(profile.getUserId(), profile);
+		}
+	}
+
+	/** to be called holding the write lock */
+	private void delete(String userId) {
+		state.remove(userId);
+		for (ChangeLog changes : loads) {
+			changes.changes.put(userId, null);
+		}
+	}
+
+	/**
+	 * JSON numbers are parsed as Integer, Long or BigInteger depending on
+	 * their size: integral values are compared as Long.
+	 */
+	static Object normalize(Object value) {
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+			return ((BigInteger) value).longValue();
+		}
+		if (value instanceof Float) return ((Float) value).doubleValue();
+		return value;
+	}
+
+	/** the last change of each user during a load, null if removed */
+	private static class ChangeLog {
+
+		private final Map<String, ExtendedProfile> changes = new HashMap<String, ExtendedProfile>();
+
+		void replay(State loaded) {
+			for (Map.Entry<String, ExtendedProfile> change : changes.entrySet()) {
+				if (change.getValue() == null) {
+					loaded.remove(change.getKey());
+				} else {
+					loaded.put(change.getValue());
+				}
+			}
+		}
+	}
+
+	/** profiles by userId and their indexes, guarded by the replica lock */
+	private static class State {
+
+		private final Map<String, ExtendedProfile> profiles = new HashMap<String, ExtendedProfile>();
+		/** content key -> normalized value -> userIds */
+		private final Map<String, Map<Object, Set<String>>> indexes = new HashMap<String, Map<Object, Set<String>>>();
+
+		State(Set<String> indexedKeys) {
+			for (String key : indexedKeys) {
+				indexes.put(key, new HashMap<Object, Set<String>>());
+			}
+		}
+
+		void put(ExtendedProfile profile) {
+			if (profile.getUserId() == null) return;
+			remove(profile.getUserId());
+			profiles.put(profile.getUserId(), profile);
+			for (Map.Entry<String, Map<Object, Set<String>>> index : indexes.entrySet()) {
+				Object value = normalize(value(profile, index.getKey()));
+				Set<String> users = index.getValue().get(value);
+				if (users == null) {
+					users = new HashSet<String>();
+					index.getValue().put(value, users);
+				}
+				users.add(profile.getUserId());
+			}
+		}
+
+		void remove(String userId) {
+			ExtendedProfile profile = profiles.remove(userId);
+			if (profile == null) return;
+			for (Map.Entry<String, Map<Object, Set<String>>> index : indexes.entrySet()) {
+				Object value = normalize(value(profile, index.getKey()));
+				Set<String> users = index.getValue().get(value);
+				if (users != null && users.remove(userId) && users.isEmpty()) {
+					index.getValue().remove(value);
+				}
+			}
+		}
+
+		List<ExtendedProfile> find(Map<String, Object> attributes) {
+			// the most selective index gives the candidates
+			Set<String> candidates = null;
+			for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+				Map<Object, Set<String>> index = indexes.get(attribute.getKey());
+				if (index == null) continue;
+				Set<String> users = index.get(normalize(attribute.getValue()));
+				if (users == null) return new ArrayList<ExtendedProfile>(0);
+				if (candidates == null || users.size() < candidates.size()) candidates = users;
+			}
+
+			List<ExtendedProfile> result = new ArrayList<ExtendedProfile>();
+			if (candidates == null) {
+				for (ExtendedProfile profile : profiles.values()) {
+					if (matches(profile, attributes)) result.add(profile);
+				}
+			} else {
+				for (String userId : candidates) {
+					ExtendedProfile profile = profiles.get(userId);
+					if (matches(profile, attributes)) result.add(profile);
+				}
+			}
+			return result;
+		}
+
+		private static boolean matches(ExtendedProfile profile, Map<String, Object> attributes) {
+			for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+				Object expected = normalize(attribute.getValue());
+				Object actual = normalize(value(profile, attribute.getKey()));
+				if (expected == null ? actual != null : !expected.equals(actual)) return false;
+			}
+			return true;
+		}
+
+		private static Object value(ExtendedProfile profile, String key) {
+			return profile.getContent() == null ? null : profile.getContent().get(key);
+		}
+	}
+}
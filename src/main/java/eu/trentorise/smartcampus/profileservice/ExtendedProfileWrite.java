@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.Map;
+
+/**
+ * A write of an extended profile of a user, to be executed in a batch by
+ * {@link ExtProfileService#writeExtendedProfiles(java.util.Collection, String, int)}
+ *
+ */
+public final class ExtendedProfileWrite {
+
+	public enum Type {
+		CREATE, UPDATE, DELETE
+	}
+
+	private final Type type;
+	private final String userId;
+	private final String profileId;
+	private final Map<String, Object> content;
+
+	private ExtendedProfileWrite(Type type, String userId, String profileId, Map<String, Object> content) {
+		this.type = type;
+		this.userId = userId;
+		this.profileId = profileId;
+		this.content = content;
+	}
+
+	/**
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @return the creation of the profile
+	 */
+	public static ExtendedProfileWrite create(String userId, String profileId, Map<String, Object> content) {
+		return new ExtendedProfileWrite(Type.CREATE, userId, profileId, content);
+	}
+
+	/**
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @param content
+	 *            profile content
+	 * @return the update of the profile
+	 */
+	public static ExtendedProfileWrite update(String userId, String profileId, Map<String, Object> content) {
+		return new ExtendedProfileWrite(Type.UPDATE, userId, profileId, content);
+	}
+
+	/**
+	 * @param userId
+	 *            id of the user
+	 * @param profileId
+	 *            id of the profile
+	 * @return the deletion of the profile
+	 */
+	public static ExtendedProfileWrite delete(String userId, String profileId) {
+		return new ExtendedProfileWrite(Type.DELETE, userId, profileId, null);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public String getProfileId() {
+		return profileId;
+	}
+
+	public Map<String, Object> getContent() {
+		return content;
+	}
+
+	/**
+	 * @return true if repeating the write has the same effect as executing it
+	 *         once
+	 */
+	public boolean isIdempotent() {
+		return type != Type.CREATE;
+	}
+
+	@Override
+	public String toString() {
+		return "ExtendedProfileWrite [type=" + type + ", userId=" + userId + ", profileId=" + profileId + "]";
+	}
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+/**
+ * Receiver of the profiles of a list response, invoked for each profile as
+ * soon as it has been parsed
+ *
+ * @param <T>
+ *            profile type
+ */
+public interface ProfileCallback<T> {
+
+	/**
+	 * @param profile
+	 *            the next profile of the response
+	 */
+	void onProfile(T profile);
+
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the concurrent operations of the profile service clients
+ *
+ */
+public class ProfileExecutors {
+
+	private ProfileExecutors() {
+	}
+
+	/**
+	 * @return the shared executor of the background reads (e.g. page
+	 *         prefetching), growing on demand with daemon threads
+	 */
+	public static ExecutorService getBackgroundExecutor() {
+		return Background.INSTANCE;
+	}
+
+	/**
+	 * @return the shared executor of the periodic tasks (e.g. index
+	 *         refreshes), with a single daemon thread
+	 */
+	public static ScheduledExecutorService getScheduledExecutor() {
+		return Scheduler.INSTANCE;
+	}
+
+	/**
+	 * @param threads
+	 *            maximum number of concurrent tasks
+	 * @return an executor with a fixed number of daemon threads
+	 */
+	public static ExecutorService newBoundedExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+	}
+
+	/**
+	 * Executor running each task on a new virtual thread (JDK 21 or later),
+	 * for the blocking bulk and fan-out calls (see
+	 * {@link BasicProfileService#setBatching(int, ExecutorService)}). At most
+	 * <code>maxConcurrency</code> tasks run at the same time: the others wait
+	 * on their (parked) virtual thread. On earlier JVMs it is equivalent to
+	 * {@link #newBoundedExecutor(int)}.
+	 * 
+	 * @param maxConcurrency
+	 *            maximum number of concurrent tasks, i.e. of concurrent
+	 *            requests to the server
+	 * @return an executor to be shut down when no longer used
+	 */
+	public static ExecutorService newVirtualThreadExecutor(int maxConcurrency) {
+		ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+		if (virtual == null) return newBoundedExecutor(maxConcurrency);
+		return new LimitingExecutor(virtual, maxConcurrency);
+	}
+
+	/**
+	 * @return true if the JVM supports virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VirtualThreads.FACTORY != null;
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (VirtualThreads.FACTORY == null) return null;
+		try {
+			return (ExecutorService) VirtualThreads.EXECUTOR.invoke(null, VirtualThreads.FACTORY);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** lazily started background executor, without locks on the request path */
+	private static class Background {
+
+		static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new DaemonThreadFactory());
+	}
+
+	/** lazily started scheduler */
+	private static class Scheduler {
+
+		static final ScheduledExecutorService INSTANCE = Executors
+				.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+	}
+
+	/** virtual thread API, looked up by reflection to run on Java 8 */
+	private static class VirtualThreads {
+
+		static final ThreadFactory FACTORY;
+		static final Method EXECUTOR;
+
+		static {
+			ThreadFactory factory = null;
+			Method executor = null;
+			try {
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+				virtual = builder.getMethod("name", String.class, long.class).invoke(virtual,
+						"profileservice-virtual-", 1L);
+				factory = (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+				executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			} catch (Exception e) {
+				// virtual threads not available
+				factory = null;
+			}
+			FACTORY = factory;
+			EXECUTOR = executor;
+		}
+	}
+
+	/** limits the number of tasks running at the same time */
+	private static class LimitingExecutor extends AbstractExecutorService {
+
+		private final ExecutorService delegate;
+		private final Semaphore permits;
+
+		LimitingExecutor(ExecutorService delegate, int maxConcurrency) {
+			this.delegate = delegate;
+			this.permits = new Semaphore(maxConcurrency);
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			delegate.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						// cancelled while waiting
+						Thread.currentThread().interrupt();
+						return;
+					}
+					try {
+						command.run();
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void shutdown() {
+			delegate.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return delegate.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return delegate.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return delegate.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return delegate.awaitTermination(timeout, unit);
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger POOL = new AtomicInteger();
+
+		private final int pool = POOL.incrementAndGet();
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "profileservice-" + pool + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+/**
+ * Unchecked wrapper of a {@link ProfileServiceException} raised while
+ * iterating over a {@link ProfileIterator}
+ *
+ */
+public class ProfileIterationException extends RuntimeException {
+
+	private static final long serialVersionUID = 4034960611458326245L;
+
+	public ProfileIterationException(ProfileServiceException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public synchronized ProfileServiceException getCause() {
+		return (ProfileServiceException) super.getCause();
+	}
+}
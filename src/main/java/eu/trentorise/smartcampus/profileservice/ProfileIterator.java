@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import eu.trentorise.smartcampus.profileservice.http.Deadline;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.ResponseReader;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser.ElementReader;
+
+/**
+ * Lazy iterator over the profiles of a list response. The response is read by
+ * a background task in pages of a fixed size: while the caller consumes a
+ * page, the following ones (at most <code>prefetch</code>) are parsed ahead,
+ * and a page is released as soon as it has been consumed. The iterator must
+ * be closed if it is not consumed to the end, to release the connection. The
+ * response is read within the {@link Deadline} of the thread creating the
+ * iterator.
+ *
+ * Errors of the remote call are thrown by {@link #hasNext()} as
+ * {@link SecurityException} or {@link ProfileIterationException}.
+ *
+ * @param <T>
+ *            profile type
+ */
+public class ProfileIterator<T> implements Iterator<T>, Closeable {
+
+	private final BlockingQueue<List<T>> pages;
+	/** marks the end of the response */
+	private final List<T> end = new ArrayList<T>(0);
+	private final Future<?> task;
+
+	private volatile boolean closed;
+	private volatile Throwable failure;
+
+	private Iterator<T> current = Collections.<T> emptyList().iterator();
+	private boolean finished;
+
+	ProfileIterator(final ProfileTransport transport, final ProfileRequest request,
+			final ElementReader<T> elementReader, final int pageSize, int prefetch, ExecutorService executor) {
+		this.pages = new ArrayBlockingQueue<List<T>>(prefetch + 1);
+		this.task = executor.submit(Deadline.bind(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					transport.execute(request, new ResponseReader<Void>() {
+						@Override
+						public Void read(InputStream content) throws IOException {
+							PageCollector collector = new PageCollector(pageSize);
+							ProfileStreamParser.readEach(content, elementReader, collector);
+							collector.flush();
+							return null;
+						}
+					});
+				} catch (Throwable t) {
+					if (!closed) failure = t;
+				} finally {
+					try {
+						if (!closed) pages.put(end);
+					} catch (InterruptedException e) {
+						// closed by the consumer
+					}
+				}
+			}
+		}));
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (finished) return false;
+			List<T> page = take();
+			if (page == end) {
+				finished = true;
+				rethrow();
+				return false;
+			}
+			current = page.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop reading the response and release the pages not yet consumed
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		finished = true;
+		task.cancel(true);
+		pages.clear();
+		current = Collections.<T> emptyList().iterator();
+	}
+
+	/**
+	 * @return a sequential stream over the remaining profiles, closing this
+	 *         iterator when the stream is closed
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	private List<T> take() {
+		try {
+			return pages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new ProfileIterationException(new ProfileServiceException("Interrupted while waiting for profiles",
+					e));
+		}
+	}
+
+	private void rethrow() {
+		Throwable t = failure;
+		if (t == null) return;
+		if (t instanceof SecurityException) throw (SecurityException) t;
+		throw new ProfileIterationException(t instanceof ProfileServiceException ? (ProfileServiceException) t
+				: new ProfileServiceException(t));
+	}
+
+	private class PageCollector implements ProfileCallback<T> {
+
+		private final int pageSize;
+		private List<T> page;
+
+		PageCollector(int pageSize) {
+			this.pageSize = pageSize;
+			this.page = new ArrayList<T>(pageSize);
+		}
+
+		@Override
+		public void onProfile(T profile) {
+			page.add(profile);
+			if (page.size() >= pageSize) flush();
+		}
+
+		void flush() {
+			if (page.isEmpty()) return;
+			if (closed) throw new CancellationException();
+			try {
+				pages.put(page);
+			} catch (InterruptedException e) {
+				// the transport aborts the request on runtime exceptions
+				throw new CancellationException();
+			}
+			page = new ArrayList<T>(pageSize);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+/**
+ * Local index of the profile directory for type-ahead searches by full name
+ * (name and surname), answering without remote calls. A query matches the
+ * profiles in which each of its words is the prefix of a word of the name or
+ * surname, ignoring case and accents; the first <code>limit</code> matches in
+ * alphabetical order of the full name are returned.
+ * <p>
+ * The index is built from the whole directory by {@link #load(String)} and
+ * can be reloaded periodically in the background by
+ * {@link #startRefresh(String, long)}; queries are answered by the previous
+ * index while the new one is built. The words of all the profiles are kept
+ * in a single sorted array, so that the profiles with a word starting with a
+ * prefix are found by binary search.
+ * <p>
+ * Instances are thread safe. The returned profiles are shared with the index
+ * and must not be modified.
+ *
+ */
+public class ProfileNameIndex {
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	private final BasicProfileService service;
+
+	private volatile Index index = new Index(Collections.<BasicProfile> emptyList());
+	private volatile long loadTime;
+	private ScheduledFuture<?> refresh;
+
+	/**
+	 * @param service
+	 *            client used to read the directory
+	 */
+	public ProfileNameIndex(BasicProfileService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Build the index from all the profiles of the directory, read as a
+	 * stream
+	 * 
+	 * @param token
+	 *            an user or client access token
+	 * @return the number of profiles indexed
+	 * @throws ProfileServiceException
+	 */
+	public int load(String token) throws SecurityException, ProfileServiceException {
+		long start = System.currentTimeMillis();
+		final List<BasicProfile> profiles = new ArrayList<BasicProfile>();
+		service.getBasicProfiles(null, token, new ProfileCallback<BasicProfile>() {
+			@Override
+			public void onProfile(BasicProfile profile) {
+				profiles.add(profile);
+			}
+		});
+		index = new Index(profiles);
+		loadTime = start;
+		return profiles.size();
+	}
+
+	/**
+	 * Reload the index every <code>period</code> milliseconds in the
+	 * background, replacing a previous schedule. A failed reload keeps the
+	 * current index.
+	 * 
+	 * @param token
+	 *            a client access token valid for the whole schedule
+	 * @param period
+	 *            milliseconds between the end of a reload and the start of
+	 *            the next one
+	 */
+	public synchronized void startRefresh(final String token, long period) {
+		stopRefresh();
+		refresh = ProfileExecutors.getScheduledExecutor().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load(token);
+				} catch (Exception e) {
+					// retried at the next period
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background reloads
+	 */
+	public synchronized void stopRefresh() {
+		if (refresh != null) {
+			refresh.cancel(false);
+			refresh = null;
+		}
+	}
+
+	/**
+	 * @param query
+	 *            words typed by the user, possibly incomplete
+	 * @param limit
+	 *            maximum number of profiles returned
+	 * @return the first matching profiles by full name, all the profiles if
+	 *         the query has no words
+	 */
+	public List<BasicProfile> search(String query, int limit) {
+		return index.search(words(query), limit);
+	}
+
+	/**
+	 * @return the number of profiles indexed
+	 */
+	public int size() {
+		return index.profiles.length;
+	}
+
+	/**
+	 * @return the start time of the last {@link #load(String)}, 0 if never
+	 *         loaded
+	 */
+	public long getLoadTime() {
+		return loadTime;
+	}
+
+	/**
+	 * @return the lower case words of the text, without accents
+	 */
+	static String[] words(String text) {
+		if (text == null) return new String[0];
+		String plain = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+		String[] words = SEPARATORS.split(plain.toLowerCase(Locale.ROOT));
+		int count = 0;
+		for (String word : words) {
+			if (!word.isEmpty()) words[count++] = word;
+		}
+		return Arrays.copyOf(words, count);
+	}
+
+	/** immutable index over a copy of the directory */
+	private static class Index {
+
+		/** profiles in order of full name: the position is the rank */
+		private final BasicProfile[] profiles;
+		/** words of each profile */
+		private final String[][] profileWords;
+		/** sorted words of all the profiles and rank of their profile */
+		private final String[] words;
+		private final int[] owners;
+
+		Index(Collection<BasicProfile> directory) {
+			final List<BasicProfile> sorted = new ArrayList<BasicProfile>(directory);
+			final String[][] names = new String[sorted.size()][];
+			Integer[] order = new Integer[sorted.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+				names[i] = words(fullName(sorted.get(i)));
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return compareNames(names[a], names[b]);
+				}
+			});
+
+			profiles = new BasicProfile[order.length];
+			profileWords = new String[order.length][];
+			int total = 0;
+			for (int rank = 0; rank < order.length; rank++) {
+				profiles[rank] = sorted.get(order[rank]);
+				profileWords[rank] = names[order[rank]];
+				total += profileWords[rank].length;
+			}
+
+			final String[] allWords = new String[total];
+			final int[] allOwners = new int[total];
+			Integer[] positions = new Integer[total];
+			int n = 0;
+			for (int rank = 0; rank < profileWords.length; rank++) {
+				for (String word : profileWords[rank]) {
+					allWords[n] = word;
+					allOwners[n] = rank;
+					positions[n] = n;
+					n++;
+				}
+			}
+			Arrays.sort(positions, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return allWords[a].compareTo(allWords[b]);
+				}
+			});
+			words = new String[total];
+			owners = new int[total];
+			for (int i = 0; i < total; i++) {
+				// equal words share the instance
+				words[i] = i > 0 && words[i - 1].equals(allWords[positions[i]]) ? words[i - 1]
+						: allWords[positions[i]];
+				owners[i] = allOwners[positions[i]];
+			}
+		}
+
+		List<BasicProfile> search(String[] query, int limit) {
+			if (limit <= 0) return new ArrayList<BasicProfile>(0);
+			if (query.length == 0) {
+				return new ArrayList<BasicProfile>(Arrays.asList(profiles).subList(0,
+						Math.min(limit, profiles.length)));
+			}
+			// the longest word is the most selective
+			String prefix = query[0];
+			for (String word : query) {
+				if (word.length() > prefix.length()) prefix = word;
+			}
+
+			// best ranks found so far, the worst on top
+			PriorityQueue<Integer> best = new PriorityQueue<Integer>(limit, Collections.reverseOrder());
+			for (int i = lowerBound(prefix); i < words.length && words[i].startsWith(prefix); i++) {
+				int rank = owners[i];
+				if (best.size() == limit && rank >= best.peek()) continue;
+				if (best.contains(rank) || !matches(profileWords[rank], query)) continue;
+				best.add(rank);
+				if (best.size() > limit) best.poll();
+			}
+
+			Integer[] ranks = best.toArray(new Integer[best.size()]);
+			Arrays.sort(ranks);
+			List<BasicProfile> result = new ArrayList<BasicProfile>(ranks.length);
+			for (int rank : ranks) {
+				result.add(profiles[rank]);
+			}
+			return result;
+		}
+
+		private int lowerBound(String prefix) {
+			int low = 0, high = words.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (words[mid].compareTo(prefix) < 0) low = mid + 1;
+				else high = mid;
+			}
+			return low;
+		}
+
+		private static boolean matches(String[] profileWords, String[] query) {
+			for (String word : query) {
+				boolean found = false;
+				for (String profileWord : profileWords) {
+					if (profileWord.startsWith(word)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) return false;
+			}
+			return true;
+		}
+
+		private static String fullName(BasicProfile profile) {
+			String name = profile.getName() == null ? "" : profile.getName();
+			return profile.getSurname() == null ? name : name + ' ' + profile.getSurname();
+		}
+
+		private static int compareNames(String[] a, String[] b) {
+			for (int i = 0; i < a.length && i < b.length; i++) {
+				int c = a[i].compareTo(b[i]);
+				if (c != 0) return c;
+			}
+			return a.length - b.length;
+		}
+	}
+}
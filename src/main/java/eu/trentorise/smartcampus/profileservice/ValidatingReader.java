@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.trentorise.smartcampus.profileservice.cache.Validated;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ResponseReader;
+
+/**
+ * Reader of a conditional request: the body is parsed only if it has changed
+ * since the previous result, otherwise the previous result is returned as
+ * is.
+ *
+ * @param <T>
+ *            type of the result
+ */
+class ValidatingReader<T> implements ResponseReader<Validated<T>> {
+
+	private final Validated<T> cached;
+	private final ResponseReader<T> body;
+
+	private String etag;
+	private String lastModified;
+
+	/**
+	 * @param cached
+	 *            the previous result, may be null
+	 * @param body
+	 *            reader of a changed body
+	 */
+	ValidatingReader(Validated<T> cached, ResponseReader<T> body) {
+		this.cached = cached;
+		this.body = body;
+	}
+
+	/**
+	 * @return the request with the validators of the previous result, if any
+	 */
+	static ProfileRequest conditional(ProfileRequest request, Validated<?> cached) {
+		if (cached == null || !cached.hasValidators()) return request;
+		return request.conditional(cached.getETag(), cached.getLastModified());
+	}
+
+	@Override
+	public Validated<T> read(InputStream content) throws IOException {
+		return new Validated<T>(body.read(content), etag, lastModified);
+	}
+
+	@Override
+	public void validators(String etag, String lastModified) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	@Override
+	public Validated<T> notModified() throws IOException {
+		if (cached == null) throw new IOException("Unexpected 304 response");
+		return cached;
+	}
+}
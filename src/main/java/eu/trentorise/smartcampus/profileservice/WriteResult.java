@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+/**
+ * Outcome of a single write of a batch
+ *
+ */
+public final class WriteResult {
+
+	public enum Status {
+		/** executed at the first attempt */
+		SUCCESS,
+		/** executed after one or more failed attempts */
+		RETRIED,
+		/** not executed, see {@link WriteResult#getCause()} */
+		FAILURE
+	}
+
+	private final ExtendedProfileWrite write;
+	private final Status status;
+	private final int attempts;
+	private final Exception cause;
+
+	WriteResult(ExtendedProfileWrite write, Status status, int attempts, Exception cause) {
+		this.write = write;
+		this.status = status;
+		this.attempts = attempts;
+		this.cause = cause;
+	}
+
+	public ExtendedProfileWrite getWrite() {
+		return write;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return true if the write has been executed
+	 */
+	public boolean isSuccess() {
+		return status != Status.FAILURE;
+	}
+
+	/**
+	 * @return the number of requests sent for the write, 0 if it has not been
+	 *         attempted
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return the error of the last attempt, null if the write succeeded. A
+	 *         rejected token is reported as {@link SecurityException}, other
+	 *         errors as {@link ProfileServiceException}.
+	 */
+	public Exception getCause() {
+		return cause;
+	}
+
+	@Override
+	public String toString() {
+		return "WriteResult [write=" + write + ", status=" + status + ", attempts=" + attempts
+				+ (cause == null ? "" : ", cause=" + cause) + "]";
+	}
+}
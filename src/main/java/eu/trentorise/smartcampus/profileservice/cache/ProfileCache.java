@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory cache with LRU eviction and per-entry time to live.
+ * Instances are thread safe.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+public class ProfileCache<K, V> {
+
+	private final int maxSize;
+	private final long ttl;
+	/** time an expired entry is kept for {@link #getStale(Object)} */
+	private volatile long staleTtl;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<K, CacheEntry<V>> entries;
+	/** version of the last entry stored, guarded by the lock */
+	private long version;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            maximum number of entries, the least recently used entries
+	 *            are evicted beyond this size
+	 * @param ttl
+	 *            default time to live of an entry, in milliseconds
+	 */
+	public ProfileCache(int maxSize, long ttl) {
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+				if (size() > ProfileCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 * @return the cached value, or null if absent or expired
+	 */
+	public V get(K key) {
+		long now = System.currentTimeMillis();
+		lock.lock();
+		try {
+			CacheEntry<V> e = entries.get(key);
+			if (e != null && e.expires > now) {
+				hits.incrementAndGet();
+				return e.value;
+			}
+			if (e != null && e.expires + staleTtl <= now) {
+				entries.remove(key);
+			}
+		} finally {
+			lock.unlock();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Return the value even if expired, as long as it is within the stale
+	 * time to live (see {@link #setStaleTtl(long)}). Used as fallback when
+	 * the value cannot be read; the counters are not updated.
+	 *
+	 * @param key
+	 * @return the cached value, or null if absent or expired beyond the stale
+	 *         time to live
+	 */
+	public V getStale(K key) {
+		long now = System.currentTimeMillis();
+		lock.lock();
+		try {
+			CacheEntry<V> e = entries.get(key);
+			return e != null && e.expires + staleTtl > now ? e.value : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the value even if expired, as long as it expired less than
+	 * <code>maxStale</code> milliseconds ago (and within the stale time to
+	 * live). The counters are not updated.
+	 *
+	 * @param key
+	 * @param maxStale
+	 *            maximum time since the expiration, in milliseconds
+	 * @return the cached value, or null if absent or expired for too long
+	 */
+	public V getStale(K key, long maxStale) {
+		long now = System.currentTimeMillis();
+		lock.lock();
+		try {
+			CacheEntry<V> e = entries.get(key);
+			return e != null && e.expires + Math.min(maxStale, staleTtl) > now ? e.value : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param staleTtl
+	 *            time in milliseconds the expired entries are still returned
+	 *            by {@link #getStale(Object)}, 0 to drop them on expiration
+	 */
+	public void setStaleTtl(long staleTtl) {
+		this.staleTtl = Math.max(0, staleTtl);
+	}
+
+	/**
+	 * Store the value with the default time to live
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(K key, V value) {
+		put(key, value, ttl);
+	}
+
+	/**
+	 * Store the value with a specific time to live
+	 *
+	 * @param key
+	 * @param value
+	 * @param ttl
+	 *            time to live of the entry, in milliseconds
+	 */
+	public void put(K key, V value, long ttl) {
+		if (key == null || value == null) return;
+		long expires = System.currentTimeMillis() + ttl;
+		lock.lock();
+		try {
+			entries.put(key, new CacheEntry<V>(value, expires, ++version));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the version of the entry of the key, expired or not, 0 if
+	 *         absent. Each store of a value gives the entry a new version.
+	 */
+	public long version(K key) {
+		lock.lock();
+		try {
+			CacheEntry<V> e = entries.get(key);
+			return e == null ? 0 : e.version;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Store the value with the default time to live, only if the entry of the
+	 * key is still the one of the given version: not invalidated or replaced
+	 * in the meantime. Used by the background refreshes, whose result must not
+	 * undo a later invalidation.
+	 *
+	 * @param key
+	 * @param version
+	 *            the version of the entry being refreshed, see
+	 *            {@link #version(Object)}
+	 * @param value
+	 * @return true if the value has been stored
+	 */
+	public boolean replace(K key, long version, V value) {
+		if (key == null || value == null || version == 0) return false;
+		long expires = System.currentTimeMillis() + ttl;
+		lock.lock();
+		try {
+			CacheEntry<V> e = entries.get(key);
+			if (e == null || e.version != version) return false;
+			entries.put(key, new CacheEntry<V>(value, expires, ++this.version));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the entry of the key
+	 *
+	 * @param key
+	 */
+	public void invalidate(K key) {
+		lock.lock();
+		try {
+			entries.remove(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			entries.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the current number of entries, expired ones included
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return a snapshot of the cache counters
+	 */
+	public CacheStats getStats() {
+		return new CacheStats(hits.get(), misses.get(), evictions.get());
+	}
+
+	private static class CacheEntry<V> {
+		private final V value;
+		private final long expires;
+		private final long version;
+
+		private CacheEntry(V value, long expires, long version) {
+			this.value = value;
+			this.expires = expires;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Background refresh of expired cache entries, for the stale-while-revalidate
+ * reads: the caller gets the stale value at once while the entry is reloaded
+ * by another thread. At most one refresh per key is pending, and at most
+ * <code>maxConcurrency</code> refreshes run at the same time: beyond that the
+ * refresh is skipped and the next read of the key tries again.
+ *
+ */
+public class Revalidator {
+
+	private final Executor executor;
+	private final Semaphore permits;
+	private final ConcurrentMap<Object, Boolean> pending = new ConcurrentHashMap<Object, Boolean>();
+
+	/**
+	 * @param maxConcurrency
+	 *            maximum number of concurrent refreshes
+	 * @param executor
+	 *            executor of the refreshes
+	 */
+	public Revalidator(int maxConcurrency, Executor executor) {
+		if (maxConcurrency <= 0) throw new IllegalArgumentException("maxConcurrency must be positive");
+		this.permits = new Semaphore(maxConcurrency);
+		this.executor = executor;
+	}
+
+	/**
+	 * Schedule the refresh of an entry, unless the same entry is already
+	 * being refreshed or too many refreshes are running
+	 * 
+	 * @param key
+	 *            key of the entry
+	 * @param refresh
+	 *            reload of the entry; its failures are ignored, so that the
+	 *            stale value is kept
+	 * @return true if the refresh has been scheduled
+	 */
+	public boolean refresh(final Object key, final Runnable refresh) {
+		if (pending.putIfAbsent(key, Boolean.TRUE) != null) return false;
+		if (!permits.tryAcquire()) {
+			pending.remove(key);
+			return false;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						refresh.run();
+					} catch (RuntimeException e) {
+						// the stale value is kept
+					} finally {
+						permits.release();
+						pending.remove(key);
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			pending.remove(key);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of refreshes scheduled or running
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+}
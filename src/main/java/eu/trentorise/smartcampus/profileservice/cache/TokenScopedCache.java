@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Cache of the data owned by an access token (the ".../me" resources). Entries
+ * are keyed by the SHA-256 digest of the token, the token itself is never
+ * stored.
+ *
+ * @param <V>
+ *            value type
+ */
+public class TokenScopedCache<V> {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final ProfileCache<String, V> cache;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of entries
+	 * @param ttl
+	 *            time to live of an entry, in milliseconds
+	 */
+	public TokenScopedCache(int maxSize, long ttl) {
+		this.cache = new ProfileCache<String, V>(maxSize, ttl);
+	}
+
+	/**
+	 * @param token
+	 *            access token
+	 * @param resource
+	 *            resource of the token owner
+	 * @return the cached value, or null if absent or expired
+	 */
+	public V get(String token, String resource) {
+		return cache.get(key(token, resource));
+	}
+
+	/**
+	 * @param token
+	 *            access token
+	 * @param resource
+	 *            resource of the token owner
+	 * @return the cached value even if expired, within the stale time to
+	 *         live
+	 * @see ProfileCache#getStale(Object)
+	 */
+	public V getStale(String token, String resource) {
+		return cache.getStale(key(token, resource));
+	}
+
+	/**
+	 * @param staleTtl
+	 *            time in milliseconds the expired entries are still returned
+	 *            by {@link #getStale(String, String)}
+	 */
+	public void setStaleTtl(long staleTtl) {
+		cache.setStaleTtl(staleTtl);
+	}
+
+	/**
+	 * @param token
+	 *            access token
+	 * @param resource
+	 *            resource of the token owner
+	 * @param value
+	 */
+	public void put(String token, String resource, V value) {
+		cache.put(key(token, resource), value);
+	}
+
+	/**
+	 * @param token
+	 *            access token
+	 * @param resource
+	 *            resource of the token owner
+	 */
+	public void invalidate(String token, String resource) {
+		cache.invalidate(key(token, resource));
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return hit/miss counters of the cache
+	 */
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+
+	private static String key(String token, String resource) {
+		return hash(token) + '/' + resource;
+	}
+
+	/**
+	 * @param token
+	 * @return the hex encoded SHA-256 digest of the token
+	 */
+	public static String hash(String token) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+					String.valueOf(token).getBytes("UTF-8"));
+			char[] chars = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+				chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
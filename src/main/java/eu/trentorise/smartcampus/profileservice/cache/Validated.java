@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+/**
+ * A value read from the server with the validators of its response (ETag and
+ * Last-Modified), used to ask the server whether the value has changed.
+ * Instances are immutable.
+ *
+ * @param <V>
+ *            value type
+ */
+public class Validated<V> {
+
+	private final V value;
+	private final String etag;
+	private final String lastModified;
+
+	/**
+	 * @param value
+	 *            the value read
+	 * @param etag
+	 *            entity tag of the response, may be null
+	 * @param lastModified
+	 *            Last-Modified date of the response, may be null
+	 */
+	public Validated(V value, String etag, String lastModified) {
+		this.value = value;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	public V getValue() {
+		return value;
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return true if the value can be revalidated with a conditional request
+	 */
+	public boolean hasValidators() {
+		return etag != null || lastModified != null;
+	}
+}
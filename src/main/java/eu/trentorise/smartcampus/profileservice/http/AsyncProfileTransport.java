@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link ProfileTransport}. The default
+ * implementation is {@link PooledAsyncHttpTransport}.
+ *
+ */
+public interface AsyncProfileTransport {
+
+	/**
+	 * Start the execution of the request
+	 *
+	 * @param request
+	 *            the request to execute
+	 * @return a future completed with the response body, or exceptionally
+	 *         with a {@link SecurityException} if the server rejects the
+	 *         access token or with a
+	 *         {@link eu.trentorise.smartcampus.network.RemoteException} if the
+	 *         call fails
+	 */
+	CompletableFuture<String> execute(ProfileRequest request);
+
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker of an endpoint family. The circuit opens when the rate of
+ * failed or slow calls among the last calls exceeds the threshold; while
+ * open, the calls are refused. After the open duration a limited number of
+ * probe calls is let through (half-open): the circuit closes if they all
+ * succeed and opens again at the first failure.
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final CircuitBreakerConfig config;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** outcome of the last calls, as a ring buffer */
+	private final boolean[] failed;
+	private final boolean[] slow;
+	private int next;
+	private int recorded;
+	private int failures;
+	private int slowCalls;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probes;
+	private int probeSuccesses;
+	/** incremented at each change of state */
+	private long generation;
+
+	public CircuitBreaker(CircuitBreakerConfig config) {
+		this.config = config;
+		this.failed = new boolean[config.getWindowSize()];
+		this.slow = new boolean[config.getWindowSize()];
+	}
+
+	/**
+	 * @return the permit of the call, null if the call may not proceed; the
+	 *         outcome of a permitted call must be reported with
+	 *         {@link #onResult(Permit, boolean, long)}
+	 */
+	public Permit tryAcquire() {
+		lock.lock();
+		try {
+			if (state == State.CLOSED) return new Permit(generation);
+			if (state == State.OPEN) {
+				if (System.currentTimeMillis() - openedAt < config.getOpenDuration()) return null;
+				state = State.HALF_OPEN;
+				generation++;
+				probes = 0;
+				probeSuccesses = 0;
+			}
+			// half open: a limited number of probes
+			if (probes >= config.getHalfOpenCalls()) return null;
+			probes++;
+			return new Permit(generation);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The outcome of a call permitted before the last change of state is
+	 * ignored: e.g. a slow call started while the circuit was closed does not
+	 * count as a probe of the half open circuit.
+	 * 
+	 * @param permit
+	 *            the permit of the call
+	 * @param failure
+	 *            true if the call failed for a server error
+	 * @param nanos
+	 *            duration of the call
+	 */
+	public void onResult(Permit permit, boolean failure, long nanos) {
+		boolean isSlow = nanos > config.getSlowCallNanos();
+		lock.lock();
+		try {
+			if (permit.generation != generation) return;
+			switch (state) {
+			case HALF_OPEN:
+				if (failure || isSlow) {
+					open();
+				} else if (++probeSuccesses >= config.getHalfOpenCalls()) {
+					close();
+				}
+				break;
+			case CLOSED:
+				record(failure, isSlow);
+				if (recorded >= config.getMinimumCalls()
+						&& ((double) failures / recorded >= config.getFailureRateThreshold()
+						|| (double) slowCalls / recorded >= config.getSlowCallRateThreshold())) {
+					open();
+				}
+				break;
+			default:
+				// no call is permitted while open
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public State getState() {
+		lock.lock();
+		try {
+			return state;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void record(boolean failure, boolean isSlow) {
+		if (recorded == failed.length) {
+			if (failed[next]) failures--;
+			if (slow[next]) slowCalls--;
+		} else {
+			recorded++;
+		}
+		failed[next] = failure;
+		slow[next] = isSlow;
+		if (failure) failures++;
+		if (isSlow) slowCalls++;
+		next = (next + 1) % failed.length;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		generation++;
+		openedAt = System.currentTimeMillis();
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		generation++;
+		next = 0;
+		recorded = 0;
+		failures = 0;
+		slowCalls = 0;
+		for (int i = 0; i < failed.length; i++) {
+			failed[i] = false;
+			slow[i] = false;
+		}
+	}
+
+	/**
+	 * Permission to send a call, tied to the state of the circuit when it was
+	 * granted
+	 */
+	public static final class Permit {
+
+		private final long generation;
+
+		private Permit(long generation) {
+			this.generation = generation;
+		}
+	}
+}
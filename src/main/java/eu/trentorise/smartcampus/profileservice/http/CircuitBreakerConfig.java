@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thresholds of the {@link CircuitBreaker}s of a {@link CircuitBreakerTransport}
+ *
+ */
+public class CircuitBreakerConfig {
+
+	private final int windowSize;
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final long slowCallNanos;
+	private final double slowCallRateThreshold;
+	private final long openDuration;
+	private final int halfOpenCalls;
+
+	private CircuitBreakerConfig(Builder builder) {
+		this.windowSize = builder.windowSize;
+		this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+		this.failureRateThreshold = builder.failureRateThreshold;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowCallDuration);
+		this.slowCallRateThreshold = builder.slowCallRateThreshold;
+		this.openDuration = builder.openDuration;
+		this.halfOpenCalls = builder.halfOpenCalls;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public long getSlowCallNanos() {
+		return slowCallNanos;
+	}
+
+	public double getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	public int getHalfOpenCalls() {
+		return halfOpenCalls;
+	}
+
+	public static class Builder {
+
+		private int windowSize = 20;
+		private int minimumCalls = 10;
+		private double failureRateThreshold = 0.5;
+		private long slowCallDuration = 5000;
+		private double slowCallRateThreshold = 0.8;
+		private long openDuration = 30000;
+		private int halfOpenCalls = 1;
+
+		/**
+		 * @param windowSize
+		 *            number of the last calls the rates are computed on
+		 * @return
+		 */
+		public Builder windowSize(int windowSize) {
+			if (windowSize <= 0) throw new IllegalArgumentException("windowSize must be positive");
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		/**
+		 * @param minimumCalls
+		 *            calls to record before the circuit may open
+		 * @return
+		 */
+		public Builder minimumCalls(int minimumCalls) {
+			this.minimumCalls = Math.max(1, minimumCalls);
+			return this;
+		}
+
+		/**
+		 * @param threshold
+		 *            failure rate opening the circuit, between 0 and 1
+		 * @return
+		 */
+		public Builder failureRateThreshold(double threshold) {
+			this.failureRateThreshold = threshold;
+			return this;
+		}
+
+		/**
+		 * @param slowCallDuration
+		 *            duration in milliseconds beyond which a call is slow
+		 * @param threshold
+		 *            slow call rate opening the circuit, between 0 and 1;
+		 *            above 1 the slow calls never open the circuit
+		 * @return
+		 */
+		public Builder slowCalls(long slowCallDuration, double threshold) {
+			this.slowCallDuration = slowCallDuration;
+			this.slowCallRateThreshold = threshold;
+			return this;
+		}
+
+		/**
+		 * @param openDuration
+		 *            time in milliseconds the circuit stays open before
+		 *            letting probe calls through
+		 * @return
+		 */
+		public Builder openDuration(long openDuration) {
+			this.openDuration = openDuration;
+			return this;
+		}
+
+		/**
+		 * @param halfOpenCalls
+		 *            probe calls that must succeed to close the circuit
+		 * @return
+		 */
+		public Builder halfOpenCalls(int halfOpenCalls) {
+			this.halfOpenCalls = Math.max(1, halfOpenCalls);
+			return this;
+		}
+
+		public CircuitBreakerConfig build() {
+			return new CircuitBreakerConfig(this);
+		}
+	}
+}
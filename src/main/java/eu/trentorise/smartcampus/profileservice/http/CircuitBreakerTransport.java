@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * {@link ProfileTransport} decorator with a {@link CircuitBreaker} for each
+ * endpoint family (the first segment of the path: <code>basicprofile</code>,
+ * <code>accountprofile</code>, <code>extprofile</code>). While the circuit
+ * of a family is open its calls fail immediately with a
+ * {@link CircuitOpenException}.
+ * 
+ * Failures without a response and 429 or 5xx responses count as failures;
+ * rejected tokens, other client errors, calls refused by the client-side
+ * rate limits and calls interrupted by the {@link Deadline} of the caller do
+ * not (they still count as slow calls).
+ *
+ */
+public class CircuitBreakerTransport implements ProfileTransport {
+
+	private final ProfileTransport delegate;
+	private final CircuitBreakerConfig config;
+	private final ConcurrentMap<String, CircuitBreaker> breakers;
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param config
+	 *            thresholds of the circuit breakers
+	 */
+	public CircuitBreakerTransport(ProfileTransport delegate, CircuitBreakerConfig config) {
+		this.delegate = delegate;
+		this.config = config;
+		this.breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	}
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param shared
+	 *            transport whose circuits are shared with this one
+	 */
+	public CircuitBreakerTransport(ProfileTransport delegate, CircuitBreakerTransport shared) {
+		this.delegate = delegate;
+		this.config = shared.config;
+		this.breakers = shared.breakers;
+	}
+
+	@Override
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		String family = family(request);
+		CircuitBreaker breaker = breaker(family);
+		CircuitBreaker.Permit permit = breaker.tryAcquire();
+		if (permit == null) throw new CircuitOpenException(family);
+
+		long start = System.nanoTime();
+		boolean failure = false;
+		try {
+			return delegate.execute(request);
+		} catch (RemoteException e) {
+			failure = isFailure(e);
+			throw e;
+		} finally {
+			breaker.onResult(permit, failure, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		String family = family(request);
+		CircuitBreaker breaker = breaker(family);
+		CircuitBreaker.Permit permit = breaker.tryAcquire();
+		if (permit == null) throw new CircuitOpenException(family);
+
+		long start = System.nanoTime();
+		boolean failure = false;
+		try {
+			return delegate.execute(request, reader);
+		} catch (RemoteException e) {
+			failure = isFailure(e);
+			throw e;
+		} finally {
+			breaker.onResult(permit, failure, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @param family
+	 *            endpoint family, e.g. <code>basicprofile</code>
+	 * @return the state of the circuit of the family
+	 */
+	public CircuitBreaker.State getState(String family) {
+		return breaker(family).getState();
+	}
+
+	private CircuitBreaker breaker(String family) {
+		CircuitBreaker breaker = breakers.get(family);
+		if (breaker == null) {
+			CircuitBreaker created = new CircuitBreaker(config);
+			breaker = breakers.putIfAbsent(family, created);
+			if (breaker == null) breaker = created;
+		}
+		return breaker;
+	}
+
+	private static String family(ProfileRequest request) {
+		String path = request.getPath();
+		int start = path.startsWith("/") ? 1 : 0;
+		int end = start;
+		while (end < path.length() && path.charAt(end) != '/' && path.charAt(end) != '?') {
+			end++;
+		}
+		return path.substring(start, end);
+	}
+
+	private static boolean isFailure(RemoteException e) {
+		if (e instanceof DeadlineExceededException || e instanceof RateLimitedException) return false;
+		if (e instanceof HttpStatusException) {
+			int status = ((HttpStatusException) e).getStatus();
+			return status == 429 || status >= 500;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * Call refused without contacting the server, since the circuit of its
+ * endpoint family is open
+ *
+ */
+public class CircuitOpenException extends RemoteException {
+
+	private static final long serialVersionUID = -2203407961339117470L;
+
+	private final String family;
+
+	public CircuitOpenException(String family) {
+		super("Circuit open for " + family);
+		this.family = family;
+	}
+
+	/**
+	 * @return the endpoint family, e.g. <code>basicprofile</code>
+	 */
+	public String getFamily() {
+		return family;
+	}
+
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.cache.TokenScopedCache;
+
+/**
+ * {@link ProfileTransport} decorator sharing a single in-flight request among
+ * concurrent identical reads. Two GET requests are identical when they have
+ * the same address and the same access token (compared by digest); the
+ * callers waiting for an in-flight request receive its result or its error.
+ * Conditional reads are identical only when they carry the same validators.
+ * Writes are always executed.
+ * <p>
+ * A streamed response is shared only if its body fits in the buffer size:
+ * the callers then read the buffered body with their own reader. Larger
+ * bodies, such as the pages of the profile directory, are streamed to the
+ * reader of the caller that sent the request, and the other callers send
+ * their own request.
+ * <p>
+ * The waiting callers stop at the expiration of their own {@link Deadline}.
+ * When the shared call fails because its caller's deadline expired or its
+ * thread was interrupted, the waiting callers send their own request.
+ *
+ */
+public class CoalescingTransport implements ProfileTransport {
+
+	/** default maximum size of a shared streamed body, in bytes */
+	public static final int DEFAULT_MAX_BUFFERED = 64 * 1024;
+
+	private final ProfileTransport delegate;
+	private final int maxBuffered;
+	private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<String, CompletableFuture<String>>();
+	private final ConcurrentMap<String, CompletableFuture<Buffered>> inFlightStreams = new ConcurrentHashMap<String, CompletableFuture<Buffered>>();
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 */
+	public CoalescingTransport(ProfileTransport delegate) {
+		this(delegate, DEFAULT_MAX_BUFFERED);
+	}
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param maxBuffered
+	 *            maximum size in bytes of a streamed body shared among the
+	 *            callers
+	 */
+	public CoalescingTransport(ProfileTransport delegate, int maxBuffered) {
+		this.delegate = delegate;
+		this.maxBuffered = maxBuffered;
+	}
+
+	@Override
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		if (request.getMethod() != ProfileRequest.Method.GET) {
+			return delegate.execute(request);
+		}
+
+		String key = key(request);
+		CompletableFuture<String> call = new CompletableFuture<String>();
+		CompletableFuture<String> running = inFlight.putIfAbsent(key, call);
+		if (running == null) {
+			try {
+				String body = delegate.execute(request);
+				call.complete(body);
+				return body;
+			} catch (RuntimeException | RemoteException e) {
+				fail(call, e);
+				throw e;
+			} finally {
+				inFlight.remove(key, call);
+				call.completeExceptionally(NotShared.INSTANCE);
+			}
+		}
+		try {
+			return await(running);
+		} catch (NotShared e) {
+			return delegate.execute(request);
+		}
+	}
+
+	/**
+	 * The shared body is buffered in memory, up to the buffer size, and each
+	 * caller reads it with its own reader.
+	 */
+	@Override
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		if (request.getMethod() != ProfileRequest.Method.GET) {
+			return delegate.execute(request, reader);
+		}
+
+		String key = key(request);
+		CompletableFuture<Buffered> call = new CompletableFuture<Buffered>();
+		CompletableFuture<Buffered> running = inFlightStreams.putIfAbsent(key, call);
+		if (running == null) {
+			try {
+				return delegate.execute(request, new SharingReader<T>(reader, call, maxBuffered));
+			} catch (RuntimeException | RemoteException e) {
+				fail(call, e);
+				throw e;
+			} finally {
+				inFlightStreams.remove(key, call);
+				// e.g. a reader failing before the body
+				call.completeExceptionally(NotShared.INSTANCE);
+			}
+		}
+		Buffered response;
+		try {
+			response = await(running);
+		} catch (NotShared e) {
+			return delegate.execute(request, reader);
+		}
+		try {
+			return response.replay(reader);
+		} catch (IOException e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the number of distinct requests currently in flight
+	 */
+	public int getInFlightCount() {
+		return inFlight.size() + inFlightStreams.size();
+	}
+
+	private static String key(ProfileRequest request) {
+		String key = request.getURI() + '#' + TokenScopedCache.hash(request.getToken());
+		if (request.isConditional()) {
+			key += '#' + request.getIfNoneMatch() + '#' + request.getIfModifiedSince();
+		}
+		return key;
+	}
+
+	/**
+	 * The failures due to the deadline or to the interruption of the calling
+	 * thread are not passed to the other callers
+	 */
+	private static void fail(CompletableFuture<?> call, Exception e) {
+		if (e instanceof DeadlineExceededException || Thread.currentThread().isInterrupted()) {
+			call.completeExceptionally(NotShared.INSTANCE);
+		} else {
+			call.completeExceptionally(e);
+		}
+	}
+
+	private static <V> V await(CompletableFuture<V> call) throws SecurityException, RemoteException {
+		Deadline deadline = Deadline.current();
+		try {
+			return deadline == null ? call.get() : call.get(deadline.remaining(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new DeadlineExceededException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for the response", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SecurityException) throw (SecurityException) cause;
+			if (cause instanceof RemoteException) throw (RemoteException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RemoteException(cause.getMessage(), cause);
+		}
+	}
+
+	/** the waiting callers send their own request */
+	private static final class NotShared extends RuntimeException {
+
+		private static final long serialVersionUID = -6023462861733207411L;
+
+		static final NotShared INSTANCE = new NotShared();
+
+		private NotShared() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * A response received once and read by every caller sharing it
+	 */
+	private static final class Buffered {
+		private final String etag;
+		private final String lastModified;
+		private final byte[] body;
+
+		Buffered(String etag, String lastModified, byte[] body) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.body = body;
+		}
+
+		<T> T replay(ResponseReader<T> reader) throws IOException {
+			if (body == null) return reader.notModified();
+			reader.validators(etag, lastModified);
+			return reader.read(new ByteArrayInputStream(body));
+		}
+	}
+
+	/**
+	 * Reader of the caller sending the shared request: it publishes the body
+	 * to the waiting callers if it fits in the buffer, and reads it with the
+	 * caller's reader
+	 */
+	private static final class SharingReader<T> implements ResponseReader<T> {
+		private final ResponseReader<T> reader;
+		private final CompletableFuture<Buffered> call;
+		private final int maxBuffered;
+		private String etag;
+		private String lastModified;
+
+		SharingReader(ResponseReader<T> reader, CompletableFuture<Buffered> call, int maxBuffered) {
+			this.reader = reader;
+			this.call = call;
+			this.maxBuffered = maxBuffered;
+		}
+
+		@Override
+		public void validators(String etag, String lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			reader.validators(etag, lastModified);
+		}
+
+		@Override
+		public T read(InputStream content) throws IOException {
+			byte[] buffer = new byte[Math.min(maxBuffered + 1, 8192)];
+			int length = 0;
+			int n;
+			while ((n = content.read(buffer, length, buffer.length - length)) != -1) {
+				length += n;
+				if (length > maxBuffered) {
+					// too large to be shared: streamed to this caller only
+					call.completeExceptionally(NotShared.INSTANCE);
+					return reader.read(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), content));
+				}
+				if (length == buffer.length) buffer = Arrays.copyOf(buffer, Math.min(maxBuffered + 1, length * 2));
+			}
+			byte[] body = Arrays.copyOf(buffer, length);
+			call.complete(new Buffered(etag, lastModified, body));
+			return reader.read(new ByteArrayInputStream(body));
+		}
+
+		@Override
+		public T notModified() throws IOException {
+			call.complete(new Buffered(null, null, null));
+			return reader.notModified();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overall time limit of the calls made by the current thread. A deadline
+ * covers everything done within its scope, including the retries, the
+ * concurrent requests of the chunked lookups and the reading of the paged
+ * responses: the requests still running when it expires are aborted and fail
+ * with a {@link DeadlineExceededException}.
+ * 
+ * <pre>
+ * try (Deadline deadline = Deadline.after(2000)) {
+ * 	profiles = service.getBasicProfilesByUserId(ids, token);
+ * }
+ * </pre>
+ * 
+ * Nested scopes cannot extend the deadline of the enclosing one.
+ *
+ */
+public final class Deadline implements Closeable {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private final long expiration;
+	private final Deadline previous;
+
+	private Deadline(long expiration, Deadline previous) {
+		this.expiration = expiration;
+		this.previous = previous;
+	}
+
+	/**
+	 * Start a deadline scope on the current thread
+	 * 
+	 * @param timeout
+	 *            time available to the calls, in milliseconds
+	 * @return the scope, to be closed when the calls are done
+	 */
+	public static Deadline after(long timeout) {
+		Deadline current = CURRENT.get();
+		long expiration = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		if (current != null && current.expiration - expiration < 0) {
+			expiration = current.expiration;
+		}
+		Deadline deadline = new Deadline(expiration, current);
+		CURRENT.set(deadline);
+		return deadline;
+	}
+
+	/**
+	 * @return the deadline of the current thread, null if none
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @param delay
+	 *            a delay in milliseconds
+	 * @return true if the deadline of the current thread, if any, does not
+	 *         expire within the delay
+	 */
+	public static boolean allows(long delay) {
+		Deadline current = CURRENT.get();
+		return current == null || current.remaining() > delay;
+	}
+
+	/**
+	 * @param task
+	 *            a task to be executed by another thread
+	 * @return the task executed within the deadline of the current thread,
+	 *         the task itself if there is none
+	 */
+	public static <V> Callable<V> bind(final Callable<V> task) {
+		final Deadline current = CURRENT.get();
+		if (current == null) return task;
+		return new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				Deadline outer = CURRENT.get();
+				CURRENT.set(new Deadline(current.expiration, outer));
+				try {
+					return task.call();
+				} finally {
+					restore(outer);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param task
+	 *            a task to be executed by another thread
+	 * @return the task executed within the deadline of the current thread,
+	 *         the task itself if there is none
+	 */
+	public static Runnable bind(final Runnable task) {
+		final Deadline current = CURRENT.get();
+		if (current == null) return task;
+		return new Runnable() {
+			@Override
+			public void run() {
+				Deadline outer = CURRENT.get();
+				CURRENT.set(new Deadline(current.expiration, outer));
+				try {
+					task.run();
+				} finally {
+					restore(outer);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return the time left, in milliseconds, 0 if expired
+	 */
+	public long remaining() {
+		long nanos = expiration - System.nanoTime();
+		return nanos <= 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	public boolean isExpired() {
+		return expiration - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @param timeout
+	 *            a timeout in milliseconds, 0 or negative for none
+	 * @return the timeout shortened to the time left
+	 */
+	int limit(int timeout) {
+		long remaining = remaining();
+		return timeout > 0 && timeout < remaining ? timeout : (int) Math.min(remaining, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param task
+	 *            the task to execute when the deadline expires, e.g. the abort
+	 *            of a request
+	 * @return the scheduled task, to be cancelled when the request completes
+	 */
+	ScheduledFuture<?> onExpiration(Runnable task) {
+		return Timer.INSTANCE.schedule(task, expiration - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Close the scope, restoring the deadline of the enclosing one
+	 */
+	@Override
+	public void close() {
+		if (CURRENT.get() == this) restore(previous);
+	}
+
+	/** lazily started timer, without locks on the request path */
+	private static class Timer {
+
+		static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "profileservice-deadline");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		static {
+			// requests normally complete before their deadline
+			INSTANCE.setRemoveOnCancelPolicy(true);
+		}
+	}
+
+	private static void restore(Deadline deadline) {
+		if (deadline == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(deadline);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Conversion of {@link ProfileRequest} to HttpClient requests
+ *
+ */
+class HttpRequests {
+
+	static final String DEFAULT_CHARSET = "UTF-8";
+
+	private HttpRequests() {
+	}
+
+	/**
+	 * @param request
+	 * @param compressionThreshold
+	 *            minimum length of a body sent gzip-compressed, negative to
+	 *            never compress the body. A body given as content, of unknown
+	 *            length, is always compressed if not negative
+	 */
+	static HttpRequestBase create(ProfileRequest request, int compressionThreshold) {
+		HttpRequestBase httpRequest;
+		switch (request.getMethod()) {
+		case POST:
+			httpRequest = new HttpPost(request.getURI());
+			break;
+		case PUT:
+			httpRequest = new HttpPut(request.getURI());
+			break;
+		case DELETE:
+			httpRequest = new HttpDelete(request.getURI());
+			break;
+		default:
+			httpRequest = new HttpGet(request.getURI());
+		}
+		httpRequest.setHeader("Accept", "application/json");
+		httpRequest.setHeader("Authorization", "Bearer " + request.getToken());
+		if (request.getIfNoneMatch() != null) httpRequest.setHeader("If-None-Match", request.getIfNoneMatch());
+		if (request.getIfModifiedSince() != null) {
+			httpRequest.setHeader("If-Modified-Since", request.getIfModifiedSince());
+		}
+		if (request.hasBody() && httpRequest instanceof HttpEntityEnclosingRequestBase) {
+			HttpEntity entity;
+			boolean large;
+			if (request.getContent() != null) {
+				// the length of a content is not known before it is sent
+				entity = new JsonContentEntity(request);
+				large = true;
+			} else {
+				entity = new StringEntity(request.getBody(), ContentType.APPLICATION_JSON);
+				large = request.getBody().length() >= compressionThreshold;
+			}
+			if (compressionThreshold >= 0 && large) {
+				// compressed while sent, with chunked transfer encoding
+				entity = new GzipCompressingEntity(entity);
+			}
+			((HttpEntityEnclosingRequestBase) httpRequest).setEntity(entity);
+		}
+		return httpRequest;
+	}
+
+	/**
+	 * @return the configuration with the timeouts shortened to the time left
+	 *         before the deadline
+	 */
+	static RequestConfig limit(RequestConfig config, Deadline deadline) {
+		return RequestConfig.copy(config)
+				.setConnectTimeout(deadline.limit(config.getConnectTimeout()))
+				.setSocketTimeout(deadline.limit(config.getSocketTimeout()))
+				.setConnectionRequestTimeout(deadline.limit(config.getConnectionRequestTimeout()))
+				.build();
+	}
+
+	/**
+	 * @return the entity decoding its content, if compressed
+	 */
+	static HttpEntity decompress(HttpEntity entity) {
+		Header encoding = entity == null ? null : entity.getContentEncoding();
+		if (encoding == null) return entity;
+		String value = encoding.getValue().trim();
+		if (value.equalsIgnoreCase("gzip") || value.equalsIgnoreCase("x-gzip")) {
+			return new GzipDecompressingEntity(entity);
+		}
+		if (value.equalsIgnoreCase("deflate")) return new DeflateDecompressingEntity(entity);
+		return entity;
+	}
+
+	static String toString(InputStream content) throws IOException {
+		Reader reader = new InputStreamReader(content, DEFAULT_CHARSET);
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[4096];
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, n);
+		}
+		return sb.toString();
+	}
+}
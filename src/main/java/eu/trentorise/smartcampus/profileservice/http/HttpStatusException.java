@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * Error response of the profile server
+ *
+ */
+public class HttpStatusException extends RemoteException {
+
+	private static final long serialVersionUID = 4475093620424155368L;
+
+	private final int status;
+
+	public HttpStatusException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	/**
+	 * @return the HTTP status code of the response
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+}
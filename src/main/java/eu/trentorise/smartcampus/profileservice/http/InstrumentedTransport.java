@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.metrics.ProfileMetrics;
+
+/**
+ * {@link ProfileTransport} decorator reporting count, latency, status and
+ * payload size of each call to a {@link ProfileMetrics}. The endpoint of a
+ * call is its method and path template, where the ids of the path are
+ * replaced by placeholders (e.g. <code>GET basicprofile/all/{id}</code>).
+ *
+ */
+public class InstrumentedTransport implements ProfileTransport {
+
+	private final ProfileTransport delegate;
+	private final ProfileMetrics metrics;
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param metrics
+	 *            receiver of the measurements
+	 */
+	public InstrumentedTransport(ProfileTransport delegate, ProfileMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		long start = System.nanoTime();
+		int status = ProfileMetrics.STATUS_NONE;
+		String body = null;
+		try {
+			body = delegate.execute(request);
+			status = 200;
+			return body;
+		} catch (SecurityException e) {
+			status = ProfileMetrics.STATUS_UNAUTHORIZED;
+			throw e;
+		} catch (HttpStatusException e) {
+			status = e.getStatus();
+			throw e;
+		} finally {
+			metrics.recordCall(endpoint(request), status, System.nanoTime() - start, requestLength(request),
+					utf8Length(body));
+		}
+	}
+
+	@Override
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		long start = System.nanoTime();
+		int status = ProfileMetrics.STATUS_NONE;
+		CountingReader<T> counting = new CountingReader<T>(reader);
+		try {
+			T result = delegate.execute(request, counting);
+			status = 200;
+			return result;
+		} catch (SecurityException e) {
+			status = ProfileMetrics.STATUS_UNAUTHORIZED;
+			throw e;
+		} catch (HttpStatusException e) {
+			status = e.getStatus();
+			throw e;
+		} finally {
+			metrics.recordCall(endpoint(request), status, System.nanoTime() - start, requestLength(request),
+					counting.bytes);
+		}
+	}
+
+	/**
+	 * @param request
+	 * @return the method and the path template of the request
+	 */
+	public static String endpoint(ProfileRequest request) {
+		String path = request.getPath();
+		int query = path.indexOf('?');
+		if (query >= 0) path = path.substring(0, query);
+		String[] segments = path.split("/");
+
+		StringBuilder endpoint = new StringBuilder(path.length() + 8).append(request.getMethod()).append(' ');
+		int position = 0;
+		for (String segment : segments) {
+			if (segment.isEmpty()) continue;
+			if (position > 0) endpoint.append('/');
+			if (position < 2) {
+				// resource and operation, e.g. extprofile/app
+				endpoint.append(segment);
+			} else if ("app".equals(segments[1])) {
+				endpoint.append(position == 2 ? "{user}" : "{profile}");
+			} else if ("extprofile".equals(segments[0])) {
+				endpoint.append("{profile}");
+			} else {
+				endpoint.append("{id}");
+			}
+			position++;
+		}
+		return endpoint.toString();
+	}
+
+	/**
+	 * @return the bytes of the request body, without serializing a content
+	 *         again
+	 */
+	private static long requestLength(ProfileRequest request) {
+		return request.getContent() != null ? request.getContentLength() : utf8Length(request.getBody());
+	}
+
+	/**
+	 * @return the number of bytes of the string encoded in UTF-8, without
+	 *         encoding it
+	 */
+	static long utf8Length(String s) {
+		if (s == null) return 0;
+		long length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static class CountingReader<T> implements ResponseReader<T> {
+
+		private final ResponseReader<T> reader;
+		private long bytes;
+
+		CountingReader(ResponseReader<T> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public T read(InputStream content) throws IOException {
+			return reader.read(new FilterInputStream(content) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b >= 0) bytes++;
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int n = super.read(b, off, len);
+					if (n > 0) bytes += n;
+					return n;
+				}
+
+				@Override
+				public long skip(long n) throws IOException {
+					long skipped = super.skip(n);
+					bytes += skipped;
+					return skipped;
+				}
+			});
+		}
+
+		@Override
+		public void validators(String etag, String lastModified) {
+			reader.validators(etag, lastModified);
+		}
+
+		@Override
+		public T notModified() throws IOException {
+			return reader.notModified();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Entity of a request whose body is given as content: the content is
+ * serialized directly to the connection while the request is sent, with
+ * chunked transfer encoding since its length is not known in advance
+ *
+ */
+class JsonContentEntity extends AbstractHttpEntity {
+
+	private final ProfileRequest request;
+
+	JsonContentEntity(ProfileRequest request) {
+		this.request = request;
+		setContentType(ContentType.APPLICATION_JSON.toString());
+		setChunked(true);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * Used by the clients not writing the entity to the connection: the
+	 * content is serialized in memory
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		request.writeBody(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		request.writeBody(out);
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
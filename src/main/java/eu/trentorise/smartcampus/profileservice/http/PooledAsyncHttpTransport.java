@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * {@link AsyncProfileTransport} based on non-blocking I/O: a few reactor
+ * threads serve all the pending requests over a pool of persistent
+ * connections, no thread waits for the server responses.
+ * <p>
+ * A request started within a {@link Deadline} scope completes with a
+ * {@link DeadlineExceededException} if no response is received in time.
+ * <p>
+ * As for {@link PooledHttpTransport}, compressed responses are requested by
+ * default and the compression of the request bodies is optional.
+ * <p>
+ * The responses are decoded, and the futures completed, on the response
+ * executor, so that the reactor threads only move bytes.
+ *
+ */
+public class PooledAsyncHttpTransport implements AsyncProfileTransport, Closeable {
+
+	private static PooledAsyncHttpTransport defaultTransport;
+
+	private final CloseableHttpAsyncClient client;
+	private final RequestConfig requestConfig;
+	private final boolean compression;
+	private final int requestCompression;
+	private final Executor responseExecutor;
+
+	private PooledAsyncHttpTransport(Builder builder) {
+		IOReactorConfig config = IOReactorConfig.custom()
+				.setIoThreadCount(builder.ioThreads)
+				.build();
+		PoolingNHttpClientConnectionManager connectionManager;
+		try {
+			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(config));
+		} catch (IOReactorException e) {
+			throw new IllegalStateException(e);
+		}
+		connectionManager.setMaxTotal(builder.maxTotal);
+		connectionManager.setDefaultMaxPerRoute(builder.maxPerRoute);
+
+		compression = builder.compression;
+		requestCompression = builder.requestCompression;
+		responseExecutor = builder.responseExecutor != null ? builder.responseExecutor : ForkJoinPool.commonPool();
+
+		requestConfig = RequestConfig.custom()
+				.setConnectTimeout(builder.connectTimeout)
+				.setSocketTimeout(builder.socketTimeout)
+				.setConnectionRequestTimeout(builder.connectionRequestTimeout)
+				.build();
+
+		client = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.disableConnectionState()
+				.build();
+		client.start();
+	}
+
+	/**
+	 * @return the transport shared by the asynchronous service clients that
+	 *         have been created without an explicit transport
+	 */
+	public static synchronized PooledAsyncHttpTransport getDefault() {
+		if (defaultTransport == null) {
+			defaultTransport = builder().build();
+		}
+		return defaultTransport;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public CompletableFuture<String> execute(ProfileRequest request) {
+		final CompletableFuture<String> result = new CompletableFuture<String>();
+		Deadline deadline = Deadline.current();
+		if (deadline != null && deadline.isExpired()) {
+			result.completeExceptionally(new DeadlineExceededException());
+			return result;
+		}
+		final HttpRequestBase httpRequest = HttpRequests.create(request, requestCompression);
+		// the asynchronous client does not negotiate the compression itself
+		if (compression) httpRequest.setHeader("Accept-Encoding", "gzip,deflate");
+		if (deadline != null) {
+			httpRequest.setConfig(HttpRequests.limit(requestConfig, deadline));
+			final ScheduledFuture<?> expiration = deadline.onExpiration(() -> {
+				if (result.completeExceptionally(new DeadlineExceededException())) httpRequest.abort();
+			});
+			result.whenComplete((body, error) -> expiration.cancel(false));
+		}
+		client.execute(httpRequest, new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(final HttpResponse response) {
+				if (result.isDone()) return;
+				try {
+					// leave the reactor thread before decoding the response
+					responseExecutor.execute(() -> complete(response));
+				} catch (RejectedExecutionException e) {
+					failed(e);
+				}
+			}
+
+			private void complete(HttpResponse response) {
+				try {
+					int status = response.getStatusLine().getStatusCode();
+					HttpEntity entity = HttpRequests.decompress(response.getEntity());
+					// the response content is already in memory
+					String body = entity == null ? null : EntityUtils.toString(entity, HttpRequests.DEFAULT_CHARSET);
+					if (status == HttpStatus.SC_OK) {
+						result.complete(body);
+					} else if (status == HttpStatus.SC_UNAUTHORIZED || status == HttpStatus.SC_FORBIDDEN) {
+						result.completeExceptionally(new SecurityException());
+					} else {
+						result.completeExceptionally(new HttpStatusException(status, response.getStatusLine().toString()));
+					}
+				} catch (IOException e) {
+					failed(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception e) {
+				result.completeExceptionally(new RemoteException(e.getMessage(), e));
+			}
+
+			@Override
+			public void cancelled() {
+				result.cancel(false);
+			}
+		});
+		// cancelling the future aborts the exchange
+		result.whenComplete((body, error) -> {
+			if (result.isCancelled()) httpRequest.abort();
+		});
+		return result;
+	}
+
+	/**
+	 * Stop the I/O reactor and close all the pooled connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+
+	/**
+	 * Configuration of a {@link PooledAsyncHttpTransport}
+	 */
+	public static class Builder {
+
+		private int maxTotal = 50;
+		private int maxPerRoute = 20;
+		private int ioThreads = Runtime.getRuntime().availableProcessors();
+		private int connectTimeout = 5000;
+		private int socketTimeout = 30000;
+		private int connectionRequestTimeout = 5000;
+		private boolean compression = true;
+		private int requestCompression = -1;
+		private Executor responseExecutor;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param responseExecutor
+		 *            executor decoding the responses and completing the
+		 *            futures (default: the common fork-join pool)
+		 */
+		public Builder responseExecutor(Executor responseExecutor) {
+			this.responseExecutor = responseExecutor;
+			return this;
+		}
+
+		/**
+		 * @param compression
+		 *            request gzip or deflate compressed responses (default
+		 *            true)
+		 */
+		public Builder compression(boolean compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * @param minBodyLength
+		 *            send gzip-compressed the request bodies of at least this
+		 *            length (in characters), negative to never compress them
+		 *            (default). The server must accept compressed bodies.
+		 */
+		public Builder requestCompression(int minBodyLength) {
+			this.requestCompression = minBodyLength;
+			return this;
+		}
+
+		/**
+		 * @param connectTimeout
+		 *            time (in milliseconds) to establish a connection, 0 for
+		 *            no limit (default 5 seconds)
+		 */
+		public Builder connectTimeout(int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		/**
+		 * @param socketTimeout
+		 *            maximum inactivity (in milliseconds) while waiting for
+		 *            the response data, 0 for no limit (default 30 seconds)
+		 */
+		public Builder socketTimeout(int socketTimeout) {
+			this.socketTimeout = socketTimeout;
+			return this;
+		}
+
+		/**
+		 * @param connectionRequestTimeout
+		 *            time (in milliseconds) to obtain a connection from the
+		 *            pool, 0 for no limit (default 5 seconds)
+		 */
+		public Builder connectionRequestTimeout(int connectionRequestTimeout) {
+			this.connectionRequestTimeout = connectionRequestTimeout;
+			return this;
+		}
+
+		/**
+		 * @param maxTotal
+		 *            maximum number of open connections (default 50)
+		 */
+		public Builder maxTotal(int maxTotal) {
+			this.maxTotal = maxTotal;
+			return this;
+		}
+
+		/**
+		 * @param maxPerRoute
+		 *            maximum number of open connections to a single host
+		 *            (default 20)
+		 */
+		public Builder maxPerRoute(int maxPerRoute) {
+			this.maxPerRoute = maxPerRoute;
+			return this;
+		}
+
+		/**
+		 * @param ioThreads
+		 *            number of I/O reactor threads (default: number of
+		 *            processors)
+		 */
+		public Builder ioThreads(int ioThreads) {
+			this.ioThreads = ioThreads;
+			return this;
+		}
+
+		public PooledAsyncHttpTransport build() {
+			return new PooledAsyncHttpTransport(this);
+		}
+	}
+}
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * {@link ProfileTransport} backed by a pool of persistent HTTP connections.
+ * <p>
+ * Connections (and the TLS sessions negotiated on them) are kept alive and
+ * reused across calls, idle connections are evicted by a background thread.
+ * Instances are thread safe and meant to be shared: the service clients
+ * created without an explicit transport use {@link #getDefault()}.
+ * <p>
+ * The connect, socket and connection request timeouts of the builder apply
+ * to every request; within a {@link Deadline} scope they are shortened to
+ * the time left, and the request is aborted when the deadline expires.
+ * <p>
+ * Compressed responses (gzip or deflate) are requested by default and are
+ * decompressed while they are parsed. Compression of the request bodies is
+ * optional (see {@link Builder#requestCompression(int)}), as the server must
+ * accept compressed content.
+ *
+ */
+public class PooledHttpTransport implements ProfileTransport, Closeable {
+
+	private static final ResponseReader<String> STRING_READER = new ResponseReader<String>() {
+		public String read(InputStream content) throws IOException {
+			return HttpRequests.toString(content);
+		}
+	};
+
+	private static PooledHttpTransport defaultTransport;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+	private final RequestConfig requestConfig;
+	private final int requestCompression;
+
+	private PooledHttpTransport(Builder builder) {
+		SSLContext sslContext = SSLContexts.createDefault();
+		// sessions are cached per host:port, so new connections to the same
+		// server resume the TLS session with an abbreviated handshake
+		sslContext.getClientSessionContext().setSessionCacheSize(builder.tlsSessionCacheSize);
+		sslContext.getClientSessionContext().setSessionTimeout(builder.tlsSessionTimeout);
+
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", new SSLConnectionSocketFactory(sslContext))
+				.build();
+
+		connectionManager = new PoolingHttpClientConnectionManager(registry,
+				null, null, null, builder.connectionTimeToLive, TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(builder.maxTotal);
+		connectionManager.setDefaultMaxPerRoute(builder.maxPerRoute);
+		connectionManager.setValidateAfterInactivity(builder.validateAfterInactivity);
+
+		requestConfig = RequestConfig.custom()
+				.setConnectTimeout(builder.connectTimeout)
+				.setSocketTimeout(builder.socketTimeout)
+				.setConnectionRequestTimeout(builder.connectionRequestTimeout)
+				.build();
+
+		requestCompression = builder.requestCompression;
+
+		final long keepAlive = builder.keepAlive;
+		HttpClientBuilder clientBuilder = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				// connections are not bound to the caller: any thread and any
+				// token may reuse a pooled connection
+				.disableConnectionState()
+				// retries are left to RetryingTransport, within the retry
+				// budget of its policy
+				.disableAutomaticRetries()
+				.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+					public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+						long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+						return duration > 0 ? duration : keepAlive;
+					}
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(builder.maxIdleTime, TimeUnit.MILLISECONDS);
+		// the client sends Accept-Encoding and decodes the response stream
+		// unless disabled
+		if (!builder.compression) clientBuilder.disableContentCompression();
+		client = clientBuilder.build();
+	}
+
+	/**
+	 * @return the transport shared by the service clients that have been
+	 *         created without an explicit transport
+	 */
+	public static synchronized PooledHttpTransport getDefault() {
+		if (defaultTransport == null) {
+			defaultTransport = builder().build();
+		}
+		return defaultTransport;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		return execute(request, STRING_READER);
+	}
+
+	/**
+	 * The reader consumes the body while it is received from the connection.
+	 * The 304 response of a conditional request is delivered to
+	 * {@link ResponseReader#notModified()}.
+	 */
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		Deadline deadline = Deadline.current();
+		if (deadline != null && deadline.isExpired()) throw new DeadlineExceededException();
+
+		final HttpRequestBase httpRequest = HttpRequests.create(request, requestCompression);
+		ScheduledFuture<?> expiration = null;
+		if (deadline != null) {
+			httpRequest.setConfig(HttpRequests.limit(requestConfig, deadline));
+			expiration = deadline.onExpiration(httpRequest::abort);
+		}
+		CloseableHttpResponse response = null;
+		try {
+			response = client.execute(httpRequest);
+			int status = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			if (status == HttpStatus.SC_NOT_MODIFIED && request.isConditional()) {
+				EntityUtils.consume(entity);
+				return reader.notModified();
+			}
+			if (status != HttpStatus.SC_OK) {
+				EntityUtils.consume(entity);
+				if (status == HttpStatus.SC_UNAUTHORIZED || status == HttpStatus.SC_FORBIDDEN) {
+					throw new SecurityException();
+				}
+				throw new HttpStatusException(status, response.getStatusLine().toString());
+			}
+			reader.validators(header(response, "ETag"), header(response, "Last-Modified"));
+			InputStream content = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+			T result;
+			try {
+				result = reader.read(content);
+			} catch (RuntimeException e) {
+				httpRequest.abort();
+				throw e;
+			}
+			// reading the entity to the end releases the connection to the pool
+			EntityUtils.consume(entity);
+			return result;
+		} catch (IOException e) {
+			httpRequest.abort();
+			if (deadline != null && deadline.isExpired()) throw new DeadlineExceededException(e);
+			throw new RemoteException(e.getMessage(), e);
+		} finally {
+			if (expiration != null) expiration.cancel(false);
+			if (response != null) {
+				try {
+					response.close();
+				} catch (IOException e) {
+					// connection already discarded
+				}
+			}
+		}
+	}
+
+	private static String header(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	/**
+	 * Shut down the idle connection evictor and close all the pooled
+	 * connections.
+	 */
+	public void close() throws IOException {
+		client.close();
+	}
+
+	/**
+	 * Configuration of a {@link PooledHttpTransport}
+	 */
+	public static class Builder {
+
+		private int maxTotal = 50;
+		private int maxPerRoute = 20;
+		private long maxIdleTime = 30000;
+		private long keepAlive = 60000;
+		private long connectionTimeToLive = -1;
+		private int validateAfterInactivity = 2000;
+		private int tlsSessionCacheSize = 100;
+		private int tlsSessionTimeout = 3600;
+		private int connectTimeout = 5000;
+		private int socketTimeout = 30000;
+		private int connectionRequestTimeout = 5000;
+		private boolean compression = true;
+		private int requestCompression = -1;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param compression
+		 *            request gzip or deflate compressed responses (default
+		 *            true)
+		 */
+		public Builder compression(boolean compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * @param minBodyLength
+		 *            send gzip-compressed the request bodies of at least this
+		 *            length (in characters), negative to never compress them
+		 *            (default). The server must accept compressed bodies.
+		 */
+		public Builder requestCompression(int minBodyLength) {
+			this.requestCompression = minBodyLength;
+			return this;
+		}
+
+		/**
+		 * @param connectTimeout
+		 *            time (in milliseconds) to establish a connection, 0 for
+		 *            no limit (default 5 seconds)
+		 */
+		public Builder connectTimeout(int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		/**
+		 * @param socketTimeout
+		 *            maximum inactivity (in milliseconds) while waiting for
+		 *            the response data, 0 for no limit (default 30 seconds)
+		 */
+		public Builder socketTimeout(int socketTimeout) {
+			this.socketTimeout = socketTimeout;
+			return this;
+		}
+
+		/**
+		 * @param connectionRequestTimeout
+		 *            time (in milliseconds) to obtain a connection from the
+		 *            pool, 0 for no limit (default 5 seconds)
+		 */
+		public Builder connectionRequestTimeout(int connectionRequestTimeout) {
+			this.connectionRequestTimeout = connectionRequestTimeout;
+			return this;
+		}
+
+		/**
+		 * @param maxTotal
+		 *            maximum number of open connections (default 50)
+		 */
+		public Builder maxTotal(int maxTotal) {
+			this.maxTotal = maxTotal;
+			return this;
+		}
+
+		/**
+		 * @param maxPerRoute
+		 *            maximum number of open connections to a single host
+		 *            (default 20)
+		 */
+		public Builder maxPerRoute(int maxPerRoute) {
+			this.maxPerRoute = maxPerRoute;
+			return this;
+		}
+
+		/**
+		 * @param maxIdleTime
+		 *            idle connections older than this (in milliseconds) are
+		 *            evicted from the pool (default 30 seconds)
+		 */
+		public Builder maxIdleTime(long maxIdleTime) {
+			this.maxIdleTime = maxIdleTime;
+			return this;
+		}
+
+		/**
+		 * @param keepAlive
+		 *            how long (in milliseconds) a connection is kept when the
+		 *            server does not send a Keep-Alive header (default 60
+		 *            seconds)
+		 */
+		public Builder keepAlive(long keepAlive) {
+			this.keepAlive = keepAlive;
+			return this;
+		}
+
+		/**
+		 * @param connectionTimeToLive
+		 *            maximum lifetime (in milliseconds) of a connection,
+		 *            negative for no limit (default)
+		 */
+		public Builder connectionTimeToLive(long connectionTimeToLive) {
+			this.connectionTimeToLive = connectionTimeToLive;
+			return this;
+		}
+
+		/**
+		 * @param validateAfterInactivity
+		 *            connections idle for longer than this (in milliseconds)
+		 *            are checked before being reused (default 2 seconds)
+		 */
+		public Builder validateAfterInactivity(int validateAfterInactivity) {
+			this.validateAfterInactivity = validateAfterInactivity;
+			return this;
+		}
+
+		/**
+		 * @param tlsSessionCacheSize
+		 *            number of TLS sessions cached for resumption (default
+		 *            100)
+		 */
+		public Builder tlsSessionCacheSize(int tlsSessionCacheSize) {
+			this.tlsSessionCacheSize = tlsSessionCacheSize;
+			return this;
+		}
+
+		/**
+		 * @param tlsSessionTimeout
+		 *            lifetime (in seconds) of a cached TLS session (default 1
+		 *            hour)
+		 */
+		public Builder tlsSessionTimeout(int tlsSessionTimeout) {
+			this.tlsSessionTimeout = tlsSessionTimeout;
+			return this;
+		}
+
+		public PooledHttpTransport build() {
+			return new PooledHttpTransport(this);
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Map;
+
+import eu.trentorise.smartcampus.profileservice.json.ProfileJsonWriter;
+
+/**
+ * A single call to the profile service, as seen by a {@link ProfileTransport}
+ *
+ */
+public class ProfileRequest {
+
+	/**
+	 * HTTP method of the request
+	 */
+	public enum Method {
+		GET, POST, PUT, DELETE
+	}
+
+	private final Method method;
+	private final String host;
+	private final String path;
+	private final String token;
+	private final Map<String, Object> parameters;
+	private final String body;
+	/** body to be serialized while sent, instead of <code>body</code> */
+	private final Object content;
+	private final String ifNoneMatch;
+	private final String ifModifiedSince;
+
+	/** bytes of the content written by the last {@link #writeBody(OutputStream)} */
+	private volatile long contentLength;
+
+	private ProfileRequest(Method method, String host, String path,
+			String token, Map<String, Object> parameters, String body) {
+		this(method, host, path, token, parameters, body, null, null, null);
+	}
+
+	private ProfileRequest(Method method, String host, String path, String token, Map<String, Object> parameters,
+			String body, Object content, String ifNoneMatch, String ifModifiedSince) {
+		this.method = method;
+		this.host = host;
+		this.path = path;
+		this.token = token;
+		this.parameters = parameters;
+		this.body = body;
+		this.content = content;
+		this.ifNoneMatch = ifNoneMatch;
+		this.ifModifiedSince = ifModifiedSince;
+	}
+
+	public static ProfileRequest get(String host, String path, String token) {
+		return new ProfileRequest(Method.GET, host, path, token, null, null);
+	}
+
+	public static ProfileRequest get(String host, String path, String token,
+			Map<String, Object> parameters) {
+		return new ProfileRequest(Method.GET, host, path, token, parameters, null);
+	}
+
+	public static ProfileRequest post(String host, String path, String body, String token) {
+		return new ProfileRequest(Method.POST, host, path, token, null, body);
+	}
+
+	public static ProfileRequest put(String host, String path, String body, String token) {
+		return new ProfileRequest(Method.PUT, host, path, token, null, body);
+	}
+
+	/**
+	 * @param content
+	 *            body of the request, serialized as JSON directly to the
+	 *            connection (see {@link ProfileJsonWriter}); it must not be
+	 *            modified until the call completes
+	 */
+	public static ProfileRequest postJson(String host, String path, Object content, String token) {
+		return new ProfileRequest(Method.POST, host, path, token, null, content == null ? "null" : null, content,
+				null, null);
+	}
+
+	/**
+	 * @param content
+	 *            body of the request, serialized as JSON directly to the
+	 *            connection (see {@link ProfileJsonWriter}); it must not be
+	 *            modified until the call completes
+	 */
+	public static ProfileRequest putJson(String host, String path, Object content, String token) {
+		return new ProfileRequest(Method.PUT, host, path, token, null, content == null ? "null" : null, content,
+				null, null);
+	}
+
+	public static ProfileRequest delete(String host, String path, String token) {
+		return new ProfileRequest(Method.DELETE, host, path, token, null, null);
+	}
+
+	/**
+	 * @param etag
+	 *            entity tag of the content already read, may be null
+	 * @param lastModified
+	 *            Last-Modified date of the content already read, may be null
+	 * @return a copy of this request answered with a 304 status, without
+	 *         body, if the content has not changed
+	 */
+	public ProfileRequest conditional(String etag, String lastModified) {
+		return new ProfileRequest(method, host, path, token, parameters, body, content, etag, lastModified);
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return the body of the request, null if none. A body given as content
+	 *         is serialized at each call: transports should use
+	 *         {@link #writeBody(OutputStream)}
+	 */
+	public String getBody() {
+		return body != null || content == null ? body : ProfileJsonWriter.toString(content);
+	}
+
+	/**
+	 * @return the body to be serialized while sent, null if the body is
+	 *         given as a string
+	 */
+	public Object getContent() {
+		return content;
+	}
+
+	/**
+	 * @return true if the request has a body
+	 */
+	public boolean hasBody() {
+		return body != null || content != null;
+	}
+
+	/**
+	 * Write the body of the request as UTF-8
+	 * 
+	 * @param out
+	 *            stream receiving the body, not closed
+	 * @throws IOException
+	 */
+	public void writeBody(OutputStream out) throws IOException {
+		if (content == null) {
+			if (body != null) out.write(body.getBytes("UTF-8"));
+			return;
+		}
+		CountingOutputStream counting = new CountingOutputStream(out);
+		ProfileJsonWriter.write(content, counting);
+		contentLength = counting.count;
+	}
+
+	/**
+	 * @return the bytes of a body given as content, as written by the last
+	 *         {@link #writeBody(OutputStream)}; 0 if not written
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public String getIfNoneMatch() {
+		return ifNoneMatch;
+	}
+
+	public String getIfModifiedSince() {
+		return ifModifiedSince;
+	}
+
+	/**
+	 * @return true if the request carries the validators of a previous
+	 *         response
+	 */
+	public boolean isConditional() {
+		return ifNoneMatch != null || ifModifiedSince != null;
+	}
+
+	/**
+	 * @return the full address of the request, query parameters included.
+	 *         Collection parameters are expanded as repeated parameters.
+	 */
+	public String getURI() {
+		StringBuilder sb = new StringBuilder(host).append(path);
+		if (parameters != null) {
+			char sep = path.indexOf('?') < 0 ? '?' : '&';
+			for (Map.Entry<String, Object> e : parameters.entrySet()) {
+				if (e.getValue() == null) continue;
+				if (e.getValue() instanceof Collection) {
+					for (Object v : (Collection<?>) e.getValue()) {
+						sb.append(sep).append(e.getKey()).append('=').append(encode(v));
+						sep = '&';
+					}
+				} else {
+					sb.append(sep).append(e.getKey()).append('=').append(encode(e.getValue()));
+					sep = '&';
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String encode(Object value) {
+		try {
+			return URLEncoder.encode(String.valueOf(value), "utf8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + host + path;
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
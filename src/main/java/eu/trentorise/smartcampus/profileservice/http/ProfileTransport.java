@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * Transport used by the profile service clients to exchange JSON with the
+ * remote server. The default implementation is {@link PooledHttpTransport}.
+ *
+ */
+public interface ProfileTransport {
+
+	/**
+	 * Execute the request and return the response body
+	 *
+	 * @param request
+	 *            the request to execute
+	 * @return the response body
+	 * @throws SecurityException
+	 *             if the server rejects the access token
+	 * @throws RemoteException
+	 *             if the call fails or the server responds with an error.
+	 *             Error responses are reported as {@link HttpStatusException}
+	 */
+	String execute(ProfileRequest request) throws SecurityException, RemoteException;
+
+	/**
+	 * Execute the request and pass the response body to the reader. The
+	 * default implementation buffers the whole body: transports able to
+	 * stream the response override it.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param reader
+	 *            consumer of the response body
+	 * @return the result of the reader
+	 * @throws SecurityException
+	 *             if the server rejects the access token
+	 * @throws RemoteException
+	 *             if the call fails, the server responds with an error or
+	 *             the reader fails to read the body
+	 */
+	default <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		String body = execute(request);
+		try {
+			return reader.read(new ByteArrayInputStream(body == null ? new byte[0] : body.getBytes("UTF-8")));
+		} catch (IOException e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+
+}
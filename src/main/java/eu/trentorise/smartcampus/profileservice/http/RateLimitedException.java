@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * Call refused without contacting the server, since it could not be sent
+ * within the client-side limits in the time it could wait
+ *
+ */
+public class RateLimitedException extends RemoteException {
+
+	private static final long serialVersionUID = 3482710554718003561L;
+
+	private final boolean perToken;
+
+	public RateLimitedException(boolean perToken) {
+		super(perToken ? "Rate limit exceeded for the token" : "Rate limit exceeded");
+		this.perToken = perToken;
+	}
+
+	/**
+	 * @return true if the limit of the access token has been exceeded, false
+	 *         for the limit of the whole client
+	 */
+	public boolean isPerToken() {
+		return perToken;
+	}
+
+}
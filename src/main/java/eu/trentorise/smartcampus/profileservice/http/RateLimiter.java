@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket on the request rate combined with an AIMD limit on the
+ * concurrent requests. A request waiting for the bucket reserves its token,
+ * so that the waiting requests are served in order; a request waiting for
+ * the concurrency limit is woken up when another one completes.
+ * 
+ * The concurrency limit grows by one for each limit's worth of successful
+ * requests, while the limit is in use, and is multiplied by the backoff
+ * ratio when a request is throttled or slow; the requests sent before the
+ * last cut do not cut it again.
+ *
+ */
+public class RateLimiter {
+
+	private final RateLimiterConfig config;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+
+	private double tokens;
+	private long refilled;
+
+	private double limit;
+	private int inFlight;
+	private long lastDecrease;
+
+	public RateLimiter(RateLimiterConfig config) {
+		this.config = config;
+		this.tokens = config.getBurst();
+		this.refilled = System.nanoTime();
+		this.limit = config.getInitialLimit();
+		this.lastDecrease = refilled;
+	}
+
+	/**
+	 * Wait for a token and a concurrency permit. A successful acquisition
+	 * must be followed by {@link #release(long, boolean)} or
+	 * {@link #cancel()}.
+	 * 
+	 * @param timeout
+	 *            maximum wait
+	 * @param unit
+	 * @return true if the request may be sent
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		boolean reserved = false;
+		boolean acquired = false;
+		try {
+			if (config.getRate() > 0) {
+				long wait;
+				lock.lock();
+				try {
+					long now = System.nanoTime();
+					refill(now);
+					wait = tokens >= 1 ? 0 : (long) ((1 - tokens) / config.getRate() * 1e9);
+					if (wait > 0 && wait > end - now) return false;
+					tokens -= 1;
+					reserved = true;
+				} finally {
+					lock.unlock();
+				}
+				if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			if (config.isAdaptive()) {
+				lock.lock();
+				try {
+					long remaining = end - System.nanoTime();
+					while (inFlight >= (int) limit) {
+						if (remaining <= 0) return false;
+						remaining = released.awaitNanos(remaining);
+					}
+					inFlight++;
+				} finally {
+					lock.unlock();
+				}
+			}
+			acquired = true;
+			return true;
+		} finally {
+			// a request not sent gives its token back
+			if (reserved && !acquired) refund();
+		}
+	}
+
+	/**
+	 * Release the permit of a completed request, adapting the concurrency
+	 * limit
+	 * 
+	 * @param start
+	 *            {@link System#nanoTime()} when the request was sent
+	 * @param congestion
+	 *            true if the server throttled the request
+	 */
+	public void release(long start, boolean congestion) {
+		if (!config.isAdaptive()) return;
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			if (congestion || now - start > config.getLatencyThresholdNanos()) {
+				if (start - lastDecrease > 0) {
+					limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+					lastDecrease = now;
+				}
+			} else if (inFlight * 2 >= limit) {
+				limit = Math.min(config.getMaxLimit(), limit + 1 / limit);
+			}
+			inFlight--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Release the permit of a request not sent, giving its token back to the
+	 * bucket
+	 */
+	public void cancel() {
+		if (config.getRate() > 0) refund();
+		if (!config.isAdaptive()) return;
+		lock.lock();
+		try {
+			inFlight--;
+			released.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the current concurrency limit, 0 if not limited
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of requests holding a concurrency permit
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return true if no request is in flight and the bucket is full
+	 */
+	boolean isIdle() {
+		lock.lock();
+		try {
+			if (config.getRate() > 0) refill(System.nanoTime());
+			return inFlight == 0 && tokens >= config.getBurst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void refund() {
+		lock.lock();
+		try {
+			refill(System.nanoTime());
+			tokens = Math.min(config.getBurst(), tokens + 1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void refill(long now) {
+		tokens = Math.min(config.getBurst(), tokens + (now - refilled) * config.getRate() / 1e9);
+		refilled = now;
+	}
+}
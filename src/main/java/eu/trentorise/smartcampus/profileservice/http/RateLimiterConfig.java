@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of the {@link RateLimiter}s of a {@link RateLimitingTransport}: a
+ * token bucket on the request rate and an adaptive (AIMD) limit on the
+ * concurrent requests, either of which may be disabled
+ *
+ */
+public class RateLimiterConfig {
+
+	private final double rate;
+	private final int burst;
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final double backoffRatio;
+	private final long maxWait;
+
+	private RateLimiterConfig(Builder builder) {
+		this.rate = builder.rate;
+		this.burst = builder.burst;
+		this.initialLimit = builder.initialLimit;
+		this.minLimit = builder.minLimit;
+		this.maxLimit = builder.maxLimit;
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(builder.latencyThreshold);
+		this.backoffRatio = builder.backoffRatio;
+		this.maxWait = builder.maxWait;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return requests per second, 0 if the rate is not limited
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * @return true if the concurrent requests are limited
+	 */
+	public boolean isAdaptive() {
+		return maxLimit > 0;
+	}
+
+	public int getInitialLimit() {
+		return initialLimit;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public long getLatencyThresholdNanos() {
+		return latencyThresholdNanos;
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	public static class Builder {
+
+		private double rate;
+		private int burst;
+		private int initialLimit;
+		private int minLimit;
+		private int maxLimit;
+		private long latencyThreshold = 2000;
+		private double backoffRatio = 0.5;
+		private long maxWait = 10000;
+
+		/**
+		 * @param requestsPerSecond
+		 *            average rate of the requests, 0 not to limit it
+		 * @param burst
+		 *            requests that can be sent at once after a quiet period
+		 * @return
+		 */
+		public Builder rate(double requestsPerSecond, int burst) {
+			if (requestsPerSecond < 0) throw new IllegalArgumentException("negative rate");
+			this.rate = requestsPerSecond;
+			this.burst = Math.max(1, burst);
+			return this;
+		}
+
+		/**
+		 * Limit the concurrent requests, raising the limit by one for each
+		 * limit's worth of successful requests and cutting it by the backoff
+		 * ratio when a request is throttled (429 or 503) or slow
+		 * 
+		 * @param initialLimit
+		 *            concurrent requests allowed at the start
+		 * @param minLimit
+		 *            lowest limit
+		 * @param maxLimit
+		 *            highest limit, 0 not to limit the concurrent requests
+		 * @return
+		 */
+		public Builder adaptiveConcurrency(int initialLimit, int minLimit, int maxLimit) {
+			if (maxLimit > 0 && (minLimit < 1 || minLimit > maxLimit)) {
+				throw new IllegalArgumentException("minLimit must be between 1 and maxLimit");
+			}
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.initialLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+			return this;
+		}
+
+		/**
+		 * @param latencyThreshold
+		 *            duration in milliseconds beyond which a request is slow,
+		 *            lowering the concurrency limit
+		 * @return
+		 */
+		public Builder latencyThreshold(long latencyThreshold) {
+			this.latencyThreshold = latencyThreshold;
+			return this;
+		}
+
+		/**
+		 * @param backoffRatio
+		 *            factor applied to the concurrency limit when the server
+		 *            is congested, between 0 and 1
+		 * @return
+		 */
+		public Builder backoffRatio(double backoffRatio) {
+			if (backoffRatio <= 0 || backoffRatio >= 1) {
+				throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+			}
+			this.backoffRatio = backoffRatio;
+			return this;
+		}
+
+		/**
+		 * @param maxWait
+		 *            milliseconds a request may be queued waiting for the
+		 *            limits, within the {@link Deadline} of the caller; 0 to
+		 *            fail immediately
+		 * @return
+		 */
+		public Builder maxWait(long maxWait) {
+			this.maxWait = Math.max(0, maxWait);
+			return this;
+		}
+
+		public RateLimiterConfig build() {
+			return new RateLimiterConfig(this);
+		}
+	}
+}
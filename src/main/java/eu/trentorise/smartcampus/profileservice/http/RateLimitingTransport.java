@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.cache.TokenScopedCache;
+
+/**
+ * {@link ProfileTransport} decorator keeping the requests within the limits
+ * of a {@link RateLimiter} for the whole client and of one for each access
+ * token (compared by digest). A request exceeding a limit waits at most the
+ * <code>maxWait</code> of its configuration, within the {@link Deadline} of
+ * the caller, then fails with a {@link RateLimitedException}.
+ * 
+ * The 429 and 503 responses and the requests slower than the latency
+ * threshold lower the concurrency limits.
+ *
+ */
+public class RateLimitingTransport implements ProfileTransport {
+
+	/** maximum number of token limiters */
+	private static final int MAX_TOKENS = 1000;
+
+	private final ProfileTransport delegate;
+	private final RateLimiter global;
+	private final RateLimiterConfig globalConfig;
+	private final RateLimiterConfig tokenConfig;
+	private final ConcurrentMap<String, RateLimiter> tokens;
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param global
+	 *            limits of all the requests, null for none
+	 * @param perToken
+	 *            limits of the requests of each access token, null for none
+	 */
+	public RateLimitingTransport(ProfileTransport delegate, RateLimiterConfig global, RateLimiterConfig perToken) {
+		this.delegate = delegate;
+		this.global = global == null ? null : new RateLimiter(global);
+		this.globalConfig = global;
+		this.tokenConfig = perToken;
+		this.tokens = new ConcurrentHashMap<String, RateLimiter>();
+	}
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param shared
+	 *            transport whose limits are shared with this one
+	 */
+	public RateLimitingTransport(ProfileTransport delegate, RateLimitingTransport shared) {
+		this.delegate = delegate;
+		this.global = shared.global;
+		this.globalConfig = shared.globalConfig;
+		this.tokenConfig = shared.tokenConfig;
+		this.tokens = shared.tokens;
+	}
+
+	@Override
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		RateLimiter token = tokenLimiter(request);
+		acquire(token);
+		long start = System.nanoTime();
+		boolean congestion = false;
+		try {
+			return delegate.execute(request);
+		} catch (HttpStatusException e) {
+			congestion = isCongestion(e);
+			throw e;
+		} finally {
+			release(token, start, congestion);
+		}
+	}
+
+	@Override
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		RateLimiter token = tokenLimiter(request);
+		acquire(token);
+		long start = System.nanoTime();
+		boolean congestion = false;
+		try {
+			return delegate.execute(request, reader);
+		} catch (HttpStatusException e) {
+			congestion = isCongestion(e);
+			throw e;
+		} finally {
+			release(token, start, congestion);
+		}
+	}
+
+	/**
+	 * @return the limiter of all the requests, null if none
+	 */
+	public RateLimiter getGlobalLimiter() {
+		return global;
+	}
+
+	/**
+	 * @param token
+	 *            an access token
+	 * @return the limiter of the token, null if none
+	 */
+	public RateLimiter getTokenLimiter(String token) {
+		return tokenConfig == null ? null : tokens.get(TokenScopedCache.hash(token));
+	}
+
+	private void acquire(RateLimiter token) throws RemoteException {
+		if (global != null && !tryAcquire(global, globalConfig)) throw new RateLimitedException(false);
+		if (token != null && !tryAcquire(token, tokenConfig)) {
+			if (global != null) global.cancel();
+			throw new RateLimitedException(true);
+		}
+	}
+
+	private void release(RateLimiter token, long start, boolean congestion) {
+		if (token != null) token.release(start, congestion);
+		if (global != null) global.release(start, congestion);
+	}
+
+	private static boolean tryAcquire(RateLimiter limiter, RateLimiterConfig config) throws RemoteException {
+		long wait = config.getMaxWait();
+		Deadline deadline = Deadline.current();
+		if (deadline != null) wait = Math.min(wait, deadline.remaining());
+		try {
+			return limiter.tryAcquire(wait, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for the rate limiter", e);
+		}
+	}
+
+	private RateLimiter tokenLimiter(ProfileRequest request) {
+		if (tokenConfig == null || request.getToken() == null) return null;
+		String key = TokenScopedCache.hash(request.getToken());
+		RateLimiter limiter = tokens.get(key);
+		if (limiter == null) {
+			if (tokens.size() >= MAX_TOKENS) evict();
+			RateLimiter created = new RateLimiter(tokenConfig);
+			limiter = tokens.putIfAbsent(key, created);
+			if (limiter == null) limiter = created;
+		}
+		return limiter;
+	}
+
+	/**
+	 * Discard the idle limiters first, then any, down to three quarters of the
+	 * maximum so that a scan is needed only every so many new tokens
+	 */
+	private void evict() {
+		int target = MAX_TOKENS * 3 / 4;
+		for (Iterator<Map.Entry<String, RateLimiter>> i = tokens.entrySet().iterator(); i.hasNext()
+				&& tokens.size() > target;) {
+			if (i.next().getValue().isIdle()) i.remove();
+		}
+		for (Iterator<String> i = tokens.keySet().iterator(); i.hasNext() && tokens.size() > target;) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/**
+	 * @return the number of token limiters
+	 */
+	int getTokenLimiterCount() {
+		return tokens.size();
+	}
+
+	private static boolean isCongestion(HttpStatusException e) {
+		return e.getStatus() == 429 || e.getStatus() == 503;
+	}
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumer of a successful response body, read while it is received
+ *
+ * @param <T>
+ *            type of the result
+ */
+public interface ResponseReader<T> {
+
+	/**
+	 * @param content
+	 *            the response body, closed by the transport
+	 * @return the result of the call
+	 * @throws IOException
+	 */
+	T read(InputStream content) throws IOException;
+
+	/**
+	 * Receive the validators of a successful response, before its body.
+	 * Ignored by default.
+	 * 
+	 * @param etag
+	 *            the ETag header, null if missing
+	 * @param lastModified
+	 *            the Last-Modified header, null if missing
+	 */
+	default void validators(String etag, String lastModified) {
+	}
+
+	/**
+	 * @return the result of a conditional request whose content has not
+	 *         changed (304 response)
+	 * @throws IOException
+	 *             by default, as only conditional requests receive a 304
+	 *             response
+	 */
+	default T notModified() throws IOException {
+		throw new IOException("Unexpected 304 response");
+	}
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting the retries to a fraction of the requests: each
+ * request deposits <code>ratio</code> tokens, each retry withdraws one. The
+ * bucket holds at most <code>burst</code> tokens, and starts full, so that
+ * the retries after a quiet period are not refused.
+ *
+ */
+public class RetryBudget {
+
+	/** tokens are kept in thousandths */
+	private static final long UNIT = 1000;
+
+	private final long deposit;
+	private final long capacity;
+	private final AtomicLong balance;
+
+	/**
+	 * @param ratio
+	 *            maximum retries per request, e.g. 0.1 for 10%
+	 * @param burst
+	 *            maximum number of retries allowed in excess of the ratio
+	 */
+	public RetryBudget(double ratio, int burst) {
+		if (ratio < 0 || burst < 0) throw new IllegalArgumentException("negative retry budget");
+		this.deposit = (long) (ratio * UNIT);
+		this.capacity = Math.max(burst * UNIT, UNIT);
+		this.balance = new AtomicLong(capacity);
+	}
+
+	/**
+	 * Record a request (not a retry)
+	 */
+	public void onRequest() {
+		if (deposit == 0) return;
+		long current;
+		do {
+			current = balance.get();
+			if (current >= capacity) return;
+		} while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+	}
+
+	/**
+	 * @return true if a retry is allowed, withdrawing its token
+	 */
+	public boolean tryRetry() {
+		long current;
+		do {
+			current = balance.get();
+			if (current < UNIT) return false;
+		} while (!balance.compareAndSet(current, current - UNIT));
+		return true;
+	}
+
+	/**
+	 * @return the number of retries currently allowed
+	 */
+	public int getAvailable() {
+		return (int) (balance.get() / UNIT);
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+/**
+ * Retry policy of the idempotent calls (GET, PUT and DELETE): exponential
+ * backoff with full jitter, limited by a {@link RetryBudget} shared by all
+ * the calls using the policy. Only transient errors are retried: failures
+ * without a response and 429 or 5xx responses.
+ *
+ */
+public class RetryPolicy {
+
+	private final int maxRetries;
+	private final long initialDelay;
+	private final long maxDelay;
+	private final RetryBudget budget;
+
+	private RetryPolicy(Builder builder) {
+		this.maxRetries = builder.maxRetries;
+		this.initialDelay = builder.initialDelay;
+		this.maxDelay = builder.maxDelay;
+		this.budget = new RetryBudget(builder.budgetRatio, builder.budgetBurst);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @param request
+	 * @return true if the request can be repeated without further effects
+	 */
+	public boolean isRetryable(ProfileRequest request) {
+		return request.getMethod() != ProfileRequest.Method.POST;
+	}
+
+	/**
+	 * @param e
+	 * @return true if the request may succeed if repeated: calls refused by
+	 *         the client (open circuit, rate limits) or interrupted by the
+	 *         {@link Deadline} are not
+	 */
+	public boolean isTransient(RemoteException e) {
+		if (e instanceof DeadlineExceededException || e instanceof CircuitOpenException
+				|| e instanceof RateLimitedException) {
+			return false;
+		}
+		if (e instanceof HttpStatusException) {
+			int status = ((HttpStatusException) e).getStatus();
+			return status == 429 || status >= 500;
+		}
+		return true;
+	}
+
+	/**
+	 * @param retry
+	 *            number of the retry, starting from 1
+	 * @return the delay before the retry in milliseconds, chosen at random
+	 *         between 0 and the exponential backoff
+	 */
+	public long getDelay(int retry) {
+		long backoff = initialDelay << Math.min(retry - 1, 30);
+		if (backoff <= 0 || backoff > maxDelay) backoff = maxDelay;
+		return ThreadLocalRandom.current().nextLong(backoff + 1);
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public RetryBudget getBudget() {
+		return budget;
+	}
+
+	public static class Builder {
+
+		private int maxRetries = 2;
+		private long initialDelay = 100;
+		private long maxDelay = 2000;
+		private double budgetRatio = 0.1;
+		private int budgetBurst = 10;
+
+		/**
+		 * @param maxRetries
+		 *            maximum retries of a call
+		 * @return
+		 */
+		public Builder maxRetries(int maxRetries) {
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+		/**
+		 * @param initialDelay
+		 *            maximum delay before the first retry in milliseconds,
+		 *            doubled at each retry
+		 * @return
+		 */
+		public Builder initialDelay(long initialDelay) {
+			this.initialDelay = initialDelay;
+			return this;
+		}
+
+		/**
+		 * @param maxDelay
+		 *            upper bound of the delay before a retry in milliseconds
+		 * @return
+		 */
+		public Builder maxDelay(long maxDelay) {
+			this.maxDelay = maxDelay;
+			return this;
+		}
+
+		/**
+		 * @param ratio
+		 *            maximum retries per request, e.g. 0.1 for 10%
+		 * @param burst
+		 *            retries allowed in excess of the ratio
+		 * @return
+		 */
+		public Builder budget(double ratio, int burst) {
+			this.budgetRatio = ratio;
+			this.budgetBurst = burst;
+			return this;
+		}
+
+		public RetryPolicy build() {
+			return new RetryPolicy(this);
+		}
+	}
+}
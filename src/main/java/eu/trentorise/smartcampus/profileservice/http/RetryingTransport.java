@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.metrics.ProfileMetrics;
+
+/**
+ * {@link ProfileTransport} decorator retrying the idempotent requests failed
+ * for a transient error, according to a {@link RetryPolicy}. A streamed
+ * response is retried only if the failure happened before its reading
+ * started, so that no profile is delivered twice. No retry is attempted if
+ * the {@link Deadline} of the caller expires before the end of the delay, or
+ * if the request has been refused by the client-side rate limits.
+ *
+ */
+public class RetryingTransport implements ProfileTransport {
+
+	private final ProfileTransport delegate;
+	private final RetryPolicy policy;
+	private final ProfileMetrics metrics;
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param policy
+	 *            retry policy, its budget is shared by all the requests of
+	 *            the policy
+	 */
+	public RetryingTransport(ProfileTransport delegate, RetryPolicy policy) {
+		this(delegate, policy, ProfileMetrics.NOOP);
+	}
+
+	/**
+	 * @param delegate
+	 *            the transport executing the requests
+	 * @param policy
+	 *            retry policy, its budget is shared by all the requests of
+	 *            the policy
+	 * @param metrics
+	 *            receiver of the retry counts
+	 */
+	public RetryingTransport(ProfileTransport delegate, RetryPolicy policy, ProfileMetrics metrics) {
+		this.delegate = delegate;
+		this.policy = policy;
+		this.metrics = metrics == null ? ProfileMetrics.NOOP : metrics;
+	}
+
+	@Override
+	public String execute(ProfileRequest request) throws SecurityException, RemoteException {
+		policy.getBudget().onRequest();
+		for (int retry = 1;; retry++) {
+			try {
+				return delegate.execute(request);
+			} catch (RemoteException e) {
+				if (!retry(request, e, retry)) throw e;
+			}
+		}
+	}
+
+	@Override
+	public <T> T execute(ProfileRequest request, ResponseReader<T> reader) throws SecurityException,
+			RemoteException {
+		policy.getBudget().onRequest();
+		for (int retry = 1;; retry++) {
+			TrackingReader<T> tracking = new TrackingReader<T>(reader);
+			try {
+				return delegate.execute(request, tracking);
+			} catch (RemoteException e) {
+				if (tracking.started || !retry(request, e, retry)) throw e;
+			}
+		}
+	}
+
+	/**
+	 * Wait before the retry, if allowed
+	 * 
+	 * @return true if the request must be retried
+	 */
+	private boolean retry(ProfileRequest request, RemoteException e, int retry) {
+		if (retry > policy.getMaxRetries() || !policy.isRetryable(request) || !policy.isTransient(e)) {
+			return false;
+		}
+		long delay = policy.getDelay(retry);
+		if (!Deadline.allows(delay) || !policy.getBudget().tryRetry()) return false;
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (metrics != ProfileMetrics.NOOP) {
+			metrics.recordRetry(InstrumentedTransport.endpoint(request));
+		}
+		return true;
+	}
+
+	private static class TrackingReader<T> implements ResponseReader<T> {
+
+		private final ResponseReader<T> reader;
+		private boolean started;
+
+		TrackingReader(ResponseReader<T> reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public T read(InputStream content) throws IOException {
+			started = true;
+			return reader.read(content);
+		}
+
+		@Override
+		public void validators(String etag, String lastModified) {
+			reader.validators(etag, lastModified);
+		}
+
+		@Override
+		public T notModified() throws IOException {
+			return reader.notModified();
+		}
+	}
+}
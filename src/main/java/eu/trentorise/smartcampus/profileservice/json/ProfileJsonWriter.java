@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import eu.trentorise.smartcampus.network.JsonUtils;
+
+/**
+ * Writer of the request bodies: the profile content (maps, lists, strings,
+ * numbers, booleans) is written directly to the output stream, without an
+ * intermediate string. The generators are created by the factory of
+ * {@link ProfileStreamParser#getFactory()}, which recycles their buffers.
+ *
+ */
+public class ProfileJsonWriter {
+
+	private ProfileJsonWriter() {
+	}
+
+	/**
+	 * Write the JSON representation of a value in UTF-8. The stream is
+	 * flushed, not closed.
+	 * 
+	 * @param value
+	 *            a content value; values of other types are converted with
+	 *            {@link JsonUtils#toJSON(Object)}
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Object value, OutputStream out) throws IOException {
+		JsonGenerator generator = ProfileStreamParser.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try {
+			writeValue(generator, value);
+		} finally {
+			generator.close();
+		}
+	}
+
+	/**
+	 * @param value
+	 *            a content value
+	 * @return the JSON representation of the value
+	 */
+	public static String toString(Object value) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(value, out);
+			return out.toString("UTF-8");
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot convert to JSON: " + e.getMessage(), e);
+		}
+	}
+
+	private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else if (value instanceof String) {
+			generator.writeString((String) value);
+		} else if (value instanceof Map) {
+			generator.writeStartObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				generator.writeFieldName(String.valueOf(entry.getKey()));
+				writeValue(generator, entry.getValue());
+			}
+			generator.writeEndObject();
+		} else if (value instanceof Collection) {
+			generator.writeStartArray();
+			for (Object element : (Collection<?>) value) {
+				writeValue(generator, element);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof Object[]) {
+			generator.writeStartArray();
+			for (Object element : (Object[]) value) {
+				writeValue(generator, element);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short
+				|| value instanceof Byte) {
+			generator.writeNumber(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			generator.writeNumber((Double) value);
+		} else if (value instanceof Float) {
+			generator.writeNumber((Float) value);
+		} else if (value instanceof BigInteger) {
+			generator.writeNumber((BigInteger) value);
+		} else if (value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) value);
+		} else {
+			String json = JsonUtils.toJSON(value);
+			if (json == null) {
+				generator.writeNull();
+			} else {
+				generator.writeRawValue(json);
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import eu.trentorise.smartcampus.profileservice.ProfileCallback;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.CompactAccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * Pull parser of the profile service responses. Profiles are built directly
+ * from the token stream, without an intermediate tree or string.
+ *
+ */
+public class ProfileStreamParser {
+
+	/**
+	 * Reader of a single element, positioned on its first token
+	 *
+	 * @param <T>
+	 *            element type
+	 */
+	public interface ElementReader<T> {
+		T read(JsonParser parser) throws IOException;
+	}
+
+	public static final ElementReader<BasicProfile> BASIC_PROFILE = new ElementReader<BasicProfile>() {
+		public BasicProfile read(JsonParser parser) throws IOException {
+			return readBasicProfile(parser);
+		}
+	};
+
+	public static final ElementReader<ExtendedProfile> EXTENDED_PROFILE = new ElementReader<ExtendedProfile>() {
+		public ExtendedProfile read(JsonParser parser) throws IOException {
+			return readExtendedProfile(parser);
+		}
+	};
+
+	public static final ElementReader<AccountProfile> ACCOUNT_PROFILE = new ElementReader<AccountProfile>() {
+		public AccountProfile read(JsonParser parser) throws IOException {
+			return readAccountProfile(parser);
+		}
+	};
+
+	public static final ElementReader<CompactAccountProfile> COMPACT_ACCOUNT_PROFILE = new ElementReader<CompactAccountProfile>() {
+		public CompactAccountProfile read(JsonParser parser) throws IOException {
+			return readCompactAccountProfile(parser);
+		}
+	};
+
+	/** Name of the list field of the wrapper objects */
+	private static final String PROFILES = "profiles";
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private ProfileStreamParser() {
+	}
+
+	/**
+	 * @return the factory of the parsers, shared to recycle its buffers
+	 */
+	public static JsonFactory getFactory() {
+		return FACTORY;
+	}
+
+	/**
+	 * Read the elements of a list wrapper (<code>{"profiles":[...]}</code>)
+	 *
+	 * @param content
+	 * @param reader
+	 *            reader of a single element
+	 * @return the list of the elements, empty if the content is empty
+	 * @throws IOException
+	 */
+	public static <T> List<T> readList(InputStream content, ElementReader<T> reader) throws IOException {
+		return readList(FACTORY.createParser(content), reader);
+	}
+
+	/**
+	 * Read the elements of a list wrapper (<code>{"profiles":[...]}</code>)
+	 * from a response already received
+	 *
+	 * @param json
+	 * @param reader
+	 *            reader of a single element
+	 * @return the list of the elements, empty if the content is empty
+	 * @throws IOException
+	 */
+	public static <T> List<T> readList(String json, ElementReader<T> reader) throws IOException {
+		return readList(FACTORY.createParser(json), reader);
+	}
+
+	private static <T> List<T> readList(JsonParser parser, ElementReader<T> reader) throws IOException {
+		final List<T> list = new ArrayList<T>();
+		readEach(parser, reader, new ProfileCallback<T>() {
+			public void onProfile(T profile) {
+				list.add(profile);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Read the elements of a list wrapper (<code>{"profiles":[...]}</code>)
+	 * passing each of them to the callback as soon as it is parsed. Only one
+	 * element at a time is kept in memory.
+	 *
+	 * @param content
+	 * @param reader
+	 *            reader of a single element
+	 * @param callback
+	 *            receiver of the elements
+	 * @return the number of elements read
+	 * @throws IOException
+	 */
+	public static <T> int readEach(InputStream content, ElementReader<T> reader, ProfileCallback<T> callback)
+			throws IOException {
+		return readEach(FACTORY.createParser(content), reader, callback);
+	}
+
+	private static <T> int readEach(JsonParser parser, ElementReader<T> reader, ProfileCallback<T> callback)
+			throws IOException {
+		try {
+			int count = 0;
+			if (parser.nextToken() != JsonToken.START_OBJECT) return count;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (PROFILES.equals(field) && token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						callback.onProfile(reader.read(parser));
+						count++;
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return count;
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Read a single object
+	 *
+	 * @param content
+	 * @param reader
+	 * @return the object, null if the content is empty
+	 * @throws IOException
+	 */
+	public static <T> T readObject(InputStream content, ElementReader<T> reader) throws IOException {
+		return readObject(FACTORY.createParser(content), reader);
+	}
+
+	/**
+	 * Read a single object from a response already received
+	 *
+	 * @param json
+	 * @param reader
+	 * @return the object, null if the content is empty
+	 * @throws IOException
+	 */
+	public static <T> T readObject(String json, ElementReader<T> reader) throws IOException {
+		return readObject(FACTORY.createParser(json), reader);
+	}
+
+	private static <T> T readObject(JsonParser parser, ElementReader<T> reader) throws IOException {
+		try {
+			if (parser.nextToken() == null) return null;
+			return reader.read(parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * @param parser
+	 *            positioned on the start of the object
+	 * @return the profile, null for a JSON null
+	 * @throws IOException
+	 */
+	public static BasicProfile readBasicProfile(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) return null;
+		BasicProfile profile = new BasicProfile();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("name".equals(field)) {
+				profile.setName(parser.getValueAsString());
+			} else if ("surname".equals(field)) {
+				profile.setSurname(parser.getValueAsString());
+			} else if ("socialId".equals(field)) {
+				profile.setSocialId(parser.getValueAsString());
+			} else if ("userId".equals(field)) {
+				profile.setUserId(parser.getValueAsString());
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * @param parser
+	 *            positioned on the start of the object
+	 * @return the profile, null for a JSON null
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static ExtendedProfile readExtendedProfile(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) return null;
+		ExtendedProfile profile = new ExtendedProfile();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("profileId".equals(field)) {
+				profile.setProfileId(parser.getValueAsString());
+			} else if ("userId".equals(field)) {
+				profile.setUserId(parser.getValueAsString());
+			} else if ("socialId".equals(field)) {
+				profile.setSocialId(parser.getValueAsString());
+			} else if ("content".equals(field)) {
+				Object content = readValue(parser);
+				profile.setContent(content instanceof Map ? (Map<String, Object>) content : null);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Build the account profile while reading the accounts
+	 * (<code>{"accounts":{"google":{"email":"..."}}}</code>)
+	 * 
+	 * @param parser
+	 *            positioned on the start of the object
+	 * @return the profile, null for a JSON null
+	 * @throws IOException
+	 */
+	public static AccountProfile readAccountProfile(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) return null;
+		Map<String, Map<String, String>> accounts = new HashMap<String, Map<String, String>>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			if (parser.nextToken() != JsonToken.START_OBJECT || !"accounts".equals(field)) {
+				parser.skipChildren();
+				continue;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String account = parser.getCurrentName();
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					parser.skipChildren();
+					continue;
+				}
+				Map<String, String> attributes = accounts.get(account);
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String attribute = parser.getCurrentName();
+					if (parser.nextToken().isScalarValue()) {
+						// as AccountProfile.valueOf, accounts without attributes are omitted
+						if (attributes == null) {
+							attributes = new HashMap<String, String>();
+							accounts.put(account, attributes);
+						}
+						attributes.put(attribute, parser.getValueAsString());
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+		AccountProfile profile = new AccountProfile();
+		profile.setAttributes(accounts);
+		return profile;
+	}
+
+	/**
+	 * Build the compact profile while reading the accounts, without
+	 * intermediate maps
+	 * 
+	 * @param parser
+	 *            positioned on the start of the object
+	 * @return the profile, null for a JSON null
+	 * @throws IOException
+	 */
+	public static CompactAccountProfile readCompactAccountProfile(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) return null;
+		CompactAccountProfile.Builder builder = new CompactAccountProfile.Builder();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			if (parser.nextToken() != JsonToken.START_OBJECT || !"accounts".equals(field)) {
+				parser.skipChildren();
+				continue;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				builder.account(parser.getCurrentName());
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					parser.skipChildren();
+					continue;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String attribute = parser.getCurrentName();
+					if (parser.nextToken().isScalarValue()) {
+						builder.attribute(attribute, parser.getValueAsString());
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Read a generic value: objects are returned as maps, arrays as lists
+	 *
+	 * @param parser
+	 *            positioned on the first token of the value
+	 * @return
+	 * @throws IOException
+	 */
+	public static Object readValue(JsonParser parser) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case START_OBJECT:
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				map.put(field, readValue(parser));
+			}
+			return map;
+		case START_ARRAY:
+			List<Object> list = new ArrayList<Object>();
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				list.add(readValue(parser));
+			}
+			return list;
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+			return parser.getNumberValue();
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		default:
+			return null;
+		}
+	}
+}
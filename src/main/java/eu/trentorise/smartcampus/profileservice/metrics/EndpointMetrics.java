@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of a single endpoint
+ *
+ */
+public class EndpointMetrics {
+
+	private final String endpoint;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<Integer, LongAdder>();
+
+	EndpointMetrics(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	void record(int status, long latencyNanos, long requestBytes, long responseBytes) {
+		latency.record(latencyNanos);
+		this.requestBytes.add(requestBytes);
+		this.responseBytes.add(responseBytes);
+		if (status < 200 || status >= 300) {
+			LongAdder count = errors.get(status);
+			if (count == null) {
+				LongAdder created = new LongAdder();
+				count = errors.putIfAbsent(status, created);
+				if (count == null) count = created;
+			}
+			count.increment();
+		}
+	}
+
+	void recordRetry() {
+		retries.increment();
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the number of calls, successful or not
+	 */
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the number of failed calls by HTTP status,
+	 *         {@link ProfileMetrics#STATUS_NONE} for the calls failed without a
+	 *         response
+	 */
+	public Map<Integer, Long> getErrors() {
+		Map<Integer, Long> result = new TreeMap<Integer, Long>();
+		for (Map.Entry<Integer, LongAdder> e : errors.entrySet()) {
+			result.put(e.getKey(), e.getValue().sum());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	public long getErrorCount() {
+		long count = 0;
+		for (LongAdder e : errors.values()) {
+			count += e.sum();
+		}
+		return count;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes.sum();
+	}
+
+	public long getResponseBytes() {
+		return responseBytes.sum();
+	}
+
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "EndpointMetrics [endpoint=" + endpoint + ", count=" + getCount() + ", errors=" + getErrors()
+				+ ", p50=" + latency.getQuantileMillis(0.5) + "ms, p99=" + latency.getQuantileMillis(0.99)
+				+ "ms, requestBytes=" + getRequestBytes() + ", responseBytes=" + getResponseBytes() + ", retries="
+				+ getRetries() + "]";
+	}
+}
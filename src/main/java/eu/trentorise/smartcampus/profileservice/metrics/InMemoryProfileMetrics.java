@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link ProfileMetrics} keeping counters and latency histograms of each
+ * endpoint in memory
+ *
+ */
+public class InMemoryProfileMetrics implements ProfileMetrics {
+
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	@Override
+	public void recordCall(String endpoint, int status, long latencyNanos, long requestBytes, long responseBytes) {
+		get(endpoint).record(status, latencyNanos, requestBytes, responseBytes);
+	}
+
+	@Override
+	public void recordRetry(String endpoint) {
+		get(endpoint).recordRetry();
+	}
+
+	/**
+	 * @param endpoint
+	 *            method and path template
+	 * @return the measurements of the endpoint, null if never called
+	 */
+	public EndpointMetrics getEndpoint(String endpoint) {
+		return endpoints.get(endpoint);
+	}
+
+	/**
+	 * @return the measurements of all the called endpoints, sorted by endpoint
+	 */
+	public Map<String, EndpointMetrics> getEndpoints() {
+		return Collections.unmodifiableMap(new TreeMap<String, EndpointMetrics>(endpoints));
+	}
+
+	public void reset() {
+		endpoints.clear();
+	}
+
+	private EndpointMetrics get(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		if (metrics == null) {
+			EndpointMetrics created = new EndpointMetrics(endpoint);
+			metrics = endpoints.putIfAbsent(endpoint, created);
+			if (metrics == null) metrics = created;
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of the call latencies with fixed, roughly exponential bucket
+ * bounds. Recording is lock free and does not allocate.
+ *
+ */
+public class LatencyHistogram {
+
+	/** Upper bounds (inclusive) of the buckets in milliseconds */
+	private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+	private static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+
+	static {
+		for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+			BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BOUNDS_MILLIS[i]);
+		}
+	}
+
+	/** the last bucket counts the latencies above the largest bound */
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+	private final LongAdder totalNanos = new LongAdder();
+
+	public void record(long nanos) {
+		int i = 0;
+		while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+			i++;
+		}
+		buckets.incrementAndGet(i);
+		totalNanos.add(nanos);
+	}
+
+	/**
+	 * @return the upper bounds of the buckets in milliseconds, the last
+	 *         bucket is unbounded
+	 */
+	public static long[] getBoundsMillis() {
+		return BOUNDS_MILLIS.clone();
+	}
+
+	/**
+	 * @return the number of latencies of each bucket
+	 */
+	public long[] getCounts() {
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * @param quantile
+	 *            between 0 and 1
+	 * @return the upper bound in milliseconds of the bucket containing the
+	 *         quantile, {@link Long#MAX_VALUE} if beyond the largest bound
+	 */
+	public long getQuantileMillis(double quantile) {
+		long[] counts = getCounts();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				return i < BOUNDS_MILLIS.length ? BOUNDS_MILLIS[i] : Long.MAX_VALUE;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.metrics;
+
+/**
+ * Receiver of the measurements of the profile service calls. Endpoints are
+ * identified by method and path template, e.g.
+ * <code>GET extprofile/app/{user}/{profile}</code>, so that the number of
+ * distinct endpoints does not depend on the ids of the calls.
+ * 
+ * Implementations are invoked by the calling threads and must be thread
+ * safe; adapters to external registries (e.g. Micrometer timers and
+ * counters) implement this interface.
+ *
+ */
+public interface ProfileMetrics {
+
+	/** Status of the calls failed without a response */
+	int STATUS_NONE = 0;
+	/** Status of the calls rejected for the access token (401 or 403) */
+	int STATUS_UNAUTHORIZED = 401;
+
+	/** Metrics discarding all the measurements */
+	ProfileMetrics NOOP = new ProfileMetrics() {
+		@Override
+		public void recordCall(String endpoint, int status, long latencyNanos, long requestBytes, long responseBytes) {
+		}
+
+		@Override
+		public void recordRetry(String endpoint) {
+		}
+	};
+
+	/**
+	 * @param endpoint
+	 *            method and path template of the call
+	 * @param status
+	 *            HTTP status of the response, {@link #STATUS_NONE} if the
+	 *            call failed without a response
+	 * @param latencyNanos
+	 *            duration of the call, including the reading of the response
+	 * @param requestBytes
+	 *            size of the request body
+	 * @param responseBytes
+	 *            size of the response body read
+	 */
+	void recordCall(String endpoint, int status, long latencyNanos, long requestBytes, long responseBytes);
+
+	/**
+	 * @param endpoint
+	 *            method and path template of the retried call
+	 */
+	void recordRetry(String endpoint);
+
+}
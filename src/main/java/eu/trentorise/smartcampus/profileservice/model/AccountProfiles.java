@@ -1,19 +1,19 @@
-package eu.trentorise.smartcampus.profileservice.model;
-
-import java.util.List;
-
-public class AccountProfiles {
-
-	private List<AccountProfile> profiles;
-
-	public List<AccountProfile> getProfiles() {
-		return profiles;
-	}
-
-	public void setProfiles(List<AccountProfile> profiles) {
-		this.profiles = profiles;
-	}
-	
-	
-	
-}
+package eu.trentorise.smartcampus.profileservice.model;
+
+import java.util.List;
+
+public class AccountProfiles {
+
+	private List<AccountProfile> profiles;
+
+	public List<AccountProfile> getProfiles() {
+		return profiles;
+	}
+
+	public void setProfiles(List<AccountProfile> profiles) {
+		this.profiles = profiles;
+	}
+	
+	
+	
+}
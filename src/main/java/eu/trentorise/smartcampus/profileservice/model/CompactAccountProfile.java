@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, compact form of an {@link AccountProfile}, for the clients that
+ * keep many profiles in memory. Accounts and attributes are stored in flat
+ * arrays; account and attribute names are shared among all the instances,
+ * since the same few names (e.g. <code>google</code>,
+ * <code>eu.trentorise.smartcampus.givenname</code>) recur in every profile.
+ * Lookups scan the few accounts and attributes of the profile.
+ * 
+ */
+public final class CompactAccountProfile {
+
+	/** Shared account and attribute names */
+	private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<String, String>();
+	/** Bound of the shared names, names beyond it are not shared */
+	private static final int MAX_NAMES = 4096;
+
+	private static final String[] EMPTY = new String[0];
+
+	private final String[] accounts;
+	/** attributes of account i are in [offsets[i], offsets[i+1]) */
+	private final int[] offsets;
+	private final String[] keys;
+	private final String[] values;
+
+	private CompactAccountProfile(String[] accounts, int[] offsets, String[] keys, String[] values) {
+		this.accounts = accounts;
+		this.offsets = offsets;
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * @return all account names for the profile
+	 */
+	public Set<String> getAccountNames() {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(accounts)));
+	}
+
+	/**
+	 * @return the number of accounts of the profile
+	 */
+	public int getAccountCount() {
+		return accounts.length;
+	}
+
+	/**
+	 * Return all the attributes of the specified account
+	 * 
+	 * @param account
+	 * @return the attributes, null if the account is not present
+	 */
+	public Map<String, String> getAccountAttributes(String account) {
+		int a = indexOf(account);
+		if (a < 0) return null;
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (int i = offsets[a]; i < offsets[a + 1]; i++) {
+			map.put(keys[i], values[i]);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Return the value for the specified attribute of the specified account.
+	 * 
+	 * @param account
+	 * @param attribute
+	 * @return the value, null if not present
+	 */
+	public String getAttribute(String account, String attribute) {
+		int a = indexOf(account);
+		if (a < 0 || attribute == null) return null;
+		for (int i = offsets[a]; i < offsets[a + 1]; i++) {
+			String key = keys[i];
+			if (key == attribute || key.equals(attribute)) return values[i];
+		}
+		return null;
+	}
+
+	/**
+	 * @return a mutable copy of the profile
+	 */
+	public AccountProfile toAccountProfile() {
+		Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>();
+		for (int a = 0; a < accounts.length; a++) {
+			Map<String, String> map = new HashMap<String, String>();
+			for (int i = offsets[a]; i < offsets[a + 1]; i++) {
+				map.put(keys[i], values[i]);
+			}
+			attributes.put(accounts[a], map);
+		}
+		AccountProfile profile = new AccountProfile();
+		profile.setAttributes(attributes);
+		return profile;
+	}
+
+	/**
+	 * @param profile
+	 * @return the compact form of the profile
+	 */
+	public static CompactAccountProfile valueOf(AccountProfile profile) {
+		Builder builder = new Builder();
+		for (Map.Entry<String, Map<String, String>> account : profile.getAttributes().entrySet()) {
+			builder.account(account.getKey());
+			if (account.getValue() == null) continue;
+			for (Map.Entry<String, String> attr : account.getValue().entrySet()) {
+				builder.attribute(attr.getKey(), attr.getValue());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param inmap
+	 *            parsed profile, with the accounts in the
+	 *            <code>accounts</code> field
+	 * @return the compact form of the profile
+	 */
+	@SuppressWarnings("unchecked")
+	public static CompactAccountProfile valueOf(Map<String, Object> inmap) {
+		Map<String, Object> map = (Map<String, Object>) inmap.get("accounts");
+		Builder builder = new Builder();
+		if (map != null) {
+			for (Map.Entry<String, Object> account : map.entrySet()) {
+				builder.account(account.getKey());
+				if (!(account.getValue() instanceof Map)) continue;
+				for (Map.Entry<String, Object> attr : ((Map<String, Object>) account.getValue()).entrySet()) {
+					builder.attribute(attr.getKey(), attr.getValue() == null ? null : attr.getValue().toString());
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private int indexOf(String account) {
+		if (account == null) return -1;
+		for (int i = 0; i < accounts.length; i++) {
+			if (accounts[i] == account || accounts[i].equals(account)) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof CompactAccountProfile)) return false;
+		CompactAccountProfile other = (CompactAccountProfile) obj;
+		return Arrays.equals(accounts, other.accounts) && Arrays.equals(offsets, other.offsets)
+				&& Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * Arrays.hashCode(accounts) + Arrays.hashCode(keys)) + Arrays.hashCode(values);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("CompactAccountProfile {");
+		for (int a = 0; a < accounts.length; a++) {
+			if (a > 0) sb.append(", ");
+			sb.append(accounts[a]).append("={");
+			for (int i = offsets[a]; i < offsets[a + 1]; i++) {
+				if (i > offsets[a]) sb.append(", ");
+				sb.append(keys[i]).append('=').append(values[i]);
+			}
+			sb.append('}');
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * @return the shared instance of the name
+	 */
+	static String name(String name) {
+		String shared = NAMES.get(name);
+		if (shared != null) return shared;
+		if (NAMES.size() >= MAX_NAMES) return name;
+		shared = NAMES.putIfAbsent(name, name);
+		return shared == null ? name : shared;
+	}
+
+	/**
+	 * Builder of a profile in a single pass over the parsed accounts: the
+	 * attributes belong to the last account started. Accounts without
+	 * attributes are omitted, as in {@link AccountProfile}; repeated accounts
+	 * and attributes are not merged.
+	 *
+	 */
+	public static class Builder {
+
+		private String[] accounts = new String[4];
+		private int[] offsets = new int[5];
+		private int accountCount;
+		private String[] keys = new String[16];
+		private String[] values = new String[16];
+		private int attributeCount;
+
+		/**
+		 * Start a new account
+		 * 
+		 * @param account
+		 * @return this builder
+		 */
+		public Builder account(String account) {
+			if (account == null) throw new IllegalArgumentException("account name is null");
+			dropEmptyAccount();
+			if (accountCount == accounts.length) {
+				accounts = Arrays.copyOf(accounts, accountCount * 2);
+				offsets = Arrays.copyOf(offsets, accountCount * 2 + 1);
+			}
+			accounts[accountCount++] = name(account);
+			offsets[accountCount] = attributeCount;
+			return this;
+		}
+
+		/**
+		 * Add an attribute to the current account
+		 * 
+		 * @param attribute
+		 * @param value
+		 * @return this builder
+		 */
+		public Builder attribute(String attribute, String value) {
+			if (accountCount == 0) throw new IllegalStateException("no account started");
+			if (attribute == null) return this;
+			if (attributeCount == keys.length) {
+				keys = Arrays.copyOf(keys, attributeCount * 2);
+				values = Arrays.copyOf(values, attributeCount * 2);
+			}
+			keys[attributeCount] = name(attribute);
+			values[attributeCount++] = value;
+			offsets[accountCount] = attributeCount;
+			return this;
+		}
+
+		/**
+		 * @return the profile, with arrays trimmed to the exact size
+		 */
+		public CompactAccountProfile build() {
+			dropEmptyAccount();
+			if (accountCount == 0) return new CompactAccountProfile(EMPTY, new int[1], EMPTY, EMPTY);
+			return new CompactAccountProfile(Arrays.copyOf(accounts, accountCount),
+					Arrays.copyOf(offsets, accountCount + 1), Arrays.copyOf(keys, attributeCount),
+					Arrays.copyOf(values, attributeCount));
+		}
+
+		/** the current account is replaced by the next one if it has no attributes */
+		private void dropEmptyAccount() {
+			if (accountCount > 0 && offsets[accountCount - 1] == attributeCount) accountCount--;
+		}
+	}
+}
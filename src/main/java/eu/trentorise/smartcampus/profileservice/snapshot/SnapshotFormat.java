@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.snapshot;
+
+/**
+ * Layout of the profile snapshot files.
+ * <p>
+ * The file starts with a header: the magic number, the format version (2
+ * bytes), reserved flags (2 bytes) and the creation time (8 bytes, epoch
+ * milliseconds). A sequence of records follows, each one made of its type (1
+ * byte), the length of its payload (varint) and the payload, so that readers
+ * can skip the record types they do not know. The last record is
+ * {@link #END}, with the number of profile records of the file.
+ * <p>
+ * Repeated keys (profile ids, content keys, account and attribute names)
+ * are written once as {@link #STRING} records and then referenced by their
+ * index; the other strings are written inline as UTF-8. Integers are
+ * written as varints, the signed ones zigzag encoded.
+ *
+ */
+final class SnapshotFormat {
+
+	/** "PSNP" */
+	static final int MAGIC = 0x50534E50;
+	static final short VERSION = 1;
+	static final int HEADER_LENGTH = 16;
+
+	/* record types */
+	static final byte END = 0;
+	static final byte STRING = 1;
+	static final byte BASIC_PROFILE = 2;
+	static final byte EXTENDED_PROFILE = 3;
+	static final byte ACCOUNT_PROFILE = 4;
+
+	/* value tags of the extended profile content */
+	static final byte NULL = 0;
+	static final byte FALSE = 1;
+	static final byte TRUE = 2;
+	static final byte INT = 3;
+	static final byte LONG = 4;
+	static final byte DOUBLE = 5;
+	static final byte TEXT = 6;
+	static final byte BIG_INTEGER = 7;
+	static final byte LIST = 8;
+	static final byte MAP = 9;
+
+	private SnapshotFormat() {
+	}
+}
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.trentorise.smartcampus.profileservice.ProfileCallback;
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * Reader of a profile snapshot file written by {@link SnapshotWriter}. The
+ * file is memory-mapped: the profiles are decoded straight from the page
+ * cache, without copying the file into the heap. Files up to 2 GB are
+ * supported.
+ * 
+ * <pre>
+ * try (SnapshotReader snapshot = SnapshotReader.open(path)) {
+ * 	long since = snapshot.getTimestamp();
+ * 	List&lt;BasicProfile&gt; profiles = snapshot.getBasicProfiles();
+ * }
+ * </pre>
+ * 
+ * Instances are not thread safe.
+ *
+ */
+public class SnapshotReader implements Closeable {
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int version;
+	private final long timestamp;
+
+	private SnapshotReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot too large to be mapped");
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (buffer.remaining() < SnapshotFormat.HEADER_LENGTH || buffer.getInt() != SnapshotFormat.MAGIC) {
+			throw new IOException("Not a profile snapshot");
+		}
+		this.version = buffer.getShort();
+		if (version > SnapshotFormat.VERSION) throw new IOException("Unsupported snapshot version " + version);
+		buffer.getShort();
+		this.timestamp = buffer.getLong();
+	}
+
+	/**
+	 * @param file
+	 *            a snapshot file
+	 * @return the reader of the snapshot, to be closed
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot
+	 */
+	public static SnapshotReader open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new SnapshotReader(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the time the profiles of the snapshot were read, in epoch
+	 *         milliseconds: the changes after this time must be fetched from
+	 *         the server
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Decode all the profiles of the snapshot, in the order they were
+	 * written
+	 * 
+	 * @param basic
+	 *            receiver of the basic profiles, null to skip them
+	 * @param extended
+	 *            receiver of the extended profiles, null to skip them
+	 * @param account
+	 *            receiver of the account profiles, null to skip them
+	 * @return the number of profiles of the snapshot
+	 * @throws IOException
+	 *             if the snapshot is truncated or corrupted
+	 */
+	public long read(ProfileCallback<BasicProfile> basic, ProfileCallback<ExtendedProfile> extended,
+			ProfileCallback<AccountProfile> account) throws IOException {
+		ByteBuffer in = buffer.duplicate();
+		in.position(SnapshotFormat.HEADER_LENGTH);
+		Decoder decoder = new Decoder(in);
+		long count = 0;
+		try {
+			while (true) {
+				if (!in.hasRemaining()) throw new IOException("Truncated snapshot");
+				byte type = in.get();
+				int length = (int) decoder.varint();
+				int end = in.position() + length;
+				if (length < 0 || end > in.limit()) throw new IOException("Truncated snapshot");
+				switch (type) {
+				case SnapshotFormat.END:
+					// later versions may count records unknown to this one
+					if (decoder.varint() != count && version == SnapshotFormat.VERSION) {
+						throw new IOException("Corrupted snapshot");
+					}
+					return count;
+				case SnapshotFormat.STRING:
+					decoder.dictionary.add(decoder.utf8(length));
+					break;
+				case SnapshotFormat.BASIC_PROFILE:
+					count++;
+					if (basic != null) basic.onProfile(decoder.basicProfile());
+					break;
+				case SnapshotFormat.EXTENDED_PROFILE:
+					count++;
+					if (extended != null) extended.onProfile(decoder.extendedProfile());
+					break;
+				case SnapshotFormat.ACCOUNT_PROFILE:
+					count++;
+					if (account != null) account.onProfile(decoder.accountProfile());
+					break;
+				default:
+					// record of a later version
+				}
+				in.position(end);
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupted snapshot", e);
+		}
+	}
+
+	public List<BasicProfile> getBasicProfiles() throws IOException {
+		List<BasicProfile> profiles = new ArrayList<BasicProfile>();
+		read(profiles::add, null, null);
+		return profiles;
+	}
+
+	public List<ExtendedProfile> getExtendedProfiles() throws IOException {
+		List<ExtendedProfile> profiles = new ArrayList<ExtendedProfile>();
+		read(null, profiles::add, null);
+		return profiles;
+	}
+
+	public List<AccountProfile> getAccountProfiles() throws IOException {
+		List<AccountProfile> profiles = new ArrayList<AccountProfile>();
+		read(null, null, profiles::add);
+		return profiles;
+	}
+
+	/**
+	 * Close the file. The mapped memory is released when the reader is
+	 * garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static class Decoder {
+
+		private final ByteBuffer in;
+		private final List<String> dictionary = new ArrayList<String>();
+		private byte[] scratch = new byte[256];
+
+		Decoder(ByteBuffer in) {
+			this.in = in;
+		}
+
+		BasicProfile basicProfile() {
+			BasicProfile profile = new BasicProfile();
+			profile.setUserId(text());
+			profile.setSocialId(text());
+			profile.setName(text());
+			profile.setSurname(text());
+			return profile;
+		}
+
+		@SuppressWarnings("unchecked")
+		ExtendedProfile extendedProfile() throws IOException {
+			ExtendedProfile profile = new ExtendedProfile();
+			profile.setUserId(text());
+			profile.setSocialId(text());
+			profile.setProfileId(key());
+			profile.setContent((Map<String, Object>) value());
+			return profile;
+		}
+
+		AccountProfile accountProfile() {
+			int accounts = (int) varint();
+			Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>(accounts * 2);
+			for (int i = 0; i < accounts; i++) {
+				String account = key();
+				int size = (int) varint();
+				Map<String, String> values = new HashMap<String, String>(size * 2);
+				for (int j = 0; j < size; j++) {
+					values.put(key(), text());
+				}
+				attributes.put(account, values);
+			}
+			AccountProfile profile = new AccountProfile();
+			profile.setAttributes(attributes);
+			return profile;
+		}
+
+		Object value() throws IOException {
+			byte tag = in.get();
+			switch (tag) {
+			case SnapshotFormat.NULL:
+				return null;
+			case SnapshotFormat.FALSE:
+				return Boolean.FALSE;
+			case SnapshotFormat.TRUE:
+				return Boolean.TRUE;
+			case SnapshotFormat.INT:
+				return (int) unzigzag(varint());
+			case SnapshotFormat.LONG:
+				return unzigzag(varint());
+			case SnapshotFormat.DOUBLE:
+				return in.getDouble();
+			case SnapshotFormat.TEXT:
+				return text();
+			case SnapshotFormat.BIG_INTEGER:
+				return new BigInteger(text());
+			case SnapshotFormat.LIST:
+				int length = (int) varint();
+				List<Object> list = new ArrayList<Object>(length);
+				for (int i = 0; i < length; i++) {
+					list.add(value());
+				}
+				return list;
+			case SnapshotFormat.MAP:
+				int size = (int) varint();
+				Map<String, Object> map = new LinkedHashMap<String, Object>(size * 2);
+				for (int i = 0; i < size; i++) {
+					String key = key();
+					map.put(key, value());
+				}
+				return map;
+			default:
+				throw new IOException("Unknown value type " + tag);
+			}
+		}
+
+		long varint() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = in.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+			throw new IllegalArgumentException("Malformed varint");
+		}
+
+		String key() {
+			int ref = (int) varint();
+			return ref == 0 ? null : dictionary.get(ref - 1);
+		}
+
+		String text() {
+			int length = (int) varint();
+			return length == 0 ? null : utf8(length - 1);
+		}
+
+		String utf8(int length) {
+			if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+			in.get(scratch, 0, length);
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		private static long unzigzag(long v) {
+			return (v >>> 1) ^ -(v & 1);
+		}
+	}
+}
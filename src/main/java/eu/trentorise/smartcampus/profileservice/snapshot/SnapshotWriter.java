@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+/**
+ * Writer of a profile snapshot file (see {@link SnapshotReader}). Profiles are
+ * written one at a time, so that a snapshot can be filled while the profiles
+ * are received. The file is written under a temporary name and moved to its
+ * destination by {@link #close()}, so that readers never see a partial
+ * snapshot.
+ * <p>
+ * Instances are not thread safe.
+ *
+ */
+public class SnapshotWriter implements Closeable {
+
+	private final Path target;
+	private final Path temp;
+	private final DataOutputStream out;
+
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+	/** payload of the current record */
+	private final Payload payload = new Payload();
+	private long count;
+	private boolean closed;
+
+	/**
+	 * Create a snapshot taken now
+	 * 
+	 * @param file
+	 *            destination of the snapshot, replaced on close
+	 * @throws IOException
+	 */
+	public SnapshotWriter(Path file) throws IOException {
+		this(file, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param file
+	 *            destination of the snapshot, replaced on close
+	 * @param timestamp
+	 *            time the profiles were read, in epoch milliseconds
+	 * @throws IOException
+	 */
+	public SnapshotWriter(Path file, long timestamp) throws IOException {
+		this.target = file.toAbsolutePath();
+		this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024));
+		out.writeInt(SnapshotFormat.MAGIC);
+		out.writeShort(SnapshotFormat.VERSION);
+		out.writeShort(0);
+		out.writeLong(timestamp);
+	}
+
+	public void write(BasicProfile profile) throws IOException {
+		payload.reset();
+		payload.text(profile.getUserId());
+		payload.text(profile.getSocialId());
+		payload.text(profile.getName());
+		payload.text(profile.getSurname());
+		record(SnapshotFormat.BASIC_PROFILE);
+	}
+
+	public void write(ExtendedProfile profile) throws IOException {
+		payload.reset();
+		payload.text(profile.getUserId());
+		payload.text(profile.getSocialId());
+		payload.varint(key(profile.getProfileId()));
+		payload.value(profile.getContent());
+		record(SnapshotFormat.EXTENDED_PROFILE);
+	}
+
+	public void write(AccountProfile profile) throws IOException {
+		Map<String, Map<String, String>> attributes = profile.getAttributes();
+		if (attributes == null) attributes = Collections.emptyMap();
+		payload.reset();
+		payload.varint(attributes.size());
+		for (Map.Entry<String, Map<String, String>> account : attributes.entrySet()) {
+			payload.varint(key(account.getKey()));
+			payload.varint(values(account).size());
+			for (Map.Entry<String, String> attribute : values(account).entrySet()) {
+				payload.varint(key(attribute.getKey()));
+				payload.text(attribute.getValue());
+			}
+		}
+		record(SnapshotFormat.ACCOUNT_PROFILE);
+	}
+
+	private static Map<String, String> values(Map.Entry<String, Map<String, String>> account) {
+		return account.getValue() == null ? Collections.<String, String> emptyMap() : account.getValue();
+	}
+
+	/**
+	 * Write the profiles of a collection, of any supported type
+	 * 
+	 * @param profiles
+	 * @throws IOException
+	 */
+	public void writeAll(Collection<?> profiles) throws IOException {
+		for (Object profile : profiles) {
+			if (profile instanceof BasicProfile) {
+				write((BasicProfile) profile);
+			} else if (profile instanceof ExtendedProfile) {
+				write((ExtendedProfile) profile);
+			} else if (profile instanceof AccountProfile) {
+				write((AccountProfile) profile);
+			} else {
+				throw new IllegalArgumentException("Unsupported profile type: " + profile);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of profiles written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Complete the snapshot and move it to its destination
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		payload.reset();
+		payload.varint(count);
+		record(SnapshotFormat.END);
+		out.close();
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Discard the snapshot, leaving the destination unchanged
+	 */
+	public void abort() throws IOException {
+		if (closed) return;
+		closed = true;
+		out.close();
+		Files.deleteIfExists(temp);
+	}
+
+	/**
+	 * Add the key to the dictionary if new. The string record is written at
+	 * once, before the record being buffered that references it.
+	 * 
+	 * @return the reference of the key: 0 for null, its dictionary index + 1
+	 *         otherwise
+	 */
+	private int key(String key) throws IOException {
+		if (key == null) return 0;
+		Integer index = dictionary.get(key);
+		if (index == null) {
+			index = dictionary.size();
+			dictionary.put(key, index);
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			out.writeByte(SnapshotFormat.STRING);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+		return index + 1;
+	}
+
+	private void record(byte type) throws IOException {
+		if (closed && type != SnapshotFormat.END) throw new IOException("Snapshot closed");
+		out.writeByte(type);
+		writeVarint(out, payload.size());
+		payload.writeTo(out);
+		if (type != SnapshotFormat.END) count++;
+	}
+
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/** growable buffer of a record payload */
+	private class Payload extends ByteArrayOutputStream {
+
+		Payload() {
+			super(256);
+		}
+
+		void varint(long value) {
+			try {
+				writeVarint(this, value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void text(String s) {
+			if (s == null) {
+				varint(0);
+				return;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			varint(bytes.length + 1);
+			write(bytes, 0, bytes.length);
+		}
+
+		void value(Object value) throws IOException {
+			if (value == null) {
+				write(SnapshotFormat.NULL);
+			} else if (value instanceof Boolean) {
+				write((Boolean) value ? SnapshotFormat.TRUE : SnapshotFormat.FALSE);
+			} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				write(SnapshotFormat.INT);
+				varint(zigzag(((Number) value).longValue()));
+			} else if (value instanceof Long) {
+				write(SnapshotFormat.LONG);
+				varint(zigzag((Long) value));
+			} else if (value instanceof Double || value instanceof Float) {
+				write(SnapshotFormat.DOUBLE);
+				long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					write((int) (bits >>> shift));
+				}
+			} else if (value instanceof BigInteger) {
+				write(SnapshotFormat.BIG_INTEGER);
+				text(value.toString());
+			} else if (value instanceof String) {
+				write(SnapshotFormat.TEXT);
+				text((String) value);
+			} else if (value instanceof List) {
+				List<?> list = (List<?>) value;
+				write(SnapshotFormat.LIST);
+				varint(list.size());
+				for (Object item : list) {
+					value(item);
+				}
+			} else if (value instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				write(SnapshotFormat.MAP);
+				varint(map.size());
+				for (Map.Entry<?, ?> e : map.entrySet()) {
+					varint(key(String.valueOf(e.getKey())));
+					value(e.getValue());
+				}
+			} else {
+				throw new IllegalArgumentException("Unsupported content value: " + value.getClass().getName());
+			}
+		}
+
+		private long zigzag(long v) {
+			return (v << 1) ^ (v >> 63);
+		}
+	}
+}
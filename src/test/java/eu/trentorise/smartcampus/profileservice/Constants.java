@@ -1,32 +1,32 @@
-/*******************************************************************************
- * Copyright 2012-2013 Trento RISE
- * 
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- * 
- *        http://www.apache.org/licenses/LICENSE-2.0
- * 
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- ******************************************************************************/
-package eu.trentorise.smartcampus.profileservice;
-
-/**
- * @author mirko perillo
- * 
- */
-public class Constants {
-
-	static final String USER_AUTH_TOKEN = "f1ff18a6-69c4-4a79-942f-ea947671a8e3";
-	static final String CLIENT_AUTH_TOKEN = "332e8a5f-f779-46e8-8abd-09a7a443c31e";
-
-	static final String BASIC_PROFILE_SRV_URL = "https://vas-dev.smartcampuslab.it/aac";
-	static final String PROFILE_SRV_URL = "https://vas-dev.smartcampuslab.it/core.profile";
-//	static final String SOCIAL_SRV_URL = "https://vas-dev.smartcampuslab.it/socialservice";
-
-
-}
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+/**
+ * @author mirko perillo
+ * 
+ */
+public class Constants {
+
+	static final String USER_AUTH_TOKEN = "f1ff18a6-69c4-4a79-942f-ea947671a8e3";
+	static final String CLIENT_AUTH_TOKEN = "332e8a5f-f779-46e8-8abd-09a7a443c31e";
+
+	static final String BASIC_PROFILE_SRV_URL = "https://vas-dev.smartcampuslab.it/aac";
+	static final String PROFILE_SRV_URL = "https://vas-dev.smartcampuslab.it/core.profile";
+//	static final String SOCIAL_SRV_URL = "https://vas-dev.smartcampuslab.it/socialservice";
+
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import eu.trentorise.smartcampus.profileservice.http.AsyncProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.Deadline;
+import eu.trentorise.smartcampus.profileservice.http.DeadlineExceededException;
+import eu.trentorise.smartcampus.profileservice.http.HttpStatusException;
+import eu.trentorise.smartcampus.profileservice.http.PooledAsyncHttpTransport;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+public class TestAsyncProfileService {
+
+	private HttpServer server;
+	private PooledAsyncHttpTransport transport;
+	private AsyncBasicProfileService service;
+
+	/** answers according to the token: ok, denied, error or slow */
+	@Before
+	public void start() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			String token = exchange.getRequestHeaders().getFirst("Authorization").substring("Bearer ".length());
+			int status = 200;
+			if ("denied".equals(token)) {
+				status = 401;
+			} else if ("error".equals(token)) {
+				status = 500;
+			} else if ("slow".equals(token)) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			byte[] body = "{\"userId\":\"1\",\"name\":\"Mario\"}".getBytes("UTF-8");
+			try {
+				exchange.sendResponseHeaders(status, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			} catch (IOException e) {
+				// the client aborted the request
+			}
+		});
+		server.start();
+		transport = PooledAsyncHttpTransport.builder().build();
+		service = new AsyncBasicProfileService("http://localhost:" + server.getAddress().getPort(), transport);
+	}
+
+	@After
+	public void stop() throws Exception {
+		transport.close();
+		server.stop(0);
+	}
+
+	private static Throwable failure(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+		Assert.fail();
+		return null;
+	}
+
+	@Test
+	public void success() throws Exception {
+		BasicProfile profile = service.getBasicProfile("ok").get(5, TimeUnit.SECONDS);
+		Assert.assertEquals("Mario", profile.getName());
+	}
+
+	@Test
+	public void errors() throws Exception {
+		Assert.assertTrue(failure(service.getBasicProfile("denied")) instanceof SecurityException);
+
+		Throwable error = failure(service.getBasicProfile("error"));
+		Assert.assertTrue(error instanceof ProfileServiceException);
+		Assert.assertEquals(500, ((HttpStatusException) error.getCause()).getStatus());
+	}
+
+	@Test
+	public void deadline() throws Exception {
+		CompletableFuture<BasicProfile> future;
+		Deadline deadline = Deadline.after(100);
+		try {
+			future = service.getBasicProfile("slow");
+		} finally {
+			deadline.close();
+		}
+		Throwable error = failure(future);
+		Assert.assertTrue(error instanceof ProfileServiceException);
+		Assert.assertTrue(error.getCause() instanceof DeadlineExceededException);
+	}
+
+	@Test
+	public void cancellation() throws Exception {
+		CompletableFuture<BasicProfile> future = service.getBasicProfile("slow");
+		Assert.assertTrue(future.cancel(true));
+		Assert.assertTrue(future.isCancelled());
+		// the transport is still usable
+		Assert.assertEquals("Mario", service.getBasicProfile("ok").get(5, TimeUnit.SECONDS).getName());
+	}
+
+	@Test
+	public void cancellationReachesTransport() throws Exception {
+		final CompletableFuture<String> response = new CompletableFuture<String>();
+		AsyncBasicProfileService stub = new AsyncBasicProfileService("http://localhost", new AsyncProfileTransport() {
+			@Override
+			public CompletableFuture<String> execute(ProfileRequest request) {
+				return response;
+			}
+		});
+		stub.getBasicProfile("ok").cancel(true);
+		Assert.assertTrue(response.isCancelled());
+	}
+
+	@Test
+	public void parsedOffTheCompletingThread() throws Exception {
+		final CompletableFuture<String> response = new CompletableFuture<String>();
+		AsyncBasicProfileService stub = new AsyncBasicProfileService("http://localhost", new AsyncProfileTransport() {
+			@Override
+			public CompletableFuture<String> execute(ProfileRequest request) {
+				return response;
+			}
+		});
+		CompletableFuture<String> parsedBy = stub.getBasicProfile("ok").thenApply(
+				profile -> Thread.currentThread().getName());
+		Thread reactor = new Thread(() -> response.complete("{\"userId\":\"1\"}"), "reactor");
+		reactor.start();
+		reactor.join();
+		Assert.assertFalse("reactor".equals(parsedBy.get(5, TimeUnit.SECONDS)));
+	}
+}
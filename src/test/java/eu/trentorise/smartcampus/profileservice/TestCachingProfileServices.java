@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestCachingProfileServices {
+
+	/**
+	 * answers the reads with a new version at each call, the token is the
+	 * userId of its owner
+	 */
+	private static class VersionTransport implements ProfileTransport {
+
+		final AtomicInteger reads = new AtomicInteger();
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			if (request.getMethod() != ProfileRequest.Method.GET) return "";
+			int version = reads.incrementAndGet();
+			String path = request.getPath();
+			if (path.startsWith("basicprofile/me")) {
+				return "{\"userId\":\"" + request.getToken() + "\",\"name\":\"v" + version + "\"}";
+			}
+			if (path.startsWith("basicprofile")) {
+				return "{\"userId\":\"1\",\"name\":\"v" + version + "\"}";
+			}
+			String owner = path.startsWith("extprofile/me") ? request.getToken() : "1";
+			String profile = "{\"userId\":\"" + owner + "\",\"profileId\":\"p\",\"content\":{\"v\":" + version + "}}";
+			if (path.equals("extprofile/me")) return "{\"profiles\":[" + profile + "]}";
+			return profile;
+		}
+	}
+
+	private static int version(ExtendedProfile profile) {
+		return ((Number) profile.getContent().get("v")).intValue();
+	}
+
+	@Test
+	public void basicProfile() throws Exception {
+		VersionTransport transport = new VersionTransport();
+		CachingBasicProfileService service = new CachingBasicProfileService("http://localhost", transport, 10,
+				60000, 10, 60000);
+
+		// the profiles of the token owners are not shared
+		Assert.assertEquals("a", service.getBasicProfile("a").getUserId());
+		Assert.assertEquals("b", service.getBasicProfile("b").getUserId());
+		Assert.assertEquals("a", service.getBasicProfile("a").getUserId());
+		Assert.assertEquals(2, transport.reads.get());
+
+		BasicProfile profile = service.getBasicProfile("1", "a");
+		Assert.assertSame(profile, service.getBasicProfile("1", "b"));
+		service.invalidate(profile);
+		Assert.assertNotSame(profile, service.getBasicProfile("1", "a"));
+		Assert.assertEquals(4, transport.reads.get());
+	}
+
+	@Test
+	public void extendedProfile() throws Exception {
+		VersionTransport transport = new VersionTransport();
+		CachingExtProfileService service = new CachingExtProfileService("http://localhost", transport, 10, 60000,
+				10, 60000);
+
+		int a = version(service.getMyExtendedProfile("p", "a"));
+		int b = version(service.getMyExtendedProfile("p", "b"));
+		int all = version(service.getMyExtendedProfiles("a").get(0));
+		int other = version(service.getExtendedProfile("a", "p", "b"));
+		Assert.assertEquals(4, transport.reads.get());
+
+		// an update by a invalidates the entries of a only
+		service.updateMyExtendedProfile("p", Collections.<String, Object> singletonMap("x", 1), "a");
+		Assert.assertFalse(a == version(service.getMyExtendedProfile("p", "a")));
+		Assert.assertFalse(all == version(service.getMyExtendedProfiles("a").get(0)));
+		// the profile of the owner read by userId too
+		Assert.assertFalse(other == version(service.getExtendedProfile("a", "p", "b")));
+		Assert.assertEquals(b, version(service.getMyExtendedProfile("p", "b")));
+		Assert.assertEquals(7, transport.reads.get());
+
+		a = version(service.getMyExtendedProfile("p", "a"));
+		service.deleteMyExtendedProfile("p", "a");
+		Assert.assertFalse(a == version(service.getMyExtendedProfile("p", "a")));
+		Assert.assertEquals(b, version(service.getMyExtendedProfile("p", "b")));
+
+		other = version(service.getExtendedProfile("1", "p", "a"));
+		Assert.assertEquals(other, version(service.getExtendedProfile("1", "p", "a")));
+		service.updateExtendedProfile("1", "p", Collections.<String, Object> singletonMap("x", 1), "a");
+		Assert.assertFalse(other == version(service.getExtendedProfile("1", "p", "a")));
+	}
+}
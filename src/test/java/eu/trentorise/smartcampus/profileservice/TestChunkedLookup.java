@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestChunkedLookup {
+
+	/**
+	 * the items are the ids themselves, a chunk containing "slow" is answered
+	 * last, one containing "denied" or "failed" fails
+	 */
+	private static class IdLookup extends ChunkedLookup<String> {
+
+		final List<List<String>> chunks = Collections.synchronizedList(new ArrayList<List<String>>());
+		final boolean duplicates;
+
+		IdLookup(boolean duplicates) {
+			this.duplicates = duplicates;
+		}
+
+		@Override
+		protected List<String> load(List<String> userIds) throws SecurityException, ProfileServiceException {
+			chunks.add(new ArrayList<String>(userIds));
+			if (userIds.contains("denied")) throw new SecurityException();
+			if (userIds.contains("failed")) throw new ProfileServiceException("failed");
+			if (userIds.contains("slow")) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					throw new ProfileServiceException(e);
+				}
+			}
+			List<String> items = new ArrayList<String>(userIds);
+			// the server answers in its own order
+			Collections.reverse(items);
+			if (duplicates) items.addAll(userIds);
+			return items;
+		}
+
+		@Override
+		protected String userId(String item) {
+			return item;
+		}
+	}
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void chunks() throws Exception {
+		IdLookup lookup = new IdLookup(false);
+		List<String> result = lookup.loadAll(Arrays.asList("1", "2", "3", "4", "5"), 2, null);
+		Assert.assertEquals(Arrays.asList("1", "2", "3", "4", "5"), result);
+		Assert.assertEquals(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3", "4"), Arrays.asList("5")),
+				lookup.chunks);
+
+		// a chunk size multiple of the ids
+		lookup = new IdLookup(false);
+		Assert.assertEquals(4, lookup.loadAll(Arrays.asList("1", "2", "3", "4"), 2, null).size());
+		Assert.assertEquals(2, lookup.chunks.size());
+	}
+
+	@Test
+	public void duplicates() throws Exception {
+		IdLookup lookup = new IdLookup(true);
+		List<String> result = lookup.loadAll(Arrays.asList("1", "2", "1", "3", "2"), 2, executor);
+		// duplicate ids are requested once, duplicate items are discarded
+		Assert.assertEquals(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3")), sorted(lookup.chunks));
+		Assert.assertEquals(Arrays.asList("1", "2", "3"), result);
+	}
+
+	@Test
+	public void concurrentOrder() throws Exception {
+		IdLookup lookup = new IdLookup(false);
+		// the first chunk completes last
+		List<String> ids = Arrays.asList("slow", "a", "b", "c", "d", "e");
+		Assert.assertEquals(ids, lookup.loadAll(ids, 2, executor));
+		Assert.assertEquals(3, lookup.chunks.size());
+	}
+
+	@Test
+	public void failures() throws Exception {
+		try {
+			new IdLookup(false).loadAll(Arrays.asList("1", "2", "denied"), 2, executor);
+			Assert.fail();
+		} catch (SecurityException e) {
+			// unwrapped from the ExecutionException
+		}
+		try {
+			new IdLookup(false).loadAll(Arrays.asList("1", "2", "failed"), 2, executor);
+			Assert.fail();
+		} catch (ProfileServiceException e) {
+			Assert.assertEquals("failed", e.getMessage());
+		}
+	}
+
+	private static List<List<String>> sorted(List<List<String>> chunks) {
+		List<List<String>> sorted = new ArrayList<List<String>>(chunks);
+		Collections.sort(sorted, (a, b) -> a.get(0).compareTo(b.get(0)));
+		return sorted;
+	}
+}
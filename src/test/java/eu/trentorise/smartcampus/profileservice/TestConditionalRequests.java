@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import eu.trentorise.smartcampus.profileservice.http.PooledHttpTransport;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestConditionalRequests {
+
+	private static final String ETAG = "\"v1\"";
+
+	private HttpServer server;
+	private PooledHttpTransport transport;
+	private String host;
+	private final AtomicInteger full = new AtomicInteger();
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	@Before
+	public void start() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModified.incrementAndGet();
+				// the server keeps the connection alive only once the request
+				// body has been drained
+				exchange.getRequestBody().close();
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			full.incrementAndGet();
+			String path = exchange.getRequestURI().getPath();
+			String json;
+			if (path.startsWith("/extprofile/me")) {
+				json = "{\"profiles\":[{\"userId\":\"1\",\"profileId\":\"p\",\"content\":{\"a\":1}}]}";
+			} else if (path.startsWith("/extprofile")) {
+				json = "{\"userId\":\"1\",\"profileId\":\"p\",\"content\":{\"a\":1}}";
+			} else {
+				json = "{\"userId\":\"1\",\"name\":\"Mario\"}";
+			}
+			byte[] body = json.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		});
+		server.start();
+		host = "http://localhost:" + server.getAddress().getPort() + "/";
+		transport = PooledHttpTransport.builder().build();
+	}
+
+	@After
+	public void stop() throws Exception {
+		transport.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void basicProfile() throws Exception {
+		CachingBasicProfileService service = new CachingBasicProfileService(host, transport, 10, 1);
+		service.setConditionalRequests(60000);
+
+		BasicProfile profile = service.getBasicProfile("1", "token");
+		Assert.assertEquals("Mario", profile.getName());
+		Thread.sleep(10);
+		// expired: revalidated without body
+		Assert.assertSame(profile, service.getBasicProfile("1", "token"));
+		Assert.assertEquals(1, full.get());
+		Assert.assertEquals(1, notModified.get());
+	}
+
+	@Test
+	public void extendedProfiles() throws Exception {
+		CachingExtProfileService service = new CachingExtProfileService(host, transport, 10, 1, 10, 1);
+		service.setConditionalRequests(60000);
+
+		ExtendedProfile profile = service.getExtendedProfile("1", "p", "token");
+		Assert.assertEquals(1, ((Number) profile.getContent().get("a")).intValue());
+		List<ExtendedProfile> mine = service.getMyExtendedProfiles("token");
+		Assert.assertEquals(1, mine.size());
+		Thread.sleep(10);
+		Assert.assertSame(profile, service.getExtendedProfile("1", "p", "token"));
+		Assert.assertSame(mine.get(0), service.getMyExtendedProfiles("token").get(0));
+		Assert.assertEquals(2, full.get());
+		Assert.assertEquals(2, notModified.get());
+	}
+
+	@Test
+	public void unconditional() throws Exception {
+		CachingBasicProfileService service = new CachingBasicProfileService(host, transport, 10, 1);
+		service.getBasicProfile("1", "token");
+		Thread.sleep(10);
+		service.getBasicProfile("1", "token");
+		Assert.assertEquals(2, full.get());
+		Assert.assertEquals(0, notModified.get());
+	}
+}
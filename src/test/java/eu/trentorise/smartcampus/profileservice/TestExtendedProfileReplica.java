@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestExtendedProfileReplica {
+
+	/** answers with the profiles in <code>json</code>, counting the calls */
+	private static class ProfilesTransport implements ProfileTransport {
+
+		volatile String json;
+		volatile Runnable during;
+		int calls;
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls++;
+			if (during != null) during.run();
+			return json;
+		}
+	}
+
+	private static String profile(String userId, String city, int age) {
+		return "{\"userId\":\"" + userId + "\",\"profileId\":\"p\",\"content\":{\"city\":\"" + city + "\",\"age\":"
+				+ age + "}}";
+	}
+
+	private static Map<String, Object> attributes(Object... pairs) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < pairs.length; i += 2) {
+			map.put((String) pairs[i], pairs[i + 1]);
+		}
+		return map;
+	}
+
+	private static ExtendedProfileReplica load(ProfilesTransport transport) throws Exception {
+		transport.json = "{\"profiles\":[" + profile("1", "Trento", 30) + "," + profile("2", "Trento", 40) + ","
+				+ profile("3", "Rovereto", 30) + "]}";
+		ExtendedProfileReplica replica = new ExtendedProfileReplica(new ExtProfileService("http://localhost",
+				transport), "p", Arrays.asList("city"));
+		Assert.assertEquals(3, replica.load("token"));
+		return replica;
+	}
+
+	@Test
+	public void query() throws Exception {
+		ProfilesTransport transport = new ProfilesTransport();
+		ExtendedProfileReplica replica = load(transport);
+		int calls = transport.calls;
+
+		Assert.assertEquals(2, replica.getExtendedProfilesByAttributes(attributes("city", "Trento")).size());
+		// indexed and not indexed attributes, numbers compared by value
+		List<ExtendedProfile> result = replica.getExtendedProfilesByAttributes(attributes("city", "Trento", "age", 30L));
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("1", result.get(0).getUserId());
+		// scan on a not indexed attribute
+		Assert.assertEquals(2, replica.getExtendedProfilesByAttributes(attributes("age", 30)).size());
+		Assert.assertEquals(0, replica.getExtendedProfilesByAttributes(attributes("city", "Bolzano")).size());
+		Assert.assertEquals(3, replica.getExtendedProfilesByAttributes(attributes()).size());
+		Assert.assertEquals(calls, transport.calls);
+	}
+
+	@Test
+	public void refresh() throws Exception {
+		ProfilesTransport transport = new ProfilesTransport();
+		ExtendedProfileReplica replica = load(transport);
+
+		// user 1 moved, user 2 deleted
+		transport.json = "{\"profiles\":[" + profile("1", "Rovereto", 30) + "]}";
+		replica.refresh(Arrays.asList("1", "2"), "token");
+		Assert.assertEquals(2, replica.size());
+		Assert.assertNull(replica.getExtendedProfile("2"));
+		Assert.assertEquals(0, replica.getExtendedProfilesByAttributes(attributes("city", "Trento")).size());
+		Assert.assertEquals(2, replica.getExtendedProfilesByAttributes(attributes("city", "Rovereto")).size());
+	}
+
+	@Test
+	public void apply() throws Exception {
+		ProfilesTransport transport = new ProfilesTransport();
+		ExtendedProfileReplica replica = load(transport);
+
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("city", "Trento");
+		content.put("age", 50);
+		replica.apply(Arrays.asList(
+				new WriteResult(ExtendedProfileWrite.create("4", "p", content), WriteResult.Status.SUCCESS, 1, null),
+				new WriteResult(ExtendedProfileWrite.delete("1", "p"), WriteResult.Status.RETRIED, 2, null),
+				new WriteResult(ExtendedProfileWrite.delete("2", "p"), WriteResult.Status.FAILURE, 3,
+						new ProfileServiceException("failure")),
+				new WriteResult(ExtendedProfileWrite.delete("3", "q"), WriteResult.Status.SUCCESS, 1, null)));
+
+		Assert.assertEquals(3, replica.size());
+		Assert.assertNull(replica.getExtendedProfile("1"));
+		List<ExtendedProfile> result = replica.getExtendedProfilesByAttributes(attributes("city", "Trento"));
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(1, replica.getExtendedProfilesByAttributes(attributes("age", 50L)).size());
+	}
+
+	@Test
+	public void changesDuringLoad() throws Exception {
+		ProfilesTransport transport = new ProfilesTransport();
+		final ExtendedProfileReplica replica = load(transport);
+
+		// the load reads the profiles as they were before the changes
+		transport.during = () -> {
+			ExtendedProfile profile = new ExtendedProfile();
+			profile.setUserId("1");
+			profile.setProfileId("p");
+			profile.setContent(attributes("city", "Bolzano", "age", 30));
+			replica.update(profile);
+			replica.remove("2");
+			profile = new ExtendedProfile();
+			profile.setUserId("4");
+			profile.setProfileId("p");
+			profile.setContent(attributes("city", "Trento", "age", 20));
+			replica.update(profile);
+		};
+		Assert.assertEquals(3, replica.load("token"));
+		Assert.assertEquals(3, replica.size());
+		Assert.assertNull(replica.getExtendedProfile("2"));
+		Assert.assertEquals("Bolzano", replica.getExtendedProfile("1").getContent().get("city"));
+		List<ExtendedProfile> result = replica.getExtendedProfilesByAttributes(attributes("city", "Trento"));
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("4", result.get(0).getUserId());
+
+		// the changes are no longer recorded once the load completes
+		transport.during = null;
+		replica.remove("4");
+		Assert.assertEquals(3, replica.load("token"));
+		Assert.assertNotNull(replica.getExtendedProfile("2"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherProfileId() throws Exception {
+		ExtendedProfileReplica replica = new ExtendedProfileReplica(new ExtProfileService("http://localhost",
+				new ProfilesTransport()), "p", Collections.<String> emptyList());
+		ExtendedProfile profile = new ExtendedProfile();
+		profile.setUserId("1");
+		profile.setProfileId("q");
+		replica.update(profile);
+	}
+}
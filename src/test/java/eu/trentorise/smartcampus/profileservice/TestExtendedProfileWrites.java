@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.CircuitOpenException;
+import eu.trentorise.smartcampus.profileservice.http.HttpStatusException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.RetryPolicy;
+
+public class TestExtendedProfileWrites {
+
+	private static final Map<String, Object> CONTENT = Collections.<String, Object> singletonMap("k", "v");
+
+	/** fails the first call of the users starting with "flaky", always fails the users starting with "bad" */
+	private static class FlakyTransport implements ProfileTransport {
+
+		final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls.putIfAbsent(request.getPath(), new AtomicInteger());
+			int n = calls.get(request.getPath()).incrementAndGet();
+			if (request.getPath().contains("/flaky") && n == 1) throw new HttpStatusException(503, "Unavailable");
+			if (request.getPath().contains("/bad")) throw new HttpStatusException(400, "Bad Request");
+			return "";
+		}
+	}
+
+	@Test
+	public void results() throws Exception {
+		FlakyTransport transport = new FlakyTransport();
+		ExtProfileService service = new ExtProfileService("http://localhost", transport);
+
+		List<ExtendedProfileWrite> writes = new ArrayList<ExtendedProfileWrite>();
+		for (int i = 0; i < 20; i++) {
+			writes.add(ExtendedProfileWrite.update("" + i, "p", CONTENT));
+		}
+		writes.add(ExtendedProfileWrite.update("flaky", "p", CONTENT));
+		writes.add(ExtendedProfileWrite.create("flaky2", "p", CONTENT));
+		writes.add(ExtendedProfileWrite.delete("bad", "p"));
+		writes.add(ExtendedProfileWrite.delete(null, "p"));
+
+		List<WriteResult> results = service.writeExtendedProfiles(writes, "token", 4);
+		Assert.assertEquals(writes.size(), results.size());
+		for (int i = 0; i < 20; i++) {
+			Assert.assertSame(writes.get(i), results.get(i).getWrite());
+			Assert.assertEquals(WriteResult.Status.SUCCESS, results.get(i).getStatus());
+		}
+		Assert.assertEquals(WriteResult.Status.RETRIED, results.get(20).getStatus());
+		Assert.assertEquals(2, results.get(20).getAttempts());
+		// creations are not retried
+		Assert.assertEquals(WriteResult.Status.FAILURE, results.get(21).getStatus());
+		Assert.assertEquals(1, results.get(21).getAttempts());
+		// client errors are not retried
+		Assert.assertEquals(1, results.get(22).getAttempts());
+		Assert.assertTrue(results.get(22).getCause() instanceof ProfileServiceException);
+		Assert.assertEquals(0, results.get(23).getAttempts());
+	}
+
+	@Test
+	public void rejectedToken() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		ExtProfileService service = new ExtProfileService("http://localhost", new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) {
+				calls.incrementAndGet();
+				throw new SecurityException();
+			}
+		});
+		List<ExtendedProfileWrite> writes = new ArrayList<ExtendedProfileWrite>();
+		for (int i = 0; i < 10; i++) {
+			writes.add(ExtendedProfileWrite.delete("" + i, "p"));
+		}
+		List<WriteResult> results = service.writeExtendedProfiles(writes, "token", 1);
+		Assert.assertEquals(1, calls.get());
+		for (WriteResult result : results) {
+			Assert.assertTrue(result.getCause() instanceof SecurityException);
+		}
+	}
+
+	@Test
+	public void retryBudget() throws Exception {
+		FlakyTransport transport = new FlakyTransport();
+		ExtProfileService service = new ExtProfileService("http://localhost", transport);
+		// a single retry for the whole batch
+		service.setRetryPolicy(RetryPolicy.builder().initialDelay(1).budget(0, 1).build());
+
+		List<ExtendedProfileWrite> writes = new ArrayList<ExtendedProfileWrite>();
+		for (int i = 0; i < 5; i++) {
+			writes.add(ExtendedProfileWrite.update("flaky" + i, "p", CONTENT));
+		}
+		int retried = 0;
+		for (WriteResult result : service.writeExtendedProfiles(writes, "token", 1)) {
+			if (result.getStatus() == WriteResult.Status.RETRIED) retried++;
+		}
+		Assert.assertEquals(1, retried);
+	}
+
+	@Test
+	public void circuitOpenNotRetried() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		ExtProfileService service = new ExtProfileService("http://localhost", new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) throws RemoteException {
+				calls.incrementAndGet();
+				throw new CircuitOpenException("extprofile");
+			}
+		});
+		List<WriteResult> results = service.writeExtendedProfiles(
+				Collections.singletonList(ExtendedProfileWrite.delete("1", "p")), "token", 1);
+		Assert.assertEquals(1, calls.get());
+		Assert.assertEquals(WriteResult.Status.FAILURE, results.get(0).getStatus());
+	}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestProfileExecutors {
+
+	@Test
+	public void concurrencyLimit() throws Exception {
+		ExecutorService executor = ProfileExecutors.newVirtualThreadExecutor(3);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 20; i++) {
+				final int n = i;
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						int now = running.incrementAndGet();
+						int max;
+						while ((max = maxRunning.get()) < now && !maxRunning.compareAndSet(max, now)) {
+						}
+						Thread.sleep(10);
+						running.decrementAndGet();
+						return n;
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				Assert.assertEquals(i, (int) futures.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertTrue(maxRunning.get() <= 3);
+		Assert.assertTrue(maxRunning.get() > 1);
+	}
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.stream.Collectors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+public class TestProfileIterator {
+
+	private static ProfileTransport directory(final int size) {
+		return new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) {
+				StringBuilder json = new StringBuilder("{\"profiles\":[");
+				for (int i = 0; i < size; i++) {
+					if (i > 0) json.append(',');
+					json.append("{\"userId\":\"").append(i).append("\"}");
+				}
+				return json.append("]}").toString();
+			}
+		};
+	}
+
+	@Test
+	public void pages() throws Exception {
+		BasicProfileService service = new BasicProfileService("http://localhost", directory(10));
+		ProfileIterator<BasicProfile> profiles = service.iterateBasicProfiles(null, "token", 3);
+		int count = 0;
+		while (profiles.hasNext()) {
+			Assert.assertEquals("" + count++, profiles.next().getUserId());
+		}
+		Assert.assertEquals(10, count);
+		Assert.assertFalse(profiles.hasNext());
+	}
+
+	@Test
+	public void stream() throws Exception {
+		BasicProfileService service = new BasicProfileService("http://localhost", directory(1200));
+		Assert.assertEquals(1200, service.streamBasicProfiles(null, "token").collect(Collectors.toList()).size());
+		Assert.assertEquals("0,1", service.streamBasicProfiles(null, "token").limit(2)
+				.map(BasicProfile::getUserId).collect(Collectors.joining(",")));
+	}
+
+	@Test
+	public void failure() throws Exception {
+		BasicProfileService service = new BasicProfileService("http://localhost", new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) throws RemoteException {
+				throw new RemoteException("unavailable");
+			}
+		});
+		try {
+			service.iterateBasicProfiles(null, "token", 3).hasNext();
+			Assert.fail();
+		} catch (ProfileIterationException e) {
+			Assert.assertNotNull(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+public class TestProfileNameIndex {
+
+	private static final String[][] NAMES = { { "Mario", "Rossi" }, { "Maria", "Bianchi" },
+			{ "Nicol\u00f2", "Rossi" }, { "Anna Maria", "Verdi" }, { "Marco", "De Rossi" } };
+
+	private static class DirectoryTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls.incrementAndGet();
+			StringBuilder json = new StringBuilder("{\"profiles\":[");
+			for (int i = 0; i < NAMES.length; i++) {
+				if (i > 0) json.append(',');
+				json.append("{\"userId\":\"").append(i).append("\",\"name\":\"").append(NAMES[i][0])
+						.append("\",\"surname\":\"").append(NAMES[i][1]).append("\"}");
+			}
+			return json.append("]}").toString();
+		}
+	}
+
+	private static String names(List<BasicProfile> profiles) {
+		StringBuilder names = new StringBuilder();
+		for (BasicProfile profile : profiles) {
+			if (names.length() > 0) names.append(',');
+			names.append(profile.getUserId());
+		}
+		return names.toString();
+	}
+
+	@Test
+	public void search() throws Exception {
+		DirectoryTransport transport = new DirectoryTransport();
+		ProfileNameIndex index = new ProfileNameIndex(new BasicProfileService("http://localhost", transport));
+		Assert.assertEquals(5, index.load("token"));
+		Assert.assertEquals(1, transport.calls.get());
+
+		// alphabetical order of the full name
+		Assert.assertEquals("3,4,1,0,2", names(index.search("", 10)));
+		Assert.assertEquals("3,4,1,0", names(index.search("mar", 10)));
+		Assert.assertEquals("3,4", names(index.search("mar", 2)));
+		Assert.assertEquals("4,0,2", names(index.search("Rossi", 10)));
+		Assert.assertEquals("0", names(index.search("ross mario", 10)));
+		// case and accents ignored
+		Assert.assertEquals("2", names(index.search("NICOLO", 10)));
+		Assert.assertEquals("", names(index.search("marx", 10)));
+		Assert.assertEquals(1, transport.calls.get());
+	}
+
+	@Test
+	public void refresh() throws Exception {
+		DirectoryTransport transport = new DirectoryTransport();
+		ProfileNameIndex index = new ProfileNameIndex(new BasicProfileService("http://localhost", transport));
+		Assert.assertEquals(0, index.search("mar", 10).size());
+		index.startRefresh("token", 20);
+		try {
+			for (int i = 0; i < 200 && transport.calls.get() < 2; i++) {
+				Thread.sleep(10);
+			}
+		} finally {
+			index.stopRefresh();
+		}
+		Assert.assertTrue(transport.calls.get() >= 2);
+		Assert.assertEquals(5, index.size());
+	}
+}
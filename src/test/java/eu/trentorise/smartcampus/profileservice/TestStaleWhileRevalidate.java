@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.http.HttpStatusException;
+import eu.trentorise.smartcampus.profileservice.http.ProfileRequest;
+import eu.trentorise.smartcampus.profileservice.http.ProfileTransport;
+import eu.trentorise.smartcampus.profileservice.http.RetryPolicy;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+
+public class TestStaleWhileRevalidate {
+
+	/** answers with the number of the call as name, fails while <code>failing</code> */
+	private static class VersionTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+		volatile boolean failing;
+		/** if set, the reads wait for it */
+		volatile CountDownLatch gate;
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			int version = calls.incrementAndGet();
+			if (failing) throw new HttpStatusException(503, "failure");
+			CountDownLatch reads = gate;
+			if (reads != null && request.getMethod() == ProfileRequest.Method.GET) {
+				try {
+					reads.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new RemoteException(e.getMessage(), e);
+				}
+			}
+			if (request.getPath().startsWith("extprofile")) {
+				return "{\"userId\":\"1\",\"profileId\":\"p\",\"content\":{\"v\":" + version + "}}";
+			}
+			return "{\"userId\":\"1\",\"name\":\"v" + version + "\"}";
+		}
+	}
+
+	private static void awaitCalls(VersionTransport transport, int calls) throws InterruptedException {
+		for (int i = 0; i < 200 && transport.calls.get() < calls; i++) {
+			Thread.sleep(10);
+		}
+		// let the refresh store the result
+		Thread.sleep(20);
+	}
+
+	@Test
+	public void basicProfile() throws Exception {
+		VersionTransport transport = new VersionTransport();
+		CachingBasicProfileService service = new CachingBasicProfileService("http://localhost", transport, 10, 50);
+		service.setRetryPolicy(RetryPolicy.builder().maxRetries(0).build());
+		service.setStaleWhileRevalidate(5000, 2);
+
+		Assert.assertEquals("v1", service.getBasicProfile("1", "token").getName());
+		Thread.sleep(80);
+		// expired: the stale profile is returned and refreshed
+		Assert.assertEquals("v1", service.getBasicProfile("1", "token").getName());
+		awaitCalls(transport, 2);
+		Assert.assertEquals("v2", service.getBasicProfile("1", "token").getName());
+
+		// a failed refresh keeps the stale profile
+		transport.failing = true;
+		Thread.sleep(80);
+		Assert.assertEquals("v2", service.getBasicProfile("1", "token").getName());
+		awaitCalls(transport, 3);
+		Assert.assertEquals("v2", service.getBasicProfile("1", "token").getName());
+	}
+
+	@Test
+	public void extendedProfile() throws Exception {
+		VersionTransport transport = new VersionTransport();
+		CachingExtProfileService service = new CachingExtProfileService("http://localhost", transport, 10, 50, 10,
+				50);
+		service.setRetryPolicy(RetryPolicy.builder().maxRetries(0).build());
+		service.setStaleWhileRevalidate(5000, 2);
+
+		service.getExtendedProfile("1", "p", "token");
+		Assert.assertEquals(1, transport.calls.get());
+		service.getExtendedProfile("1", "p", "token");
+		Assert.assertEquals(1, transport.calls.get());
+		Thread.sleep(80);
+		service.getExtendedProfile("1", "p", "token");
+		awaitCalls(transport, 2);
+		Assert.assertEquals(2, transport.calls.get());
+
+		// writes drop the cached profile
+		service.deleteExtendedProfile("1", "p", "token");
+		service.getExtendedProfile("1", "p", "token");
+		Assert.assertEquals(4, transport.calls.get());
+	}
+
+	@Test
+	public void writeDuringRefresh() throws Exception {
+		VersionTransport transport = new VersionTransport();
+		CachingBasicProfileService basic = new CachingBasicProfileService("http://localhost", transport, 10, 50);
+		basic.setStaleWhileRevalidate(5000, 2);
+		CachingExtProfileService ext = new CachingExtProfileService("http://localhost", transport, 10, 50, 10, 50);
+		ext.setStaleWhileRevalidate(5000, 2);
+
+		BasicProfile profile = basic.getBasicProfile("1", "token");
+		ext.getExtendedProfile("1", "p", "token");
+		Thread.sleep(80);
+
+		// the refreshes read the profiles before the writes
+		transport.gate = new CountDownLatch(1);
+		Assert.assertSame(profile, basic.getBasicProfile("1", "token"));
+		ext.getExtendedProfile("1", "p", "token");
+		awaitCalls(transport, 4);
+		basic.invalidate(profile);
+		ext.updateExtendedProfile("1", "p", Collections.<String, Object> singletonMap("v", 0), "token");
+		CountDownLatch gate = transport.gate;
+		transport.gate = null;
+		gate.countDown();
+		awaitCalls(transport, 5);
+
+		// the written profiles are read again, not the results of the refreshes
+		Assert.assertEquals("v6", basic.getBasicProfile("1", "token").getName());
+		Assert.assertEquals(7, ((Number) ext.getExtendedProfile("1", "p", "token").getContent().get("v")).intValue());
+	}
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestProfileCache {
+
+	@Test
+	public void lruEviction() {
+		ProfileCache<String, String> cache = new ProfileCache<String, String>(2, 60000);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		// touch a, so that b is the least recently used
+		Assert.assertEquals("A", cache.get("a"));
+		cache.put("c", "C");
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals("A", cache.get("a"));
+		Assert.assertEquals("C", cache.get("c"));
+		Assert.assertEquals(1, cache.getStats().getEvictionCount());
+	}
+
+	@Test
+	public void expiration() throws InterruptedException {
+		ProfileCache<String, String> cache = new ProfileCache<String, String>(10, 60000);
+		cache.put("a", "A", 1);
+		cache.put("b", "B");
+		Thread.sleep(10);
+
+		Assert.assertNull(cache.get("a"));
+		Assert.assertEquals("B", cache.get("b"));
+		Assert.assertEquals(1, cache.getStats().getHitCount());
+		Assert.assertEquals(1, cache.getStats().getMissCount());
+	}
+}
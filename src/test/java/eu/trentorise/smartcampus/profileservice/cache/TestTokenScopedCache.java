@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.cache;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TestTokenScopedCache {
+
+	@Test
+	public void tokenIsolation() {
+		TokenScopedCache<String> cache = new TokenScopedCache<String>(10, 60000);
+		cache.put("a", "me", "A");
+		cache.put("b", "me", "B");
+
+		Assert.assertEquals("A", cache.get("a", "me"));
+		Assert.assertEquals("B", cache.get("b", "me"));
+		Assert.assertNull(cache.get("c", "me"));
+		Assert.assertNull(cache.get(null, "me"));
+		// the empty token is a token like the others
+		Assert.assertNull(cache.get("", "me"));
+
+		// invalidating the entry of a token keeps the other tokens
+		cache.invalidate("a", "me");
+		Assert.assertNull(cache.get("a", "me"));
+		Assert.assertEquals("B", cache.get("b", "me"));
+		Assert.assertNull(cache.getStale("a", "me"));
+	}
+
+	@Test
+	public void hash() {
+		String hash = TokenScopedCache.hash("token");
+		Assert.assertEquals(64, hash.length());
+		Assert.assertTrue(hash.matches("[0-9a-f]+"));
+		Assert.assertFalse(hash.contains("token"));
+		Assert.assertEquals(hash, TokenScopedCache.hash("token"));
+		Assert.assertFalse(hash.equals(TokenScopedCache.hash("token2")));
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+public class TestCircuitBreakerTransport {
+
+	private static final String HOST = "http://localhost/";
+
+	/** fails with the given status while <code>status</code> is not 0 */
+	private static class SwitchTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+		volatile int status;
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls.incrementAndGet();
+			if (status != 0) throw new HttpStatusException(status, "failure");
+			return "ok";
+		}
+	}
+
+	private static CircuitBreakerConfig config() {
+		return CircuitBreakerConfig.builder().windowSize(4).minimumCalls(4).failureRateThreshold(0.5)
+				.openDuration(50).halfOpenCalls(1).build();
+	}
+
+	private static void call(ProfileTransport transport, String path) throws RemoteException {
+		try {
+			transport.execute(ProfileRequest.get(HOST, path, "t"));
+		} catch (HttpStatusException e) {
+			// counted by the breaker
+		}
+	}
+
+	@Test
+	public void openAndRecover() throws Exception {
+		SwitchTransport server = new SwitchTransport();
+		CircuitBreakerTransport transport = new CircuitBreakerTransport(server, config());
+
+		server.status = 503;
+		for (int i = 0; i < 4; i++) {
+			call(transport, "basicprofile/all/" + i);
+		}
+		Assert.assertEquals(CircuitBreaker.State.OPEN, transport.getState("basicprofile"));
+
+		// fail fast without contacting the server
+		try {
+			transport.execute(ProfileRequest.get(HOST, "basicprofile/all/1", "t"));
+			Assert.fail();
+		} catch (CircuitOpenException e) {
+			Assert.assertEquals("basicprofile", e.getFamily());
+		}
+		Assert.assertEquals(4, server.calls.get());
+
+		// other families are not affected
+		server.status = 0;
+		Assert.assertEquals("ok", transport.execute(ProfileRequest.get(HOST, "extprofile/me", "t")));
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, transport.getState("extprofile"));
+
+		// a successful probe closes the circuit
+		Thread.sleep(80);
+		Assert.assertEquals("ok", transport.execute(ProfileRequest.get(HOST, "basicprofile/all/1", "t")));
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, transport.getState("basicprofile"));
+	}
+
+	@Test
+	public void failedProbe() throws Exception {
+		SwitchTransport server = new SwitchTransport();
+		CircuitBreakerTransport transport = new CircuitBreakerTransport(server, config());
+
+		server.status = 500;
+		for (int i = 0; i < 4; i++) {
+			call(transport, "extprofile/me");
+		}
+		Thread.sleep(80);
+		call(transport, "extprofile/me");
+		Assert.assertEquals(CircuitBreaker.State.OPEN, transport.getState("extprofile"));
+	}
+
+	@Test
+	public void earlierCalls() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(config());
+		// a slow call started while closed
+		CircuitBreaker.Permit late = breaker.tryAcquire();
+		for (int i = 0; i < 4; i++) {
+			breaker.onResult(breaker.tryAcquire(), true, 0);
+		}
+		Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		Assert.assertNull(breaker.tryAcquire());
+
+		Thread.sleep(80);
+		CircuitBreaker.Permit probe = breaker.tryAcquire();
+		Assert.assertNotNull(probe);
+		Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// the earlier call is not a probe
+		breaker.onResult(late, false, 0);
+		Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		Assert.assertNull(breaker.tryAcquire());
+		breaker.onResult(probe, false, 0);
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void clientErrors() throws Exception {
+		SwitchTransport server = new SwitchTransport();
+		CircuitBreakerTransport transport = new CircuitBreakerTransport(server, config());
+
+		server.status = 404;
+		for (int i = 0; i < 10; i++) {
+			call(transport, "basicprofile/all/" + i);
+		}
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, transport.getState("basicprofile"));
+		Assert.assertEquals(10, server.calls.get());
+	}
+
+	@Test
+	public void sharedCircuits() throws Exception {
+		SwitchTransport server = new SwitchTransport();
+		CircuitBreakerTransport reads = new CircuitBreakerTransport(server, config());
+		CircuitBreakerTransport writes = new CircuitBreakerTransport(server, reads);
+
+		server.status = 503;
+		for (int i = 0; i < 4; i++) {
+			call(reads, "extprofile/me");
+		}
+		Assert.assertEquals(CircuitBreaker.State.OPEN, writes.getState("extprofile"));
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+public class TestCoalescingTransport {
+
+	private static final String HOST = "http://localhost/";
+	private static final int CALLERS = 5;
+
+	/** blocks every call until released, then answers or fails */
+	private static class BlockingTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final int status;
+		/** the first call fails with the deadline of its caller */
+		volatile boolean expireFirst;
+
+		BlockingTransport(int status) {
+			this.status = status;
+		}
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new RemoteException(e.getMessage(), e);
+			}
+			if (status != 200) throw new HttpStatusException(status, "failure");
+			if (expireFirst && calls.get() == 1) throw new DeadlineExceededException();
+			return "{\"token\":\"" + request.getToken() + "\"}";
+		}
+	}
+
+	private static final ResponseReader<String> READER = new ResponseReader<String>() {
+		@Override
+		public String read(InputStream content) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int b;
+			while ((b = content.read()) != -1) {
+				out.write(b);
+			}
+			return out.toString("UTF-8");
+		}
+	};
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	private List<Future<String>> submit(final ProfileTransport transport, final String... tokens) {
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (final String token : tokens) {
+			results.add(executor.submit(() -> transport.execute(ProfileRequest.get(HOST, "basicprofile/me", token),
+					READER)));
+		}
+		return results;
+	}
+
+	private static void awaitCalls(BlockingTransport remote, int calls) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while (remote.calls.get() < calls && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void identicalReads() throws Exception {
+		BlockingTransport remote = new BlockingTransport(200);
+		CoalescingTransport transport = new CoalescingTransport(remote);
+		String[] tokens = new String[CALLERS];
+		Arrays.fill(tokens, "t");
+		List<Future<String>> results = submit(transport, tokens);
+		awaitCalls(remote, 1);
+		// let the other callers join the call in flight
+		Thread.sleep(200);
+		Assert.assertEquals(1, transport.getInFlightCount());
+		remote.release.countDown();
+		for (Future<String> result : results) {
+			Assert.assertEquals("{\"token\":\"t\"}", result.get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(1, remote.calls.get());
+		Assert.assertEquals(0, transport.getInFlightCount());
+	}
+
+	@Test
+	public void sharedFailure() throws Exception {
+		BlockingTransport remote = new BlockingTransport(503);
+		CoalescingTransport transport = new CoalescingTransport(remote);
+		String[] tokens = new String[CALLERS];
+		Arrays.fill(tokens, "t");
+		List<Future<String>> results = submit(transport, tokens);
+		awaitCalls(remote, 1);
+		Thread.sleep(200);
+		remote.release.countDown();
+		for (Future<String> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertEquals(503, ((HttpStatusException) e.getCause()).getStatus());
+			}
+		}
+		Assert.assertEquals(1, remote.calls.get());
+	}
+
+	@Test
+	public void differentTokens() throws Exception {
+		BlockingTransport remote = new BlockingTransport(200);
+		CoalescingTransport transport = new CoalescingTransport(remote);
+		List<Future<String>> results = submit(transport, "a", "b");
+		// both calls reach the remote transport while the other is in flight
+		awaitCalls(remote, 2);
+		Assert.assertEquals(2, remote.calls.get());
+		remote.release.countDown();
+		Assert.assertEquals("{\"token\":\"a\"}", results.get(0).get(5, TimeUnit.SECONDS));
+		Assert.assertEquals("{\"token\":\"b\"}", results.get(1).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void largeBodiesNotShared() throws Exception {
+		BlockingTransport remote = new BlockingTransport(200);
+		CoalescingTransport transport = new CoalescingTransport(remote, 4);
+		List<Future<String>> results = submit(transport, "t", "t");
+		awaitCalls(remote, 1);
+		Thread.sleep(200);
+		remote.release.countDown();
+		// the body is streamed to the first caller, the other one sends its own request
+		for (Future<String> result : results) {
+			Assert.assertEquals("{\"token\":\"t\"}", result.get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(2, remote.calls.get());
+	}
+
+	@Test
+	public void waitingCallerDeadline() throws Exception {
+		BlockingTransport remote = new BlockingTransport(200);
+		CoalescingTransport transport = new CoalescingTransport(remote);
+		List<Future<String>> results = submit(transport, "t");
+		awaitCalls(remote, 1);
+		long start = System.nanoTime();
+		try (Deadline deadline = Deadline.after(50)) {
+			Assert.assertSame(deadline, Deadline.current());
+			transport.execute(ProfileRequest.get(HOST, "basicprofile/me", "t"), READER);
+			Assert.fail();
+		} catch (DeadlineExceededException e) {
+			Assert.assertTrue(System.nanoTime() - start < 1000000000L);
+		}
+		remote.release.countDown();
+		Assert.assertEquals("{\"token\":\"t\"}", results.get(0).get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, remote.calls.get());
+	}
+
+	@Test
+	public void sharedCallDeadline() throws Exception {
+		BlockingTransport remote = new BlockingTransport(200);
+		remote.expireFirst = true;
+		CoalescingTransport transport = new CoalescingTransport(remote);
+		List<Future<String>> results = submit(transport, "t", "t");
+		awaitCalls(remote, 1);
+		Thread.sleep(200);
+		remote.release.countDown();
+		// the deadline of the first caller is not the deadline of the other one
+		int expired = 0;
+		for (Future<String> result : results) {
+			try {
+				Assert.assertEquals("{\"token\":\"t\"}", result.get(5, TimeUnit.SECONDS));
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof DeadlineExceededException);
+				expired++;
+			}
+		}
+		Assert.assertEquals(1, expired);
+		Assert.assertEquals(2, remote.calls.get());
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class TestCompression {
+
+	private HttpServer server;
+	private String host;
+	/** encoding of the last response, body of the last request */
+	private volatile String encoding;
+	private volatile String received;
+
+	@Before
+	public void start() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			InputStream in = exchange.getRequestBody();
+			if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+				in = new GZIPInputStream(in);
+			}
+			received = read(in);
+
+			String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			byte[] body = "{\"profiles\":[]}".getBytes("UTF-8");
+			if (accept != null && accept.contains("gzip")) {
+				encoding = "gzip";
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+				GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+				gzip.write(body);
+				gzip.close();
+				body = compressed.toByteArray();
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			} else {
+				encoding = null;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		});
+		server.start();
+		host = "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	public void responses() throws Exception {
+		PooledHttpTransport transport = PooledHttpTransport.builder().build();
+		try {
+			Assert.assertEquals("{\"profiles\":[]}", transport.execute(ProfileRequest.get(host, "basicprofile/all", "t")));
+			Assert.assertEquals("gzip", encoding);
+		} finally {
+			transport.close();
+		}
+
+		PooledAsyncHttpTransport async = PooledAsyncHttpTransport.builder().build();
+		try {
+			Assert.assertEquals("{\"profiles\":[]}", async.execute(ProfileRequest.get(host, "basicprofile/all", "t"))
+					.get());
+			Assert.assertEquals("gzip", encoding);
+		} finally {
+			async.close();
+		}
+
+		transport = PooledHttpTransport.builder().compression(false).build();
+		try {
+			Assert.assertEquals("{\"profiles\":[]}", transport.execute(ProfileRequest.get(host, "basicprofile/all", "t")));
+			Assert.assertNull(encoding);
+		} finally {
+			transport.close();
+		}
+	}
+
+	@Test
+	public void requestBodies() throws Exception {
+		PooledHttpTransport transport = PooledHttpTransport.builder().requestCompression(10).build();
+		try {
+			String body = "{\"content\":\"" + new String(new char[100]).replace('\0', 'x') + "\"}";
+			transport.execute(ProfileRequest.post(host, "extprofile/app/1/p", body, "t"));
+			Assert.assertEquals(body, received);
+			// short bodies are sent as is
+			transport.execute(ProfileRequest.post(host, "extprofile/app/1/p", "{}", "t"));
+			Assert.assertEquals("{}", received);
+		} finally {
+			transport.close();
+		}
+	}
+
+	@Test
+	public void contentBodies() throws Exception {
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("name", "x");
+		content.put("history", Arrays.asList(1, 2, 3));
+		String json = "{\"name\":\"x\",\"history\":[1,2,3]}";
+
+		PooledHttpTransport transport = PooledHttpTransport.builder().build();
+		try {
+			ProfileRequest request = ProfileRequest.putJson(host, "extprofile/app/1/p", content, "t");
+			transport.execute(request);
+			Assert.assertEquals(json, received);
+			Assert.assertEquals(json.length(), request.getContentLength());
+		} finally {
+			transport.close();
+		}
+
+		transport = PooledHttpTransport.builder().requestCompression(0).build();
+		try {
+			transport.execute(ProfileRequest.postJson(host, "extprofile/app/1/p", content, "t"));
+			Assert.assertEquals(json, received);
+		} finally {
+			transport.close();
+		}
+
+		PooledAsyncHttpTransport async = PooledAsyncHttpTransport.builder().build();
+		try {
+			async.execute(ProfileRequest.postJson(host, "extprofile/app/1/p", content, "t")).get();
+			Assert.assertEquals(json, received);
+		} finally {
+			async.close();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+public class TestDeadline {
+
+	@Test
+	public void scopes() throws Exception {
+		Assert.assertNull(Deadline.current());
+		try (Deadline outer = Deadline.after(100)) {
+			try (Deadline inner = Deadline.after(60000)) {
+				Assert.assertSame(inner, Deadline.current());
+				Assert.assertTrue(inner.remaining() <= 100);
+			}
+			Assert.assertSame(outer, Deadline.current());
+			Assert.assertFalse(Deadline.allows(1000));
+		}
+		Assert.assertNull(Deadline.current());
+		Assert.assertTrue(Deadline.allows(1000));
+	}
+
+	@Test
+	public void bind() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (Deadline deadline = Deadline.after(1000)) {
+			Assert.assertSame(deadline, Deadline.current());
+			long remaining = executor.submit(Deadline.bind(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return Deadline.current().remaining();
+				}
+			})).get();
+			Assert.assertTrue(remaining > 0 && remaining <= 1000);
+			// the worker thread is left without deadline
+			Assert.assertNull(executor.submit(new Callable<Deadline>() {
+				@Override
+				public Deadline call() {
+					return Deadline.current();
+				}
+			}).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void noRetryBeyondDeadline() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		ProfileTransport failing = new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) throws RemoteException {
+				calls.incrementAndGet();
+				throw new HttpStatusException(503, "failure");
+			}
+		};
+		RetryingTransport transport = new RetryingTransport(failing, RetryPolicy.builder().initialDelay(500)
+				.maxDelay(500).build());
+		try (Deadline deadline = Deadline.after(50)) {
+			Assert.assertSame(deadline, Deadline.current());
+			transport.execute(ProfileRequest.get("http://localhost/", "basicprofile/me", "t"));
+			Assert.fail();
+		} catch (HttpStatusException e) {
+			// the jittered delay may be short enough for a retry
+			Assert.assertTrue(calls.get() <= 2);
+		}
+	}
+
+	@Test
+	public void abortOnExpiration() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			try {
+				Thread.sleep(2000);
+			} catch (InterruptedException e) {
+				// stopped
+			}
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		PooledHttpTransport transport = PooledHttpTransport.builder().build();
+		try {
+			String host = "http://localhost:" + server.getAddress().getPort() + "/";
+			long start = System.nanoTime();
+			try (Deadline deadline = Deadline.after(200)) {
+				Assert.assertSame(deadline, Deadline.current());
+				transport.execute(ProfileRequest.get(host, "basicprofile/me", "t"));
+				Assert.fail();
+			} catch (DeadlineExceededException e) {
+				Assert.assertTrue(System.nanoTime() - start < 1500000000L);
+			}
+			// expired before the request
+			try (Deadline deadline = Deadline.after(0)) {
+				Assert.assertSame(deadline, Deadline.current());
+				transport.execute(ProfileRequest.get(host, "basicprofile/me", "t"));
+				Assert.fail();
+			} catch (DeadlineExceededException e) {
+				// not sent
+			}
+		} finally {
+			transport.close();
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+import eu.trentorise.smartcampus.profileservice.metrics.EndpointMetrics;
+import eu.trentorise.smartcampus.profileservice.metrics.InMemoryProfileMetrics;
+
+public class TestInstrumentedTransport {
+
+	private static final String HOST = "http://localhost/";
+
+	@Test
+	public void endpoints() {
+		Assert.assertEquals("GET basicprofile/me",
+				InstrumentedTransport.endpoint(ProfileRequest.get(HOST, "basicprofile/me", "t")));
+		Assert.assertEquals("GET basicprofile/all/{id}",
+				InstrumentedTransport.endpoint(ProfileRequest.get(HOST, "basicprofile/all/42/", "t")));
+		Assert.assertEquals("GET basicprofile/all",
+				InstrumentedTransport.endpoint(ProfileRequest.get(HOST, "basicprofile/all/?filter=x", "t")));
+		Assert.assertEquals("PUT extprofile/app/{user}/{profile}",
+				InstrumentedTransport.endpoint(ProfileRequest.put(HOST, "extprofile/app/42/prefs", "{}", "t")));
+		Assert.assertEquals("POST extprofile/all/{profile}",
+				InstrumentedTransport.endpoint(ProfileRequest.post(HOST, "extprofile/all/prefs", "{}", "t")));
+		Assert.assertEquals("GET extprofile/all",
+				InstrumentedTransport.endpoint(ProfileRequest.get(HOST, "extprofile/all", "t",
+						Collections.<String, Object> singletonMap("userIds", "1"))));
+	}
+
+	@Test
+	public void record() throws Exception {
+		InMemoryProfileMetrics metrics = new InMemoryProfileMetrics();
+		ProfileTransport transport = new InstrumentedTransport(new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) throws RemoteException {
+				if (request.getPath().endsWith("missing")) throw new HttpStatusException(404, "Not Found");
+				return "{\"name\":\"\u00e8\"}";
+			}
+		}, metrics);
+
+		transport.execute(ProfileRequest.get(HOST, "extprofile/me/a", "t"));
+		transport.execute(ProfileRequest.get(HOST, "extprofile/me/b", "t"), new ResponseReader<String>() {
+			@Override
+			public String read(InputStream content) throws IOException {
+				return HttpRequests.toString(content);
+			}
+		});
+		try {
+			transport.execute(ProfileRequest.get(HOST, "extprofile/me/missing", "t"));
+			Assert.fail();
+		} catch (HttpStatusException e) {
+			// expected
+		}
+
+		EndpointMetrics endpoint = metrics.getEndpoint("GET extprofile/me/{profile}");
+		Assert.assertEquals(3, endpoint.getCount());
+		Assert.assertEquals(1, endpoint.getErrorCount());
+		Assert.assertEquals(Long.valueOf(1), endpoint.getErrors().get(404));
+		Assert.assertEquals(2 * 13, endpoint.getResponseBytes());
+	}
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+public class TestRateLimitingTransport {
+
+	private static final String HOST = "http://localhost/";
+
+	/** answers with the given status, 200 if 0 */
+	private static class StatusTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+		volatile int status;
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			calls.incrementAndGet();
+			if (status != 0) throw new HttpStatusException(status, "failure");
+			return "ok";
+		}
+	}
+
+	private static String get(ProfileTransport transport, String token) throws RemoteException {
+		return transport.execute(ProfileRequest.get(HOST, "basicprofile/me", token));
+	}
+
+	@Test
+	public void failFast() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, RateLimiterConfig.builder().rate(1, 2)
+				.maxWait(0).build(), null);
+		get(transport, "t");
+		get(transport, "t");
+		try {
+			get(transport, "t");
+			Assert.fail();
+		} catch (RateLimitedException e) {
+			Assert.assertFalse(e.isPerToken());
+		}
+		Assert.assertEquals(2, server.calls.get());
+	}
+
+	@Test
+	public void queueing() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, RateLimiterConfig.builder().rate(50, 1)
+				.maxWait(1000).build(), null);
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			get(transport, "t");
+		}
+		// the first request uses the burst, the others wait 20ms each
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 70);
+		Assert.assertEquals(5, server.calls.get());
+	}
+
+	@Test
+	public void perToken() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, null, RateLimiterConfig.builder()
+				.rate(1, 1).maxWait(0).build());
+		get(transport, "a");
+		try {
+			get(transport, "a");
+			Assert.fail();
+		} catch (RateLimitedException e) {
+			Assert.assertTrue(e.isPerToken());
+		}
+		// other tokens have their own limits
+		get(transport, "b");
+		Assert.assertEquals(2, server.calls.get());
+	}
+
+	@Test
+	public void tokenRejectionRefund() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, RateLimiterConfig.builder().rate(1, 2)
+				.maxWait(0).build(), RateLimiterConfig.builder().rate(1, 1).maxWait(0).build());
+		get(transport, "a");
+		try {
+			get(transport, "a");
+			Assert.fail();
+		} catch (RateLimitedException e) {
+			Assert.assertTrue(e.isPerToken());
+		}
+		// the request rejected for its token does not use the global rate
+		get(transport, "b");
+		Assert.assertEquals(2, server.calls.get());
+	}
+
+	@Test
+	public void tokenLimitersBound() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, null, RateLimiterConfig.builder()
+				.rate(1, 1).maxWait(0).build());
+		// the limiters of the recent tokens are not idle
+		for (int i = 0; i < 1500; i++) {
+			get(transport, "t" + i);
+		}
+		Assert.assertTrue(transport.getTokenLimiterCount() <= 1000);
+		Assert.assertEquals(1500, server.calls.get());
+	}
+
+	@Test
+	public void adaptiveConcurrency() throws Exception {
+		StatusTransport server = new StatusTransport();
+		RateLimitingTransport transport = new RateLimitingTransport(server, RateLimiterConfig.builder()
+				.adaptiveConcurrency(4, 1, 8).latencyThreshold(5000).backoffRatio(0.5).build(), null);
+		RateLimiter limiter = transport.getGlobalLimiter();
+
+		server.status = 429;
+		for (int i = 0; i < 2; i++) {
+			try {
+				get(transport, "t");
+				Assert.fail();
+			} catch (HttpStatusException e) {
+				Assert.assertEquals(429, e.getStatus());
+			}
+		}
+		Assert.assertEquals(1, limiter.getLimit());
+		Assert.assertEquals(0, limiter.getInFlight());
+
+		// grows while in use: a sequential caller uses one permit
+		server.status = 0;
+		for (int i = 0; i < 10; i++) {
+			get(transport, "t");
+		}
+		Assert.assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void concurrencyLimit() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RateLimitingTransport transport = new RateLimitingTransport(new ProfileTransport() {
+			@Override
+			public String execute(ProfileRequest request) throws RemoteException {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RemoteException(e.getMessage(), e);
+				}
+				return "ok";
+			}
+		}, RateLimiterConfig.builder().adaptiveConcurrency(1, 1, 1).maxWait(20).build(), null);
+
+		Thread blocked = new Thread() {
+			@Override
+			public void run() {
+				try {
+					get(transport, "t");
+				} catch (RemoteException e) {
+					// not expected
+				}
+			}
+		};
+		blocked.start();
+		started.await();
+		try {
+			get(transport, "t");
+			Assert.fail();
+		} catch (RateLimitedException e) {
+			Assert.assertFalse(e.isPerToken());
+		} finally {
+			release.countDown();
+			blocked.join();
+		}
+		Assert.assertEquals(0, transport.getGlobalLimiter().getInFlight());
+	}
+
+	@Test
+	public void refundOnConcurrencyTimeout() throws Exception {
+		RateLimiter limiter = new RateLimiter(RateLimiterConfig.builder().rate(1, 2).adaptiveConcurrency(1, 1, 1)
+				.build());
+		Assert.assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		// a token is left, the concurrency limit is reached
+		Assert.assertFalse(limiter.tryAcquire(10, TimeUnit.MILLISECONDS));
+		limiter.release(System.nanoTime(), false);
+		// the token of the request not sent has been given back
+		Assert.assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		limiter.release(System.nanoTime(), false);
+		Assert.assertFalse(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+	}
+}
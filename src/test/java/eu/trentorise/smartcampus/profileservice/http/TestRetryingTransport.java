@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.network.RemoteException;
+
+public class TestRetryingTransport {
+
+	private static final String HOST = "http://localhost/";
+
+	/** fails with the given status the first <code>failures</code> calls */
+	private static class FailingTransport implements ProfileTransport {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final int failures;
+		final int status;
+
+		FailingTransport(int failures, int status) {
+			this.failures = failures;
+			this.status = status;
+		}
+
+		@Override
+		public String execute(ProfileRequest request) throws RemoteException {
+			if (calls.incrementAndGet() <= failures) throw new HttpStatusException(status, "failure");
+			return "ok";
+		}
+	}
+
+	private static RetryPolicy.Builder policy() {
+		return RetryPolicy.builder().initialDelay(1).maxDelay(2);
+	}
+
+	@Test
+	public void retryTransient() throws Exception {
+		FailingTransport failing = new FailingTransport(2, 503);
+		RetryingTransport transport = new RetryingTransport(failing, policy().maxRetries(2).build());
+		Assert.assertEquals("ok", transport.execute(ProfileRequest.get(HOST, "basicprofile/me", "t")));
+		Assert.assertEquals(3, failing.calls.get());
+	}
+
+	@Test
+	public void noRetry() throws Exception {
+		FailingTransport failing = new FailingTransport(1, 404);
+		RetryingTransport transport = new RetryingTransport(failing, policy().build());
+		try {
+			transport.execute(ProfileRequest.get(HOST, "basicprofile/me", "t"));
+			Assert.fail();
+		} catch (HttpStatusException e) {
+			Assert.assertEquals(1, failing.calls.get());
+		}
+
+		// POST is not idempotent
+		failing = new FailingTransport(1, 503);
+		transport = new RetryingTransport(failing, policy().build());
+		try {
+			transport.execute(ProfileRequest.post(HOST, "extprofile/app/1/p", "{}", "t"));
+			Assert.fail();
+		} catch (HttpStatusException e) {
+			Assert.assertEquals(1, failing.calls.get());
+		}
+	}
+
+	@Test
+	public void budget() throws Exception {
+		// no burst: 1 retry every 10 requests
+		FailingTransport failing = new FailingTransport(Integer.MAX_VALUE, 503);
+		RetryingTransport transport = new RetryingTransport(failing, policy().maxRetries(5).budget(0.1, 0)
+				.build());
+		for (int i = 0; i < 20; i++) {
+			try {
+				transport.execute(ProfileRequest.get(HOST, "basicprofile/me", "t"));
+			} catch (HttpStatusException e) {
+				// expected
+			}
+		}
+		// 20 requests, 1 initial token + 2 deposited
+		Assert.assertTrue(failing.calls.get() <= 23);
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestProfileJsonWriter {
+
+	@Test
+	public void values() throws Exception {
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("theme", "dark");
+		nested.put("sizes", new Object[] { 1.5, 2.5f });
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("text", "a \"quoted\" \u00e8");
+		content.put("int", 1);
+		content.put("long", 12345678901L);
+		content.put("big", new BigInteger("123456789012345678901234567890"));
+		content.put("flag", true);
+		content.put("none", null);
+		content.put("list", Arrays.asList("x", 2, nested));
+
+		Assert.assertEquals("{\"text\":\"a \\\"quoted\\\" \u00e8\",\"int\":1,\"long\":12345678901,"
+				+ "\"big\":123456789012345678901234567890,\"flag\":true,\"none\":null,"
+				+ "\"list\":[\"x\",2,{\"theme\":\"dark\",\"sizes\":[1.5,2.5]}]}", ProfileJsonWriter.toString(content));
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("history", Arrays.asList(1, 2, 3));
+		content.put("name", "\u00e8");
+		ExtendedProfile profile = new ExtendedProfile();
+		profile.setUserId("1");
+		profile.setProfileId("p");
+		profile.setContent(content);
+
+		Map<String, Object> wrapper = new LinkedHashMap<String, Object>();
+		wrapper.put("userId", "1");
+		wrapper.put("profileId", "p");
+		wrapper.put("content", content);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProfileJsonWriter.write(wrapper, out);
+
+		ExtendedProfile read = ProfileStreamParser.readObject(new ByteArrayInputStream(out.toByteArray()),
+				ProfileStreamParser.EXTENDED_PROFILE);
+		Assert.assertEquals("1", read.getUserId());
+		Assert.assertEquals(Arrays.asList(1, 2, 3), read.getContent().get("history"));
+		Assert.assertEquals("\u00e8", read.getContent().get("name"));
+	}
+}
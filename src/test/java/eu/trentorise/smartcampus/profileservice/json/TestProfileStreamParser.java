@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestProfileStreamParser {
+
+	private static InputStream stream(String json) throws Exception {
+		return new ByteArrayInputStream(json.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void basicProfiles() throws Exception {
+		List<BasicProfile> list = ProfileStreamParser.readList(
+				stream("{\"total\":2,\"profiles\":[{\"name\":\"Mario\",\"surname\":\"Rossi\",\"userId\":\"1\",\"extra\":{\"a\":[1]}},"
+						+ "{\"name\":\"Anna\",\"socialId\":\"10\",\"userId\":\"2\"}]}"),
+				ProfileStreamParser.BASIC_PROFILE);
+
+		Assert.assertEquals(2, list.size());
+		Assert.assertEquals("Rossi", list.get(0).getSurname());
+		Assert.assertEquals("1", list.get(0).getUserId());
+		Assert.assertEquals("10", list.get(1).getSocialId());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void extendedProfileContent() throws Exception {
+		List<ExtendedProfile> list = ProfileStreamParser.readList(
+				stream("{\"profiles\":[{\"profileId\":\"p\",\"userId\":\"1\","
+						+ "\"content\":{\"age\":30,\"score\":1.5,\"tags\":[\"x\",true,null],\"nested\":{\"k\":\"v\"}}}]}"),
+				ProfileStreamParser.EXTENDED_PROFILE);
+
+		Map<String, Object> content = list.get(0).getContent();
+		Assert.assertEquals(30, ((Number) content.get("age")).intValue());
+		Assert.assertEquals(1.5, content.get("score"));
+		Assert.assertEquals(3, ((List<Object>) content.get("tags")).size());
+		Assert.assertEquals("v", ((Map<String, Object>) content.get("nested")).get("k"));
+	}
+
+	@Test
+	public void emptyContent() throws Exception {
+		Assert.assertTrue(ProfileStreamParser.readList(stream(""), ProfileStreamParser.BASIC_PROFILE).isEmpty());
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.model;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.trentorise.smartcampus.profileservice.json.ProfileStreamParser;
+
+public class TestCompactAccountProfile {
+
+	private static final String JSON = "{\"accounts\":{\"google\":{\"eu.trentorise.smartcampus.givenname\":\"Mario\",\"email\":\"m@example.org\"},"
+			+ "\"facebook\":{\"eu.trentorise.smartcampus.givenname\":\"Mario\"},\"empty\":{}},\"userId\":\"1\"}";
+
+	private static CompactAccountProfile parse(String json) throws Exception {
+		return ProfileStreamParser.readObject(new ByteArrayInputStream(json.getBytes("UTF-8")),
+				ProfileStreamParser.COMPACT_ACCOUNT_PROFILE);
+	}
+
+	@Test
+	public void lookup() throws Exception {
+		CompactAccountProfile profile = parse(JSON);
+		// accounts without attributes are omitted
+		Assert.assertEquals(2, profile.getAccountCount());
+		Assert.assertEquals("m@example.org", profile.getAttribute("google", "email"));
+		Assert.assertEquals("Mario", profile.getAttribute("facebook", "eu.trentorise.smartcampus.givenname"));
+		Assert.assertNull(profile.getAttribute("facebook", "email"));
+		Assert.assertNull(profile.getAttribute("twitter", "email"));
+		Assert.assertNull(profile.getAccountAttributes("empty"));
+		Assert.assertEquals(2, profile.getAccountAttributes("google").size());
+	}
+
+	@Test
+	public void sharedNames() throws Exception {
+		CompactAccountProfile a = parse(JSON);
+		CompactAccountProfile b = parse(JSON);
+		Assert.assertEquals(a, b);
+		String nameA = a.getAccountAttributes("google").keySet().iterator().next();
+		String nameB = b.getAccountAttributes("google").keySet().iterator().next();
+		Assert.assertSame(nameA, nameB);
+	}
+
+	@Test
+	public void conversions() throws Exception {
+		CompactAccountProfile profile = parse(JSON);
+		AccountProfile mutable = profile.toAccountProfile();
+		Assert.assertEquals("Mario", mutable.getAttribute("google", "eu.trentorise.smartcampus.givenname"));
+		Assert.assertEquals(profile.getAttribute("google", "email"),
+				CompactAccountProfile.valueOf(mutable).getAttribute("google", "email"));
+	}
+
+	@Test
+	public void accountProfile() throws Exception {
+		AccountProfile profile = AccountProfile.valueOf(JSON);
+		Assert.assertEquals("m@example.org", profile.getAttribute("google", "email"));
+		Assert.assertEquals(CompactAccountProfile.valueOf(profile).getAttribute("facebook",
+				"eu.trentorise.smartcampus.givenname"), profile.getAttribute("facebook",
+				"eu.trentorise.smartcampus.givenname"));
+		// as before, accounts without attributes are omitted
+		Assert.assertEquals(2, profile.getAccountNames().size());
+		Assert.assertEquals(profile.getAccountNames(), CompactAccountProfile.valueOf(profile).getAccountNames());
+	}
+
+	@Test
+	public void emptyAccounts() throws Exception {
+		CompactAccountProfile profile = new CompactAccountProfile.Builder().account("a").account("b")
+				.attribute("k", "v").account("c").attribute(null, "v").account("d").build();
+		Assert.assertEquals(1, profile.getAccountCount());
+		Assert.assertEquals("v", profile.getAttribute("b", "k"));
+		Assert.assertNull(profile.getAccountAttributes("a"));
+		Assert.assertEquals(0, new CompactAccountProfile.Builder().account("a").build().getAccountCount());
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2012-2013 Trento RISE
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ ******************************************************************************/
+package eu.trentorise.smartcampus.profileservice.snapshot;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.trentorise.smartcampus.profileservice.model.AccountProfile;
+import eu.trentorise.smartcampus.profileservice.model.BasicProfile;
+import eu.trentorise.smartcampus.profileservice.model.ExtendedProfile;
+
+public class TestSnapshot {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static BasicProfile basic(int i) {
+		BasicProfile profile = new BasicProfile();
+		profile.setUserId("" + i);
+		profile.setSocialId("s" + i);
+		profile.setName("Nicol\u00f2");
+		profile.setSurname(i % 2 == 0 ? null : "Rossi");
+		return profile;
+	}
+
+	private static ExtendedProfile extended(int i) {
+		Map<String, Object> address = new LinkedHashMap<String, Object>();
+		address.put("city", "Trento");
+		address.put("zip", 38122);
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("address", address);
+		content.put("score", 1.5);
+		content.put("visits", 10000000000L);
+		content.put("big", new BigInteger("123456789012345678901234567890"));
+		content.put("tags", Arrays.asList("a", null, true, -3));
+		content.put("empty", null);
+		ExtendedProfile profile = new ExtendedProfile();
+		profile.setUserId("" + i);
+		profile.setProfileId("preferences");
+		profile.setContent(content);
+		return profile;
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		Path file = folder.newFile("profiles.snapshot").toPath();
+		List<BasicProfile> basics = new ArrayList<BasicProfile>();
+		List<ExtendedProfile> extendeds = new ArrayList<ExtendedProfile>();
+		AccountProfile account = new AccountProfile();
+		Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>();
+		attributes.put("google", new HashMap<String, String>());
+		attributes.get("google").put("email", "mario@example.com");
+		account.setAttributes(attributes);
+
+		SnapshotWriter writer = new SnapshotWriter(file, 1234L);
+		for (int i = 0; i < 100; i++) {
+			basics.add(basic(i));
+			extendeds.add(extended(i));
+			writer.write(basics.get(i));
+			writer.write(extendeds.get(i));
+		}
+		writer.write(account);
+		writer.close();
+		Assert.assertEquals(201, writer.getCount());
+
+		SnapshotReader reader = SnapshotReader.open(file);
+		try {
+			Assert.assertEquals(1234L, reader.getTimestamp());
+			List<BasicProfile> readBasics = reader.getBasicProfiles();
+			Assert.assertEquals(100, readBasics.size());
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(basics.get(i).toString(), readBasics.get(i).toString());
+				Assert.assertEquals(basics.get(i).getSurname(), readBasics.get(i).getSurname());
+			}
+			List<ExtendedProfile> readExtendeds = reader.getExtendedProfiles();
+			Assert.assertEquals(100, readExtendeds.size());
+			Assert.assertEquals(extendeds.get(7).getContent(), readExtendeds.get(7).getContent());
+			Assert.assertEquals("preferences", readExtendeds.get(7).getProfileId());
+			Assert.assertEquals("mario@example.com", reader.getAccountProfiles().get(0).getAttribute("google",
+					"email"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void truncated() throws Exception {
+		Path file = folder.newFile("truncated.snapshot").toPath();
+		SnapshotWriter writer = new SnapshotWriter(file);
+		for (int i = 0; i < 10; i++) {
+			writer.write(basic(i));
+		}
+		writer.close();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 5);
+		}
+		SnapshotReader reader = SnapshotReader.open(file);
+		try {
+			reader.getBasicProfiles();
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		} finally {
+			reader.close();
+		}
+
+		try {
+			SnapshotReader.open(folder.newFile("empty").toPath());
+			Assert.fail();
+		} catch (IOException e) {
+			// not a snapshot
+		}
+	}
+}